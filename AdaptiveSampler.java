@@ -0,0 +1,162 @@
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Samples a function by recursive subdivision instead of at a fixed step. A segment is split in half
+ * only where the function at its midpoint is further than a tolerance -- normally half a pixel -- from
+ * the straight line between its ends, i.e., where the second finite difference says the curve bends
+ * visibly. Straight stretches therefore cost a handful of evaluations while poles and fast oscillation
+ * are refined down to a fraction of a pixel.
+ *
+ * Where a segment still bends at the deepest level, and the jump between its ends has stopped shrinking
+ * as it was halved, the function is taken to be discontinuous there (as 1/x is at 0) and the series is
+ * broken instead of being joined by a vertical spike. Non-finite values also break the series.
+ *
+ * Given the expression behind the function, the sampler also encloses its range over each segment by
+ * interval arithmetic before splitting it. A segment whose enclosure lies outside the visible y range
+ * is skipped, one whose enclosure is narrower than the tolerance is proved flat and not refined, and a
+ * segment that the enclosure proves continuous is never broken, so the jump heuristic above is left for
+ * the segments that may really contain a pole.
+ */
+public class AdaptiveSampler {
+	private static final int DEFAULT_INITIAL_SEGMENTS = 64;
+	private static final int DEFAULT_MAX_DEPTH = 20;
+	/** A jump that keeps more than this fraction of its size after halving is not shrinking. */
+	private static final double STALLED_JUMP_RATIO = 0.75;
+	/** How many halvings in a row a jump must survive to count as a discontinuity. */
+	private static final int STALLED_LEVELS = 4;
+
+	private final double tolerance;
+	private final int initialSegments;
+	private final int maxDepth;
+	private final double minY, maxY;
+
+	/**
+	 * @param tolerance the largest distance in y allowed between the function and the sampled polyline
+	 */
+	public AdaptiveSampler (double tolerance) {
+		this(tolerance, DEFAULT_INITIAL_SEGMENTS, DEFAULT_MAX_DEPTH);
+	}
+
+	/**
+	 * @param tolerance the largest distance in y allowed between the function and the sampled polyline
+	 * @param initialSegments how many equal segments to start from; features narrower than one may be missed
+	 * @param maxDepth how many times a starting segment may be halved
+	 */
+	public AdaptiveSampler (double tolerance, int initialSegments, int maxDepth) {
+		this(tolerance, initialSegments, maxDepth, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @param tolerance the largest distance in y allowed between the function and the sampled polyline
+	 * @param initialSegments how many equal segments to start from; features narrower than one may be missed
+	 * @param maxDepth how many times a starting segment may be halved
+	 * @param minY the bottom of the visible y range; segments entirely below it are not refined
+	 * @param maxY the top of the visible y range; segments entirely above it are not refined
+	 */
+	public AdaptiveSampler (double tolerance, int initialSegments, int maxDepth, double minY, double maxY) {
+		this.tolerance = tolerance;
+		this.initialSegments = initialSegments;
+		this.maxDepth = maxDepth;
+		this.minY = minY;
+		this.maxY = maxY;
+	}
+
+	/**
+	 * Creates a sampler whose tolerance is half of one pixel's worth of y, and which does not refine
+	 * segments that lie entirely above or below the visible y range.
+	 * @param minY the bottom of the visible y range
+	 * @param maxY the top of the visible y range
+	 * @param pixelHeight how many pixels tall the visible y range is drawn
+	 * @return the sampler
+	 */
+	public static AdaptiveSampler forViewport (double minY, double maxY, int pixelHeight) {
+		return new AdaptiveSampler((maxY - minY) / pixelHeight / 2, DEFAULT_INITIAL_SEGMENTS, DEFAULT_MAX_DEPTH, minY, maxY);
+	}
+
+	/**
+	 * Samples the specified function from min to max.
+	 * @param function the function to sample
+	 * @param min the first x value
+	 * @param max the last x value
+	 * @return the sampled points, with breaks at discontinuities
+	 */
+	public Samples sample (DoubleUnaryOperator function, double min, double max) {
+		return sample(function, null, min, max);
+	}
+
+	/**
+	 * Samples the specified function from min to max, using its expression to skip segments that cannot
+	 * be seen or need no refinement.
+	 * @param function the function to sample
+	 * @param expression the expression the function computes, or null if there is none
+	 * @param min the first x value
+	 * @param max the last x value
+	 * @return the sampled points, with breaks at discontinuities
+	 */
+	public Samples sample (DoubleUnaryOperator function, Expression expression, double min, double max) {
+		return sample(function, expression, min, max, null);
+	}
+
+	/**
+	 * Samples the specified function from min to max, starting from values of it that are already known
+	 * at the ends of the initial segments, such as a SubtreeColumnCache column.
+	 * @param function the function to sample
+	 * @param expression the expression the function computes, or null if there is none
+	 * @param min the first x value
+	 * @param max the last x value
+	 * @param initial the function at Sampler.x(min, max, i, initialSegments + 1) for each i up to
+	 * initialSegments, or null to evaluate it there
+	 * @return the sampled points, with breaks at discontinuities
+	 */
+	public Samples sample (DoubleUnaryOperator function, Expression expression, double min, double max, double[] initial) {
+		if (initial != null && initial.length != initialSegments + 1) {
+			throw new IllegalArgumentException(initial.length + " initial values for " + initialSegments + " segments");
+		}
+		final Samples samples = new Samples();
+		double a = min;
+		double fa = initial == null ? function.applyAsDouble(a) : initial[0];
+		samples.add(a, fa);
+		for (int i = 1; i <= initialSegments; i++) {
+			final double b = Sampler.x(min, max, i, initialSegments + 1);
+			final double fb = initial == null ? function.applyAsDouble(b) : initial[i];
+			refine(function, expression, a, fa, b, fb, 0, Double.POSITIVE_INFINITY, 0, samples);
+			a = b;
+			fa = fb;
+		}
+		return samples;
+	}
+
+	/**
+	 * Appends the points of the segment (a, b], splitting it while it deviates from a straight line.
+	 * @param parentJump |f(b) - f(a)| of the segment this one was halved from
+	 * @param stalled how many halvings in a row the jump has survived
+	 */
+	private void refine (DoubleUnaryOperator function, Expression expression, double a, double fa, double b, double fb, int depth, double parentJump, int stalled, Samples samples) {
+		final double jump = Math.abs(fb - fa);
+		final int stalledLevels = jump > STALLED_JUMP_RATIO * parentJump ? stalled + 1 : 0;
+		final Interval range = expression == null ? Interval.ENTIRE : expression.evaluateInterval(a, b);
+		final boolean culled = range.isEmpty() || range.getLo() > maxY || range.getHi() < minY;
+		// A continuous function that stays within the tolerance is within it of any chord, too.
+		final boolean flat = range.isDefined() && range.width() <= tolerance && Double.isFinite(fa) && Double.isFinite(fb);
+		if (culled || flat) {
+			samples.add(b, fb);
+			return;
+		}
+		if (depth < maxDepth) {
+			final double m = 0.5 * (a + b);
+			final double fm = function.applyAsDouble(m);
+			final int finite = (Double.isFinite(fa) ? 1 : 0) + (Double.isFinite(fm) ? 1 : 0) + (Double.isFinite(fb) ? 1 : 0);
+			final boolean hidden = (fa > maxY && fm > maxY && fb > maxY) || (fa < minY && fm < minY && fb < minY);
+			// Refine towards the edge of the function's domain, but not through a stretch where it is undefined throughout.
+			final boolean edge = finite == 1 || finite == 2;
+			if (edge || (finite == 3 && !hidden && Math.abs(fm - 0.5 * (fa + fb)) > tolerance)) {
+				refine(function, expression, a, fa, m, fm, depth + 1, jump, stalledLevels, samples);
+				refine(function, expression, m, fm, b, fb, depth + 1, jump, stalledLevels, samples);
+				return;
+			}
+		} else if (stalledLevels >= STALLED_LEVELS && jump > tolerance && !range.isDefined()) {
+			samples.addBreak();
+		}
+		samples.add(b, fb);
+	}
+}
@@ -0,0 +1,129 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for forward-mode differentiation and the Taylor evaluator.
+ */
+public class AutomaticDifferentiationTester {
+	private static final double[] XS = { -2.5, -1, -0.5, 0.25, 1, 2, 3.75 };
+
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	private List<Expression> randomExpressions (long seed) {
+		final Random random = new Random(seed);
+		final List<Expression> expressions = new ArrayList<>();
+		while (expressions.size() < 300) {
+			try {
+				expressions.add(_parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4)));
+			} catch (ExpressionParseException epe) {
+			}
+		}
+		return expressions;
+	}
+
+	@Test
+	/**
+	 * Verifies that evaluateWithDerivative agrees with evaluate and with the symbolic derivative, on the
+	 * plain and the optimized expression.
+	 */
+	public void testMatchesSymbolicDerivative () {
+		final double[] derivative = new double[1];
+		for (Expression expression : randomExpressions(7)) {
+			final Expression symbolic;
+			try {
+				symbolic = expression.differentiate();
+			} catch (UnsupportedOperationException uoe) {
+				continue;
+			}
+			final Expression optimized = ExpressionOptimizer.optimize(expression);
+			for (double x : XS) {
+				final double expected = symbolic.evaluate(x);
+				ExpressionEvaluationTester.assertSameValue(expression.evaluate(x), expression.evaluateWithDerivative(x, derivative), expression.convertToString(0));
+				// Where the symbolic derivative is NaN, it is usually a 0 * Infinity that forward mode avoids.
+				if (!Double.isNaN(expected)) {
+					ExpressionEvaluationTester.assertSameValue(expected, derivative[0], expression.convertToString(0));
+					optimized.evaluateWithDerivative(x, derivative);
+					ExpressionEvaluationTester.assertSameValue(expected, derivative[0], expression.convertToString(0));
+				}
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies derivatives that differentiate cannot produce.
+	 */
+	public void testPowerOfVariableBaseAndExponent () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^x");
+		assertThrows(UnsupportedOperationException.class, () -> expression.differentiate());
+		final double[] derivative = new double[1];
+		assertEquals(4, expression.evaluateWithDerivative(2, derivative), 1e-12);
+		assertEquals(4 * (Math.log(2) + 1), derivative[0], 1e-12);
+
+		final double[] derivatives = new double[4];
+		new TaylorEvaluator(expression, 3).derivatives(1, derivatives);
+		assertArrayEquals(new double[] { 1, 1, 2, 3 }, derivatives, 1e-12);
+	}
+
+	@Test
+	/**
+	 * Verifies Taylor coefficients against known series.
+	 */
+	public void testKnownSeries () throws ExpressionParseException {
+		final double[] coefficients = new double[6];
+		new TaylorEvaluator(_parser.parse("log(1+x)"), 5).evaluate(0, coefficients);
+		assertArrayEquals(new double[] { 0, 1, -1.0 / 2, 1.0 / 3, -1.0 / 4, 1.0 / 5 }, coefficients, 1e-12);
+		new TaylorEvaluator(_parser.parse("1/(1-x)"), 5).evaluate(0.5, coefficients);
+		assertArrayEquals(new double[] { 2, 4, 8, 16, 32, 64 }, coefficients, 1e-9);
+		new TaylorEvaluator(ExpressionOptimizer.optimize(_parser.parse("(x+1)^-2")), 5).evaluate(0, coefficients);
+		assertArrayEquals(new double[] { 1, -2, 3, -4, 5, -6 }, coefficients, 1e-12);
+		new TaylorEvaluator(_parser.parse("x^0.5"), 2).evaluate(4, coefficients);
+		assertEquals(2, coefficients[0]);
+		assertEquals(1.0 / 4, coefficients[1], 1e-12);
+		assertEquals(-1.0 / 64, coefficients[2], 1e-12);
+	}
+
+	@Test
+	/**
+	 * Verifies that the zeroth coefficient is exactly the DAG's value, the first is the forward-mode
+	 * derivative, and higher ones match repeated symbolic differentiation.
+	 */
+	public void testTaylorMatchesEvaluators () throws ExpressionParseException {
+		final double[] coefficients = new double[3];
+		final double[] derivative = new double[1];
+		for (Expression expression : randomExpressions(8)) {
+			final Expression optimized = ExpressionOptimizer.optimize(expression);
+			final ExpressionDag dag = ExpressionDag.compile(optimized);
+			final TaylorEvaluator taylor = new TaylorEvaluator(optimized, 2);
+			for (double x : XS) {
+				final double value = taylor.evaluate(x, coefficients);
+				assertEquals(dag.evaluate(x), value, expression.convertToString(0));
+				optimized.evaluateWithDerivative(x, derivative);
+				if (Double.isFinite(derivative[0]) && Double.isFinite(coefficients[1])) {
+					ExpressionEvaluationTester.assertSameValue(derivative[0], coefficients[1], expression.convertToString(0));
+				}
+			}
+		}
+
+		// Signed zeros too: a product of -0.0 stays -0.0.
+		for (String text : new String[] { "x*3", "x*x*x", "2*x/3", "x^3" }) {
+			final Expression optimized = ExpressionOptimizer.optimize(_parser.parse(text));
+			final double value = new TaylorEvaluator(optimized, 2).evaluate(-0.0, coefficients);
+			assertEquals(ExpressionDag.compile(optimized).evaluate(-0.0), value, text);
+		}
+
+		final ExpressionInterner interner = new ExpressionInterner();
+		Expression derivativeN = _parser.parse("(x*x+1)*(x*x*x-2*x)*(x+2)");
+		final TaylorEvaluator taylor = new TaylorEvaluator(derivativeN, 4);
+		final double[] derivatives = new double[5];
+		for (double x : XS) {
+			taylor.derivatives(x, derivatives);
+			Expression symbolic = derivativeN;
+			for (int order = 0; order <= 4; order++) {
+				ExpressionEvaluationTester.assertSameValue(symbolic.evaluate(x), derivatives[order], "order " + order);
+				symbolic = interner.differentiate(symbolic);
+			}
+		}
+	}
+}
@@ -0,0 +1,190 @@
+import java.util.*;
+
+/**
+ * An ExpressionParser that remembers what another parser made of recent inputs, so formulas that are
+ * parsed over and over cost a map lookup instead of a parse. Inputs are keyed with their spaces
+ * removed, as the parsers themselves do first, so "2*x + 1" and "2*x+1" share an entry.
+ *
+ * Failures are remembered too, so an invalid input that is submitted again fails without being parsed
+ * again; the exception is thrown anew each time, with its error offset moved to the same character of
+ * the input at hand, and its message quoting that input and offset rather than those of the first.
+ *
+ * The cache holds at most a fixed number of entries, evicting the least recently used. Expression
+ * nodes are immutable, so the cached trees are returned as they are and may be shared by any number of
+ * callers. The cache is safe for concurrent use; the parse itself is done outside its lock, so two
+ * threads that miss on the same input at once may both parse it.
+ */
+public class CachingExpressionParser implements ExpressionParser {
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final ExpressionParser parser;
+	private final int capacity;
+	private final LinkedHashMap<String, Object> entries;
+	private long hits, misses, evictions;
+
+	/**
+	 * A remembered parse failure. The parsers end their messages with the input, after the offset when
+	 * they give one ("... at offset 4 in x + * 2"), so the message is kept cut at those places, by index,
+	 * and put back together around the offset and input at hand.
+	 */
+	private static final class Failure {
+		private static final String BEFORE_INPUT = " in ";
+
+		/** The message up to the offset it quotes, or up to the input if it quotes no offset, or all of it. */
+		final String head;
+		/** Whether the message quoted the offset, just before the input. */
+		final boolean quotesOffset;
+		/** Whether the message ended with the input. */
+		final boolean quotesInput;
+		/** Where parsing failed, counted in characters other than spaces, or -1 if unknown. */
+		final int offset;
+
+		Failure (String str, ExpressionParseException e) {
+			final int errorOffset = e.getErrorOffset();
+			final String message = e.getMessage();
+			quotesInput = message.endsWith(str);
+			final int inputAt = quotesInput ? message.length() - str.length() : message.length();
+			final String quoted = "offset " + errorOffset + BEFORE_INPUT;
+			quotesOffset = quotesInput && errorOffset >= 0 && message.startsWith(quoted, inputAt - quoted.length());
+			head = message.substring(0, quotesOffset ? inputAt - quoted.length() + "offset ".length() : inputAt);
+			offset = errorOffset < 0 ? -1 : errorOffset - spacesBefore(str, errorOffset);
+		}
+
+		/**
+		 * Returns a new exception for this failure, with its offset into the specified input.
+		 */
+		ExpressionParseException exception (String str) {
+			final int errorOffset = offset < 0 ? -1 : offsetIn(str, offset);
+			final StringBuilder message = new StringBuilder(head);
+			if (quotesOffset) {
+				message.append(errorOffset).append(BEFORE_INPUT);
+			}
+			if (quotesInput) {
+				message.append(str);
+			}
+			return new ExpressionParseException(message.toString(), errorOffset);
+		}
+	}
+
+	public CachingExpressionParser (ExpressionParser parser) {
+		this(parser, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param parser the parser to cache the results of
+	 * @param capacity the most inputs to remember; the least recently used is evicted beyond that
+	 */
+	public CachingExpressionParser (ExpressionParser parser, int capacity) {
+		this.parser = parser;
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<String, Object> eldest) {
+				if (size() > CachingExpressionParser.this.capacity) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	@Override
+	public Expression parse (String str) throws ExpressionParseException {
+		final String key = str.replace(" ", "");
+		final Object known;
+		synchronized (entries) {
+			known = entries.get(key);
+			if (known != null) {
+				hits++;
+			} else {
+				misses++;
+			}
+		}
+		if (known instanceof Failure) {
+			throw ((Failure) known).exception(str);
+		}
+		if (known != null) {
+			return (Expression) known;
+		}
+
+		Object result;
+		try {
+			result = parser.parse(str);
+		} catch (ExpressionParseException e) {
+			result = new Failure(str, e);
+		}
+		synchronized (entries) {
+			entries.put(key, result);
+		}
+		if (result instanceof Failure) {
+			throw ((Failure) result).exception(str);
+		}
+		return (Expression) result;
+	}
+
+	/**
+	 * Counts the spaces in str before offset.
+	 */
+	private static int spacesBefore (String str, int offset) {
+		int spaces = 0;
+		for (int i = 0; i < Math.min(offset, str.length()); i++) {
+			if (str.charAt(i) == ' ') {
+				spaces++;
+			}
+		}
+		return spaces;
+	}
+
+	/**
+	 * Returns the offset in str of the character that follows the first offset characters other than spaces.
+	 */
+	private static int offsetIn (String str, int offset) {
+		int i = 0;
+		for (int seen = 0; i < str.length(); i++) {
+			if (str.charAt(i) != ' ') {
+				if (seen == offset) {
+					break;
+				}
+				seen++;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * @return how many inputs are remembered
+	 */
+	public int size () {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * @return how many calls to parse found the input remembered, failures included
+	 */
+	public long getHits () {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return how many calls to parse had to parse the input
+	 */
+	public long getMisses () {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	/**
+	 * @return how many remembered inputs have been evicted to make room for others
+	 */
+	public long getEvictions () {
+		synchronized (entries) {
+			return evictions;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+
+/**
+ * Runs the Project 4 tests against CachingExpressionParser, and tests the cache itself.
+ */
+public class CachingExpressionParserTester extends ExpressionParserTester {
+	@BeforeEach
+	@Override
+	public void setUp () throws IOException {
+		_parser = new CachingExpressionParser(new RecursiveDescentExpressionParser());
+	}
+
+	@Test
+	/**
+	 * Verifies that inputs differing only in spaces share an entry, and that hits return the cached tree.
+	 */
+	public void testHitsShareTrees () throws ExpressionParseException {
+		final CachingExpressionParser parser = new CachingExpressionParser(new RecursiveDescentExpressionParser());
+		final Expression expression = parser.parse("2*x + 1");
+		assertSame(expression, parser.parse("2*x+1"));
+		assertSame(expression, parser.parse(" 2 * x + 1 "));
+		assertEquals(1, parser.getMisses());
+		assertEquals(2, parser.getHits());
+		assertEquals(1, parser.size());
+	}
+
+	@Test
+	/**
+	 * Verifies that failures are remembered, and rethrown with the offset and message of the input at hand.
+	 */
+	public void testFailuresAreCached () {
+		final CachingExpressionParser parser = new CachingExpressionParser(new RecursiveDescentExpressionParser());
+		final ExpressionParseException first = assertThrows(ExpressionParseException.class, () -> parser.parse("x+*2"));
+		final ExpressionParseException second = assertThrows(ExpressionParseException.class, () -> parser.parse("x + * 2"));
+		assertNotSame(first, second);
+		assertEquals(2, first.getErrorOffset());
+		assertEquals(4, second.getErrorOffset());
+		final ExpressionParseException fresh = assertThrows(ExpressionParseException.class, () -> new RecursiveDescentExpressionParser().parse("x + * 2"));
+		assertEquals(fresh.getMessage(), second.getMessage());
+		final ExpressionParseException spaced = assertThrows(ExpressionParseException.class, () -> parser.parse("x +   *2"));
+		assertEquals(6, spaced.getErrorOffset());
+		assertTrue(spaced.getMessage().endsWith("at offset 6 in x +   *2"), spaced.getMessage());
+		assertEquals(1, parser.getMisses());
+		assertEquals(2, parser.getHits());
+	}
+
+	@Test
+	/**
+	 * Verifies that failures of inputs that also occur in the words of the message, or in its offset,
+	 * are rethrown with the same message a fresh parse gives.
+	 */
+	public void testFailuresQuotingShortInputs () {
+		final CachingExpressionParser parser = new CachingExpressionParser(new RecursiveDescentExpressionParser());
+		final ExpressionParser fresh = new RecursiveDescentExpressionParser();
+		for (String input : new String[] { "e", " e", "e ", "s", "  s", "t", "t  ", "0+", "1+", "x+*", " x+*" }) {
+			final ExpressionParseException expected = assertThrows(ExpressionParseException.class, () -> fresh.parse(input));
+			final ExpressionParseException actual = assertThrows(ExpressionParseException.class, () -> parser.parse(input));
+			assertEquals(expected.getMessage(), actual.getMessage(), input);
+			assertEquals(expected.getErrorOffset(), actual.getErrorOffset(), input);
+		}
+		assertEquals(5, parser.getHits());
+	}
+
+	@Test
+	/**
+	 * Verifies that the least recently used entry is the one evicted.
+	 */
+	public void testEvictsLeastRecentlyUsed () throws ExpressionParseException {
+		final CachingExpressionParser parser = new CachingExpressionParser(new RecursiveDescentExpressionParser(), 2);
+		final Expression a = parser.parse("x+1");
+		parser.parse("x+2");
+		parser.parse("x+1");
+		parser.parse("x+3");
+		assertEquals(1, parser.getEvictions());
+		assertEquals(2, parser.size());
+		assertSame(a, parser.parse("x+1"));
+		parser.parse("x+2");
+		assertEquals(4, parser.getMisses());
+	}
+
+	@Test
+	/**
+	 * Verifies that many threads parsing a few formulas get equal trees and consistent counts.
+	 */
+	public void testConcurrentUse () throws Exception {
+		final CachingExpressionParser parser = new CachingExpressionParser(new RecursiveDescentExpressionParser(), 16);
+		final ExpressionParser plain = new RecursiveDescentExpressionParser();
+		final List<String> formulas = List.of("x", "2*x+1", "log(x)*x^2", "(x+1)/(x-1)", "x^x");
+		final ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 1000; i++) {
+						final String formula = formulas.get(i % formulas.size());
+						assertEquals(plain.parse(formula), parser.parse(formula));
+					}
+					return null;
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(8000, parser.getHits() + parser.getMisses());
+		assertTrue(parser.getMisses() < 100, parser.getMisses() + " misses");
+	}
+}
@@ -0,0 +1,116 @@
+import javafx.scene.Scene;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
+import javafx.scene.control.TextField;
+import javafx.scene.paint.Color;
+
+import javafx.stage.Stage;
+
+import java.util.*;
+
+/**
+ * The graphing calculator with its curves drawn on a PlotCanvas instead of a LineChart, so that
+ * series of any length plot without creating a node per point.
+ */
+public class CanvasGraphingCalculator extends GraphingCalculator {
+	public static void main (String[] args) {
+		launch(args);
+	}
+
+	private static final List<Color> COLORS = new ArrayList<>();
+	static {
+		for (String color : CURVE_COLORS) {
+			COLORS.add(Color.web(color));
+		}
+	}
+
+	private double lastDragX, lastDragY;
+
+	@Override
+	public void start (Stage primaryStage) {
+		primaryStage.setTitle("Graphing Calculator");
+
+		final Pane queryPane = new HBox();
+		final Label label = new Label("y=");
+		final TextField textField = new TextField(EXAMPLE_EXPRESSION);
+		final Button graphButton = new Button("Graph");
+		final CheckBox diffBox = new CheckBox("Show Derivative");
+		final CheckBox areaBox = new CheckBox("Shade Area");
+		queryPane.getChildren().addAll(label, textField, graphButton, diffBox, areaBox, areaLabel);
+
+		final Pane graphPane = new Pane();
+		final PlotCanvas canvas = new PlotCanvas(WINDOW_WIDTH, WINDOW_HEIGHT, MIN_X, MAX_X, MIN_Y, MAX_Y, GRID_INTERVAL);
+		canvas.widthProperty().bind(graphPane.widthProperty());
+		canvas.heightProperty().bind(graphPane.heightProperty());
+		graphPane.getChildren().add(canvas);
+
+		graphButton.setOnMouseClicked(e -> graph(textField, textField.getText(), diffBox.isSelected(), canvas.getMinX(), canvas.getMaxX(), canvas.getMinY(), canvas.getMaxY(), (int) canvas.getWidth(), (int) canvas.getHeight(), plot -> show(canvas, plot)));
+
+		//Handles panning the graph with the mouse.
+		canvas.setOnMousePressed(e -> {
+			lastDragX = e.getX();
+			lastDragY = e.getY();
+		});
+		canvas.setOnMouseDragged(e -> {
+			canvas.pan(e.getX() - lastDragX, e.getY() - lastDragY);
+			lastDragX = e.getX();
+			lastDragY = e.getY();
+			redraw(canvas);
+		});
+
+		//Handles zooming in and out about the mouse.
+		canvas.setOnScroll(e -> {
+			if (e.getDeltaY() != 0) {
+				canvas.zoom(e.getDeltaY() > 0 ? SCALING_FACTOR : 1 / SCALING_FACTOR, e.getX(), e.getY());
+				redraw(canvas);
+			}
+		});
+		canvas.widthProperty().addListener(o -> redraw(canvas));
+		areaBox.setOnAction(e -> {
+			shadingArea = areaBox.isSelected();
+			redraw(canvas);
+		});
+
+		textField.setOnKeyPressed(e -> textField.setStyle("-fx-text-fill: black"));
+		//Graphs as the expression is typed; the parser and the tile cache only redo what the edit changed.
+		textField.textProperty().addListener(o -> graph(textField, textField.getText(), diffBox.isSelected(), canvas.getMinX(), canvas.getMaxX(), canvas.getMinY(), canvas.getMaxY(), (int) canvas.getWidth(), (int) canvas.getHeight(), plot -> show(canvas, plot)));
+
+		final BorderPane root = new BorderPane();
+		root.setTop(queryPane);
+		root.setCenter(graphPane);
+
+		final Scene scene = new Scene(root, WINDOW_WIDTH, WINDOW_HEIGHT);
+		primaryStage.setScene(scene);
+		primaryStage.show();
+	}
+
+	/**
+	 * Draws a finished plot's shaded area, curves, and the markers of its roots and extrema, on the canvas.
+	 */
+	private void show (PlotCanvas canvas, Plot plot) {
+		final List<Samples> series = new ArrayList<>();
+		final List<Color> colors = new ArrayList<>();
+		series.add(plot.area);
+		colors.add(Color.web(AREA_COLOR));
+		for (int i = 0; i < plot.samples.size(); i++) {
+			series.add(plot.samples.get(i));
+			colors.add(COLORS.get(i % COLORS.size()));
+		}
+		series.add(plot.markers);
+		colors.add(Color.web(MARKER_COLOR));
+		canvas.setSeries(series, colors);
+	}
+
+	/**
+	 * Resamples the curves across the canvas's current x range and redraws them.
+	 */
+	private void redraw (PlotCanvas canvas) {
+		if (canvas.getWidth() >= 1) {
+			redraw(canvas.getMinX(), canvas.getMaxX(), canvas.getMinY(), canvas.getMaxY(), (int) canvas.getWidth(), (int) canvas.getHeight(), plot -> show(canvas, plot));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Reduces a sampled series to what can actually be seen at a given screen resolution. The points are
+ * grouped by the pixel column they fall in, and each column keeps only its first, lowest, highest and
+ * last point, in order. Drawn as a polyline, the result covers exactly the same pixels as the original
+ * -- every spike and extremum survives -- but holds at most four points per column, however densely
+ * the series was sampled.
+ *
+ * Breaks are kept, and a column's points on either side of a break are reduced separately.
+ */
+public class Decimator {
+	private Decimator () {
+	}
+
+	/**
+	 * Decimates a series for a view.
+	 * @param samples the series, in increasing x order between breaks
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param pixelWidth how many pixel columns the view is drawn across
+	 * @return the decimated series; points left or right of the view are kept only as far as they
+	 *         are needed to draw the lines running into it
+	 */
+	public static Samples decimate (Samples samples, double minX, double maxX, int pixelWidth) {
+		final double columnsPerUnit = pixelWidth / (maxX - minX);
+		final int size = samples.size();
+		final Samples decimated = new Samples(Math.min(size, 4 * pixelWidth + 16));
+
+		long column = Long.MIN_VALUE;
+		int first = -1, lowest = -1, highest = -1, last = -1;
+		for (int i = 0; i <= size; i++) {
+			final boolean isBreak = i < size && samples.isBreak(i);
+			// Everything left or right of the view falls into one column on that side.
+			final long c = i == size || isBreak ? Long.MIN_VALUE : column(samples.getX(i), minX, columnsPerUnit, pixelWidth);
+			if (c != column || isBreak) {
+				if (first >= 0) {
+					flush(samples, first, lowest, highest, last, decimated);
+					first = -1;
+				}
+				if (isBreak) {
+					decimated.addBreak();
+					column = Long.MIN_VALUE;
+					continue;
+				}
+				column = c;
+			}
+			if (i == size) {
+				break;
+			}
+			final double y = samples.getY(i);
+			if (first < 0) {
+				first = lowest = highest = i;
+			} else if (y < samples.getY(lowest)) {
+				lowest = i;
+			} else if (y > samples.getY(highest)) {
+				highest = i;
+			}
+			last = i;
+		}
+		return decimated;
+	}
+
+	private static long column (double x, double minX, double columnsPerUnit, int pixelWidth) {
+		final double c = Math.floor((x - minX) * columnsPerUnit);
+		return c < 0 ? -1 : c >= pixelWidth ? pixelWidth : (long) c;
+	}
+
+	/**
+	 * Appends a column's first, lowest, highest and last points in their original order, each once.
+	 */
+	private static void flush (Samples samples, int first, int lowest, int highest, int last, Samples decimated) {
+		final int low = Math.min(lowest, highest), high = Math.max(lowest, highest);
+		decimated.add(samples.getX(first), samples.getY(first));
+		if (low != first) {
+			decimated.add(samples.getX(low), samples.getY(low));
+		}
+		if (high != low && high != last) {
+			decimated.add(samples.getX(high), samples.getY(high));
+		}
+		if (last != first && last != low) {
+			decimated.add(samples.getX(last), samples.getY(last));
+		}
+	}
+}
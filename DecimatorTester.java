@@ -0,0 +1,77 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests for the per-pixel-column min/max decimation of sampled series.
+ */
+public class DecimatorTester {
+	private static Samples sample (int count, double min, double max, java.util.function.DoubleUnaryOperator function) {
+		final Samples samples = new Samples(count);
+		for (int i = 0; i < count; i++) {
+			final double x = Sampler.x(min, max, i, count);
+			samples.add(x, function.applyAsDouble(x));
+		}
+		return samples;
+	}
+
+	@Test
+	/**
+	 * Verifies that a dense series is cut down to at most four points per column and keeps its ends.
+	 */
+	public void testBoundsPointCount () {
+		final Samples samples = sample(1_000_000, -10, 10, Math::sin);
+		final Samples decimated = Decimator.decimate(samples, -10, 10, 445);
+		assertTrue(decimated.size() <= 4 * 446, "" + decimated.size());
+		assertEquals(-10, decimated.getX(0), 0);
+		assertEquals(10, decimated.getX(decimated.size() - 1), 0);
+		for (int i = 1; i < decimated.size(); i++) {
+			assertTrue(decimated.getX(i) > decimated.getX(i - 1));
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that a one-point spike narrower than a pixel survives decimation.
+	 */
+	public void testKeepsSpikes () {
+		final Samples samples = sample(100_001, 0, 1, x -> 0);
+		samples.ys()[54_321] = 7;
+		samples.ys()[12_345] = -3;
+		final Samples decimated = Decimator.decimate(samples, 0, 1, 100);
+		double highest = 0, lowest = 0;
+		for (int i = 0; i < decimated.size(); i++) {
+			highest = Math.max(highest, decimated.getY(i));
+			lowest = Math.min(lowest, decimated.getY(i));
+		}
+		assertEquals(7, highest, 0);
+		assertEquals(-3, lowest, 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that breaks are kept, even within one column.
+	 */
+	public void testKeepsBreaks () {
+		final Samples samples = new Samples();
+		samples.add(0, 1);
+		samples.add(0.001, 2);
+		samples.addBreak();
+		samples.add(0.002, 3);
+		samples.add(0.5, 4);
+		final Samples decimated = Decimator.decimate(samples, 0, 1, 10);
+		assertEquals(5, decimated.size());
+		assertTrue(decimated.isBreak(2));
+	}
+
+	@Test
+	/**
+	 * Verifies that points outside the view collapse to those needed to draw the lines into it.
+	 */
+	public void testCollapsesOutsideView () {
+		final Samples samples = sample(10_001, -100, 100, x -> x);
+		final Samples decimated = Decimator.decimate(samples, -1, 1, 10);
+		assertTrue(decimated.size() <= 4 * 12);
+		assertEquals(-100, decimated.getX(0), 0);
+		assertEquals(100, decimated.getX(decimated.size() - 1), 0);
+	}
+}
@@ -0,0 +1,365 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the roots, minima and maxima of an expression across a range of x.
+ *
+ * The range is split into subranges that are searched in parallel. Each subrange is bisected, but
+ * only where the interval enclosure of the function still contains 0, so stretches that cannot hold a
+ * root are dropped after a single enclosure instead of being scanned. A piece whose ends differ in
+ * sign is handed to Brent's method as soon as the enclosure of the derivative proves the function
+ * monotonic there -- then it has exactly one root -- or once the piece is as small as the search goes.
+ * Extrema are found the same way, as the roots of the derivative where it changes sign; a root that
+ * only touches 0, such as that of x^2, is found as an extremum whose value is 0.
+ *
+ * A sign change across a pole, as 1/x has at 0, is not a root: Brent's method converges to the pole,
+ * where the function grows instead of vanishing, and such points are discarded.
+ *
+ * The derivative is symbolic where differentiate supports it, and computed by forward-mode
+ * differentiation, without enclosures, where it does not. An analyzer may be used by several threads.
+ * A search can be cancelled part way, as the calculator cancels the analysis of a formula that has
+ * been edited again.
+ */
+public class ExpressionAnalyzer {
+	public static final int DEFAULT_SUBRANGES = 64;
+	public static final int DEFAULT_MAX_DEPTH = 16;
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	private static final int MAX_BRENT_ITERATIONS = 100;
+	private static final BooleanSupplier NEVER = () -> false;
+
+	/**
+	 * What a point found by the analyzer is.
+	 */
+	public enum Kind { ROOT, MINIMUM, MAXIMUM }
+
+	/**
+	 * A root or an extremum, at x, where the expression is y.
+	 */
+	public static final class Point {
+		public final Kind kind;
+		public final double x, y;
+
+		Point (Kind kind, double x, double y) {
+			this.kind = kind;
+			this.x = x;
+			this.y = y;
+		}
+
+		@Override
+		public String toString () {
+			return kind + " (" + x + ", " + y + ")";
+		}
+	}
+
+	/**
+	 * A function to find the roots of, with the enclosures that prune the search for them.
+	 */
+	private static final class Target {
+		final DoubleUnaryOperator function;
+		final Expression expression, slope;
+
+		Target (DoubleUnaryOperator function, Expression expression, Expression slope) {
+			this.function = function;
+			this.expression = expression;
+			this.slope = slope;
+		}
+	}
+
+	private final Target value, derivative;
+	private final int subranges, maxDepth;
+	private final double tolerance;
+	private final LongAdder evaluations = new LongAdder();
+
+	public ExpressionAnalyzer (Expression expression) {
+		this(expression, DEFAULT_SUBRANGES, DEFAULT_MAX_DEPTH, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * @param expression the expression to analyze
+	 * @param subranges how many pieces to split a range into, to be searched in parallel
+	 * @param maxDepth how many times a piece may be halved while searching it
+	 * @param tolerance how close to the true root or extremum x must be, and how close to 0 the value
+	 * of an extremum must be for it to count as a root
+	 */
+	public ExpressionAnalyzer (Expression expression, int subranges, int maxDepth, double tolerance) {
+		this.subranges = subranges;
+		this.maxDepth = maxDepth;
+		this.tolerance = tolerance;
+		final Expression optimized = ExpressionOptimizer.optimize(expression);
+		final ExpressionInterner interner = new ExpressionInterner();
+		final ExpressionSimplifier simplifier = new ExpressionSimplifier();
+		final Expression first = differentiate(interner, simplifier, expression);
+		final Expression second = first == null ? null : differentiate(interner, simplifier, first);
+		final Expression optimizedFirst = first == null ? null : ExpressionOptimizer.optimize(first);
+		value = new Target(counted(ExpressionCompiler.compile(optimized)), optimized, optimizedFirst);
+		if (first != null) {
+			derivative = new Target(counted(ExpressionCompiler.compile(optimizedFirst)), optimizedFirst, second == null ? null : ExpressionOptimizer.optimize(second));
+		} else {
+			derivative = new Target(counted(x -> {
+				final double[] slope = new double[1];
+				optimized.evaluateWithDerivative(x, slope);
+				return slope[0];
+			}), null, null);
+		}
+	}
+
+	/**
+	 * Builds an analyzer from an expression that is already optimized and compiled, and its derivative,
+	 * as the calculator has them for drawing, so none of that work is done again.
+	 * @param optimized the expression, optimized
+	 * @param function the expression compiled; called from several threads at once
+	 * @param derivative the simplified, optimized derivative, or null where differentiate does not support it
+	 * @param slope the derivative as a function; called from several threads at once
+	 */
+	ExpressionAnalyzer (Expression optimized, DoubleUnaryOperator function, Expression derivative, DoubleUnaryOperator slope) {
+		this.subranges = DEFAULT_SUBRANGES;
+		this.maxDepth = DEFAULT_MAX_DEPTH;
+		this.tolerance = DEFAULT_TOLERANCE;
+		value = new Target(counted(function), optimized, derivative);
+		// The extrema are bracketed without the enclosure of the second derivative, which would cost
+		// differentiating and simplifying the derivative in turn.
+		this.derivative = new Target(counted(slope), derivative, null);
+	}
+
+	/**
+	 * Returns the simplified derivative of the expression, or null where differentiate does not support it.
+	 */
+	private static Expression differentiate (ExpressionInterner interner, ExpressionSimplifier simplifier, Expression expression) {
+		try {
+			return simplifier.simplify(interner.differentiate(expression));
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+	}
+
+	private DoubleUnaryOperator counted (DoubleUnaryOperator function) {
+		return x -> {
+			evaluations.increment();
+			return function.applyAsDouble(x);
+		};
+	}
+
+	/**
+	 * @return how many times the expression or its derivative has been evaluated
+	 */
+	public long getEvaluations () {
+		return evaluations.sum();
+	}
+
+	/**
+	 * Finds the roots of the expression in [min, max].
+	 * @return the roots, by increasing x
+	 */
+	public List<Point> roots (double min, double max) {
+		return analyze(min, max, true, false);
+	}
+
+	/**
+	 * Finds the minima and maxima of the expression in the open range (min, max).
+	 * @return the extrema, by increasing x
+	 */
+	public List<Point> extrema (double min, double max) {
+		return analyze(min, max, false, true);
+	}
+
+	/**
+	 * Finds the roots, minima and maxima of the expression in [min, max].
+	 * @return the points found, by increasing x
+	 */
+	public List<Point> analyze (double min, double max) {
+		return analyze(min, max, true, true);
+	}
+
+	/**
+	 * Finds the roots, minima and maxima of the expression in [min, max], unless cancelled first.
+	 * @param cancelled polled as the search goes; once it returns true, the search stops
+	 * @return the points found, by increasing x, or null if the search was cancelled part way
+	 */
+	public List<Point> analyze (double min, double max, BooleanSupplier cancelled) {
+		return analyze(min, max, true, true, cancelled);
+	}
+
+	private List<Point> analyze (double min, double max, boolean withRoots, boolean withExtrema) {
+		return analyze(min, max, withRoots, withExtrema, NEVER);
+	}
+
+	private List<Point> analyze (double min, double max, boolean withRoots, boolean withExtrema, BooleanSupplier cancelled) {
+		final List<Point> points = new ArrayList<>();
+		final List<Point> extrema = findExtrema(min, max, cancelled);
+		if (extrema == null) {
+			return null;
+		}
+		if (withExtrema) {
+			points.addAll(extrema);
+		}
+		if (withRoots) {
+			final List<Double> found = findRoots(value, min, max, cancelled);
+			if (found == null) {
+				return null;
+			}
+			final List<Point> roots = new ArrayList<>();
+			for (double x : found) {
+				roots.add(new Point(Kind.ROOT, x, 0));
+			}
+			// Roots of even multiplicity do not change sign, but are extrema whose value is 0.
+			for (Point extremum : extrema) {
+				if (Math.abs(extremum.y) <= tolerance && roots.stream().noneMatch(root -> Math.abs(root.x - extremum.x) <= 2 * tolerance(root.x))) {
+					roots.add(new Point(Kind.ROOT, extremum.x, extremum.y));
+				}
+			}
+			points.addAll(roots);
+		}
+		points.sort(Comparator.comparingDouble(point -> point.x));
+		return points;
+	}
+
+	private List<Point> findExtrema (double min, double max, BooleanSupplier cancelled) {
+		final List<Double> stationary = findRoots(derivative, min, max, cancelled);
+		if (stationary == null) {
+			return null;
+		}
+		final List<Point> extrema = new ArrayList<>();
+		for (double x : stationary) {
+			final double h = 4 * tolerance(x);
+			final double before = derivative.function.applyAsDouble(x - h), after = derivative.function.applyAsDouble(x + h);
+			if (x <= min || x >= max || before == 0 || after == 0 || (before < 0) == (after < 0)) {
+				// A stationary point where the slope keeps its sign, such as that of x^3, is no extremum.
+				continue;
+			}
+			extrema.add(new Point(before < 0 ? Kind.MINIMUM : Kind.MAXIMUM, x, value.function.applyAsDouble(x)));
+		}
+		return extrema;
+	}
+
+	/**
+	 * Finds the roots of a target in [min, max], searching its subranges in parallel.
+	 * @return the roots, or null if the search was cancelled part way
+	 */
+	private List<Double> findRoots (Target target, double min, double max, BooleanSupplier cancelled) {
+		final DoubleUnaryOperator g = target.function;
+		final List<Double> roots = IntStream.range(0, subranges).parallel().mapToObj(i -> {
+			final double a = Sampler.x(min, max, i, subranges + 1), b = Sampler.x(min, max, i + 1, subranges + 1);
+			final List<Double> found = new ArrayList<>();
+			search(target, a, g.applyAsDouble(a), b, g.applyAsDouble(b), 0, found, cancelled);
+			return found;
+		}).flatMap(List::stream).sorted().collect(Collectors.toCollection(ArrayList::new));
+		// The searches stop early once cancelled, so what they found is not all there is.
+		if (cancelled.getAsBoolean()) {
+			return null;
+		}
+		if (g.applyAsDouble(max) == 0) {
+			roots.add(max);
+		}
+		// A root on the boundary of two subranges, or found from both sides of it, is kept once.
+		final List<Double> distinct = new ArrayList<>();
+		for (double root : roots) {
+			if (distinct.isEmpty() || root - distinct.get(distinct.size() - 1) > 2 * tolerance(root)) {
+				distinct.add(root);
+			}
+		}
+		return distinct;
+	}
+
+	/**
+	 * Appends the roots of the target in [a, b), given its values at the ends, or stops once cancelled.
+	 */
+	private void search (Target target, double a, double ga, double b, double gb, int depth, List<Double> found, BooleanSupplier cancelled) {
+		if (cancelled.getAsBoolean()) {
+			return;
+		}
+		if (ga == 0) {
+			found.add(a);
+		}
+		final Interval range = target.expression == null ? Interval.ENTIRE : target.expression.evaluateInterval(a, b);
+		if (range.isEmpty() || !range.contains(0)) {
+			return;
+		}
+		final boolean signChange = (ga < 0 && gb > 0) || (ga > 0 && gb < 0);
+		if (signChange) {
+			final Interval slope = target.slope == null || !range.isDefined() ? Interval.ENTIRE : target.slope.evaluateInterval(a, b);
+			if ((slope.isDefined() && !slope.contains(0)) || depth >= maxDepth || b - a <= tolerance(a)) {
+				final double root = brent(target.function, a, ga, b, gb, cancelled);
+				// At a pole the function grows as the bracket closes on it; at a root it vanishes.
+				if (range.isDefined() || Math.abs(target.function.applyAsDouble(root)) <= Math.max(Math.abs(ga), Math.abs(gb))) {
+					found.add(root);
+				}
+				return;
+			}
+		} else if (depth >= maxDepth || b - a <= tolerance(a)) {
+			return;
+		}
+		final double m = 0.5 * (a + b);
+		final double gm = target.function.applyAsDouble(m);
+		search(target, a, ga, m, gm, depth + 1, found, cancelled);
+		search(target, m, gm, b, gb, depth + 1, found, cancelled);
+	}
+
+	private double tolerance (double x) {
+		return tolerance * Math.max(1, Math.abs(x));
+	}
+
+	/**
+	 * Finds a root of g in [a, b], where g(a) and g(b) differ in sign, by Brent's method: inverse
+	 * quadratic interpolation or secant steps where they make progress, bisection where they do not.
+	 * Once cancelled, returns the best estimate so far.
+	 */
+	private double brent (DoubleUnaryOperator g, double a, double ga, double b, double gb, BooleanSupplier cancelled) {
+		double c = a, gc = ga, d = b - a, e = d;
+		for (int i = 0; i < MAX_BRENT_ITERATIONS && !cancelled.getAsBoolean(); i++) {
+			if ((gb > 0) == (gc > 0)) {
+				c = a;
+				gc = ga;
+				d = e = b - a;
+			}
+			if (Math.abs(gc) < Math.abs(gb)) {
+				a = b;
+				b = c;
+				c = a;
+				ga = gb;
+				gb = gc;
+				gc = ga;
+			}
+			final double delta = 2 * Math.ulp(b) + 0.5 * tolerance(b);
+			final double half = 0.5 * (c - b);
+			if (Math.abs(half) <= delta || gb == 0) {
+				return b;
+			}
+			if (Math.abs(e) >= delta && Math.abs(ga) > Math.abs(gb)) {
+				double p, q;
+				final double s = gb / ga;
+				if (a == c) {
+					p = 2 * half * s;
+					q = 1 - s;
+				} else {
+					final double r = gb / gc, t = ga / gc;
+					p = s * (2 * half * t * (t - r) - (b - a) * (r - 1));
+					q = (t - 1) * (r - 1) * (s - 1);
+				}
+				if (p > 0) {
+					q = -q;
+				} else {
+					p = -p;
+				}
+				if (2 * p < Math.min(3 * half * q - Math.abs(delta * q), Math.abs(e * q))) {
+					e = d;
+					d = p / q;
+				} else {
+					d = half;
+					e = d;
+				}
+			} else {
+				d = half;
+				e = d;
+			}
+			a = b;
+			ga = gb;
+			b += Math.abs(d) > delta ? d : Math.copySign(delta, half);
+			gb = g.applyAsDouble(b);
+		}
+		return b;
+	}
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for finding roots and extrema.
+ */
+public class ExpressionAnalyzerTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	private static void assertPoints (List<ExpressionAnalyzer.Point> points, ExpressionAnalyzer.Kind kind, double... xs) {
+		assertEquals(xs.length, points.size(), points.toString());
+		for (int i = 0; i < xs.length; i++) {
+			assertEquals(kind, points.get(i).kind, points.toString());
+			assertEquals(xs[i], points.get(i).x, 1e-8, points.toString());
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies the roots and extrema of a cubic.
+	 */
+	public void testCubic () throws ExpressionParseException {
+		// (x+2)(x-1)(x-3) = x^3 - 2x^2 - 5x + 6, with extrema at (2 -+ sqrt(19))/3.
+		final ExpressionAnalyzer analyzer = new ExpressionAnalyzer(_parser.parse("x^3 - 2*x^2 - 5*x + 6"));
+		assertPoints(analyzer.roots(-10, 10), ExpressionAnalyzer.Kind.ROOT, -2, 1, 3);
+		final List<ExpressionAnalyzer.Point> extrema = analyzer.extrema(-10, 10);
+		assertEquals(2, extrema.size(), extrema.toString());
+		assertPoints(extrema.subList(0, 1), ExpressionAnalyzer.Kind.MAXIMUM, (2 - Math.sqrt(19)) / 3);
+		assertPoints(extrema.subList(1, 2), ExpressionAnalyzer.Kind.MINIMUM, (2 + Math.sqrt(19)) / 3);
+		assertEquals(5, analyzer.analyze(-10, 10).size());
+	}
+
+	@Test
+	/**
+	 * Verifies that a root that only touches 0 is found, and a stationary point that is no extremum is not.
+	 */
+	public void testTouchingRootAndInflection () throws ExpressionParseException {
+		final ExpressionAnalyzer square = new ExpressionAnalyzer(_parser.parse("(x-1)^2"));
+		assertPoints(square.roots(-5, 5), ExpressionAnalyzer.Kind.ROOT, 1);
+		assertPoints(square.extrema(-5, 5), ExpressionAnalyzer.Kind.MINIMUM, 1);
+		final ExpressionAnalyzer cube = new ExpressionAnalyzer(_parser.parse("x^3"));
+		assertPoints(cube.extrema(-5, 5), ExpressionAnalyzer.Kind.MINIMUM);
+		assertPoints(cube.roots(-5, 5), ExpressionAnalyzer.Kind.ROOT, 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that poles are not taken for roots, and that the domain is respected.
+	 */
+	public void testPolesAndDomain () throws ExpressionParseException {
+		assertPoints(new ExpressionAnalyzer(_parser.parse("1/(x-0.3)")).roots(-10, 10), ExpressionAnalyzer.Kind.ROOT);
+		assertPoints(new ExpressionAnalyzer(_parser.parse("(x-2)/(x+1)")).roots(-10, 10), ExpressionAnalyzer.Kind.ROOT, 2);
+		assertPoints(new ExpressionAnalyzer(_parser.parse("log(x)")).roots(-10, 10), ExpressionAnalyzer.Kind.ROOT, 1);
+		// x^x has no symbolic derivative; its minimum is at 1/e.
+		assertPoints(new ExpressionAnalyzer(_parser.parse("x^x")).extrema(0.01, 3), ExpressionAnalyzer.Kind.MINIMUM, 1 / Math.E);
+	}
+
+	@Test
+	/**
+	 * Verifies that many roots are all found, with fewer evaluations than a dense scan would take.
+	 */
+	public void testManyRootsFewEvaluations () throws ExpressionParseException {
+		// A polynomial with roots at -4.5, -3.5, ..., 4.5.
+		final StringBuilder text = new StringBuilder("1");
+		final double[] expected = new double[10];
+		for (int i = 0; i < 10; i++) {
+			expected[i] = i - 4.5;
+			text.append("*(x-(").append(expected[i]).append("))");
+		}
+		final ExpressionAnalyzer analyzer = new ExpressionAnalyzer(_parser.parse(text.toString()));
+		assertPoints(analyzer.roots(-10, 10), ExpressionAnalyzer.Kind.ROOT, expected);
+		assertTrue(analyzer.getEvaluations() < 20_000, analyzer.getEvaluations() + " evaluations");
+	}
+
+	@Test
+	/**
+	 * Verifies that an analyzer built from pieces already optimized and compiled finds what one built
+	 * from the expression does, and that a cancelled analysis stops at once and reports nothing.
+	 */
+	public void testPreparedAndCancelled () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^3 - 2*x^2 - 5*x + 6");
+		final Expression optimized = ExpressionOptimizer.optimize(expression);
+		final Expression derivative = ExpressionOptimizer.optimize(new ExpressionSimplifier().simplify(expression.differentiate()));
+		final ExpressionAnalyzer prepared = new ExpressionAnalyzer(optimized, ExpressionCompiler.compile(optimized), derivative, ExpressionCompiler.compile(derivative));
+		final List<ExpressionAnalyzer.Point> expected = new ExpressionAnalyzer(expression).analyze(-10, 10), actual = prepared.analyze(-10, 10, () -> false);
+		assertEquals(expected.size(), actual.size(), actual.toString());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i).kind, actual.get(i).kind);
+			assertEquals(expected.get(i).x, actual.get(i).x, 1e-8);
+		}
+
+		final long evaluations = prepared.getEvaluations();
+		assertNull(prepared.analyze(-10, 10, () -> true));
+		// Only the ends of each subrange are evaluated before the search sees it is cancelled.
+		assertTrue(prepared.getEvaluations() - evaluations <= 2 * ExpressionAnalyzer.DEFAULT_SUBRANGES, (prepared.getEvaluations() - evaluations) + " evaluations");
+	}
+}
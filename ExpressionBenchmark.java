@@ -0,0 +1,292 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Microbenchmarks for parsing, evaluation, differentiation and sampling, run from the command line:
+ *
+ *   java ExpressionBenchmark [filter...]
+ *
+ * runs every benchmark whose name contains one of the filters (all of them if none are given), and
+ * prints for each the mean time per operation with its spread over the measured iterations, and the
+ * bytes allocated per operation by the benchmarking thread (not by pool threads it hands work to).
+ * Every benchmark draws its inputs from the one Corpus below, so the numbers for different stages
+ * describe the same formulas.
+ *
+ * Each benchmark is warmed up before it is measured, so the JIT has compiled it, and every result is
+ * fed to a sink the JIT cannot see through, so no work is eliminated as dead. This is the harness JMH
+ * would provide; JMH itself cannot be used here, as it generates code that must import the benchmark
+ * class, and these classes are in the unnamed package. Nor is there a Maven or Gradle build: like the
+ * testers, this is compiled with javac alongside the other classes, with the jars in lib and JavaFX on
+ * the class path, and run as above. Allocation comes from the JVM's per-thread counter rather than
+ * JMH's -prof gc.
+ */
+public class ExpressionBenchmark {
+	private static final int WARMUP_ITERATIONS = 5, MEASURED_ITERATIONS = 10;
+	private static final long ITERATION_NANOS = 200_000_000L;
+	private static final int SAMPLE_POINTS = 10_000, PIXEL_WIDTH = 600, PIXEL_HEIGHT = 500;
+
+	/** Where results go, so the work that made them cannot be skipped. */
+	private static volatile long sink;
+
+	/**
+	 * The formulas every benchmark is run on.
+	 */
+	static final class Corpus {
+		/** Sizes, in repeated terms, of the inputs of growing length. */
+		static final int[] LENGTHS = { 2, 4, 8, 64, 256 };
+		/** Depths of the nested parentheses. */
+		static final int[] DEPTHS = { 2, 4, 8, 64, 256 };
+		/**
+		 * The most terms, or depth, given to SimpleExpressionParser, which backtracks over every split of its
+		 * input and so takes time exponential in its length.
+		 */
+		static final int SIMPLE_PARSER_LIMIT = 8;
+		/** Formulas representative of what users graph. */
+		static final String[] REPRESENTATIVE = {
+			"2*x+5*x*x",
+			"x^3-4*x^2+x/2-7",
+			"log(x)*x^2/(1+x^2)",
+			"(x+1)^0.5-log(x+2)/x",
+			"((x-1)*(x+2)*(x-3))/(x^2+1)",
+		};
+
+		/**
+		 * @return a valid formula of terms repeated terms, of the shape users type
+		 */
+		static String valid (int terms) {
+			final StringBuilder str = new StringBuilder("x");
+			for (int i = 1; i < terms; i++) {
+				str.append(i % 3 == 0 ? "-" : "+").append(i).append("*x^").append(i % 4 + 1);
+			}
+			return str.toString();
+		}
+
+		/**
+		 * @return the valid formula of the same length, broken at its very end, so a parser gets as far as it can before failing
+		 */
+		static String invalid (int terms) {
+			return valid(terms) + "*";
+		}
+
+		/**
+		 * @return x nested in depth pairs of parentheses, each with a term added
+		 */
+		static String nested (int depth) {
+			final StringBuilder str = new StringBuilder();
+			for (int i = 0; i < depth; i++) {
+				str.append("(");
+			}
+			str.append("x");
+			for (int i = 0; i < depth; i++) {
+				str.append("+1)");
+			}
+			return str.toString();
+		}
+
+		static Expression parse (String str) {
+			try {
+				return new RecursiveDescentExpressionParser().parse(str);
+			} catch (ExpressionParseException e) {
+				throw new IllegalStateException(str, e);
+			}
+		}
+	}
+
+	/**
+	 * One operation to time.
+	 */
+	private interface Operation {
+		Object run () throws Exception;
+	}
+
+	/**
+	 * One operation to time whose result is a double, so it need not be boxed.
+	 */
+	private interface DoubleOperation {
+		double run () throws Exception;
+	}
+
+	/**
+	 * An operation with its result reduced to a long for the sink: the identity hash of an object, which
+	 * costs nothing however large it is, or the bits of a double.
+	 */
+	private interface SunkOperation {
+		long run () throws Exception;
+	}
+
+	private final List<String> filters;
+
+	private ExpressionBenchmark (List<String> filters) {
+		this.filters = filters;
+	}
+
+	public static void main (String[] args) throws Exception {
+		new ExpressionBenchmark(Arrays.asList(args)).runAll();
+	}
+
+	private void runAll () throws Exception {
+		System.out.printf("%-40s %14s %12s %14s%n", "Benchmark", "ns/op", "+/-", "B/op");
+
+		final ExpressionParser simple = new SimpleExpressionParser(), recursiveDescent = new RecursiveDescentExpressionParser();
+		for (int terms : Corpus.LENGTHS) {
+			final String valid = Corpus.valid(terms), invalid = Corpus.invalid(terms);
+			if (terms <= Corpus.SIMPLE_PARSER_LIMIT) {
+				run("parse.simple.valid." + terms, () -> simple.parse(valid));
+				run("parse.simple.invalid." + terms, () -> parseFailure(simple, invalid));
+			}
+			run("parse.recursiveDescent.valid." + terms, () -> recursiveDescent.parse(valid));
+			run("parse.recursiveDescent.invalid." + terms, () -> parseFailure(recursiveDescent, invalid));
+		}
+		for (int depth : Corpus.DEPTHS) {
+			final String nested = Corpus.nested(depth);
+			if (depth <= Corpus.SIMPLE_PARSER_LIMIT) {
+				run("parse.simple.nested." + depth, () -> simple.parse(nested));
+			}
+			run("parse.recursiveDescent.nested." + depth, () -> recursiveDescent.parse(nested));
+		}
+
+		for (int i = 0; i < Corpus.REPRESENTATIVE.length; i++) {
+			final Expression expression = Corpus.parse(Corpus.REPRESENTATIVE[i]);
+			final DoubleUnaryOperator compiled = ExpressionCompiler.compile(ExpressionOptimizer.optimize(expression));
+			final double[] xs = new double[SAMPLE_POINTS];
+			for (int k = 0; k < xs.length; k++) {
+				xs[k] = Sampler.x(GraphingCalculator.MIN_X, GraphingCalculator.MAX_X, k, xs.length);
+			}
+			run("evaluate.tree." + i, () -> {
+				double sum = 0;
+				for (double x : xs) {
+					sum += expression.evaluate(x);
+				}
+				return sum;
+			});
+			run("evaluate.compiled." + i, () -> {
+				double sum = 0;
+				for (double x : xs) {
+					sum += compiled.applyAsDouble(x);
+				}
+				return sum;
+			});
+		}
+
+		// Each derivative is simplified before it is differentiated again, as differentiate cannot take
+		// the derivative of the unfolded powers, such as x^(2-1), that it leaves behind. The two are timed
+		// apart: differentiate.*.orderN takes the derivative of the simplified derivative of order N-1, and
+		// simplify.*.orderN simplifies what that gives.
+		final ExpressionSimplifier simplifier = new ExpressionSimplifier();
+		for (int i = 0; i < Corpus.REPRESENTATIVE.length; i++) {
+			Expression lower = Corpus.parse(Corpus.REPRESENTATIVE[i]);
+			for (int order = 1; order <= 5; order++) {
+				final Expression simplified = lower, raw = simplified.differentiate();
+				run("differentiate." + i + ".order" + order, () -> simplified.differentiate());
+				run("simplify." + i + ".order" + order, () -> simplifier.simplify(raw));
+				lower = simplifier.simplify(raw);
+			}
+		}
+
+		for (int i = 0; i < Corpus.REPRESENTATIVE.length; i++) {
+			final String text = Corpus.REPRESENTATIVE[i];
+			run("graph." + i, () -> graph(recursiveDescent, text));
+		}
+	}
+
+	private static Object parseFailure (ExpressionParser parser, String str) {
+		try {
+			return parser.parse(str);
+		} catch (ExpressionParseException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * What GraphingCalculator.graph does in the background for a new formula and its derivative, from
+	 * a cold tile cache: parse, differentiate, simplify, optimize, compile, sample and decimate.
+	 */
+	private static Object graph (ExpressionParser parser, String text) throws ExpressionParseException {
+		final SampleTileCache tileCache = new SampleTileCache(GraphingCalculator.TILE_CACHE_CAPACITY);
+		final Expression expression = parser.parse(text);
+		final Expression derivative = new ExpressionInterner().differentiate(expression);
+		final List<Expression> expressions = List.of(ExpressionOptimizer.optimize(expression),
+			ExpressionOptimizer.optimize(new ExpressionSimplifier().simplify(derivative)));
+		int size = 0;
+		for (int i = 0; i < expressions.size(); i++) {
+			final Samples samples = tileCache.sample(text + i, ExpressionCompiler.compile(expressions.get(i)), expressions.get(i),
+				GraphingCalculator.MIN_X, GraphingCalculator.MAX_X, GraphingCalculator.MIN_Y, GraphingCalculator.MAX_Y, PIXEL_WIDTH, PIXEL_HEIGHT);
+			size += Decimator.decimate(samples, GraphingCalculator.MIN_X, GraphingCalculator.MAX_X, PIXEL_WIDTH).size();
+		}
+		return size;
+	}
+
+	/**
+	 * Measures an operation, sinking the identity hash of its result rather than walking it for a hash.
+	 */
+	private void run (String name, Operation operation) throws Exception {
+		measure(name, () -> System.identityHashCode(operation.run()));
+	}
+
+	/**
+	 * Measures an operation, sinking the bits of its result rather than a boxed Double.
+	 */
+	private void run (String name, DoubleOperation operation) throws Exception {
+		measure(name, () -> Double.doubleToRawLongBits(operation.run()));
+	}
+
+	/**
+	 * Warms up and measures the specified operation, and prints the result, if its name passes the filters.
+	 */
+	private void measure (String name, SunkOperation operation) throws Exception {
+		if (!filters.isEmpty() && filters.stream().noneMatch(name::contains)) {
+			return;
+		}
+		for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+			iterate(operation);
+		}
+		final double[] nanosPerOp = new double[MEASURED_ITERATIONS];
+		long operations = 0, allocated = 0;
+		for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+			final long bytesBefore = allocatedBytes();
+			final long[] result = iterate(operation);
+			allocated += allocatedBytes() - bytesBefore;
+			operations += result[1];
+			nanosPerOp[i] = (double) result[0] / result[1];
+		}
+		double mean = 0, variance = 0;
+		for (double nanos : nanosPerOp) {
+			mean += nanos / nanosPerOp.length;
+		}
+		for (double nanos : nanosPerOp) {
+			variance += (nanos - mean) * (nanos - mean) / (nanosPerOp.length - 1);
+		}
+		System.out.printf("%-40s %14.1f %12.1f %14s%n", name, mean, Math.sqrt(variance),
+			allocatedBytes() < 0 ? "n/a" : String.format("%.1f", (double) allocated / operations));
+	}
+
+	/**
+	 * Runs the operation repeatedly for about ITERATION_NANOS.
+	 * @return the nanoseconds taken and the number of operations run
+	 */
+	private static long[] iterate (SunkOperation operation) throws Exception {
+		final long start = System.nanoTime();
+		long operations = 0, elapsed, hash = 0;
+		do {
+			hash += operation.run();
+			operations++;
+			elapsed = System.nanoTime() - start;
+		} while (elapsed < ITERATION_NANOS);
+		sink += hash;
+		return new long[] { elapsed, operations };
+	}
+
+	/**
+	 * @return the bytes the current thread has allocated so far, or -1 if the JVM does not count them
+	 */
+	private static long allocatedBytes () {
+		if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+			final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,366 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Encodes expressions into a compact binary form, and decodes them back without parsing.
+ *
+ * An encoding is a version byte followed by the nodes of the tree in postfix order, children before
+ * their parents, so a reader rebuilds the tree with a stack. Each node is a varint opcode followed by
+ * its operands:
+ *
+ *   VARIABLE  varint length, UTF-8 name, varint slot  (version 1 has no slot: every variable is x, slot 0)
+ *   LITERAL   8-byte IEEE 754 value, big-endian
+ *   ADD, SUBTRACT, MULTIPLY, DIVIDE, POWER  (pops two operands)
+ *   LOG, PARENTHESES  (pops one)
+ *   AFFINE    8-byte scale, 8-byte offset  (pops one)
+ *   INTEGER_POWER  zigzag varint exponent  (pops one)
+ *   REFERENCE varint index  (pushes the index-th node decoded so far again)
+ *
+ * Nodes are numbered in the order they are written, and a subtree equal to one already written is
+ * written as a REFERENCE to it, so repeated subexpressions -- common in derivatives -- are stored once,
+ * and are shared again when decoded. Literals are stored exactly, bit for bit.
+ */
+public final class ExpressionCodec {
+	public static final int VERSION = 2;
+
+	static final int VARIABLE = 0, LITERAL = 1, ADD = 2, SUBTRACT = 3, MULTIPLY = 4, DIVIDE = 5, POWER = 6;
+	static final int LOG = 7, PARENTHESES = 8, AFFINE = 9, INTEGER_POWER = 10, REFERENCE = 11;
+
+	private ExpressionCodec () {
+	}
+
+	/**
+	 * Encodes the specified expression.
+	 * @param expression the expression to encode; may share subtrees
+	 * @return its encoding
+	 * @throws IllegalArgumentException if the expression contains a node type that has no opcode
+	 */
+	public static byte[] encode (Expression expression) {
+		final Encoder encoder = new Encoder();
+		encoder.out.write(VERSION);
+		encoder.write(expression);
+		return encoder.out.toByteArray();
+	}
+
+	/**
+	 * Writes nodes in postfix order, numbering them as it goes. Trees are walked with explicit stacks,
+	 * so a long chain of terms, which parses to a tree as deep as the chain is long, does not overflow
+	 * the call stack.
+	 */
+	private static class Encoder {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		/** The class of each node seen, which equal subtrees share; kept by identity, so shared subtrees are visited once. */
+		final Map<Expression, Integer> classes = new IdentityHashMap<>();
+		/**
+		 * The class of each distinct subtree, keyed by its opcode, operands and the classes of its
+		 * children, which is what structural equality compares, without recursing to compare them.
+		 */
+		final Map<List<Object>, Integer> distinct = new HashMap<>();
+
+		void write (Expression expression) {
+			classify(expression);
+			// The number of the node written for each class, or -1 if none has been.
+			final int[] written = new int[distinct.size()];
+			Arrays.fill(written, -1);
+			int count = 0;
+			final Deque<Expression> pending = new ArrayDeque<>();
+			// Which of the pending nodes have had their children pushed, and are to be written when next popped.
+			final Set<Expression> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+			pending.push(expression);
+			while (!pending.isEmpty()) {
+				final Expression node = pending.pop();
+				final int c = classes.get(node);
+				if (expanded.remove(node)) {
+					writeNode(node);
+					written[c] = count++;
+				} else if (written[c] >= 0) {
+					writeVarint(REFERENCE);
+					writeVarint(written[c]);
+				} else {
+					final Expression[] children = children(node);
+					if (children.length == 0) {
+						writeNode(node);
+						written[c] = count++;
+					} else {
+						pending.push(node);
+						expanded.add(node);
+						for (int i = children.length - 1; i >= 0; i--) {
+							pending.push(children[i]);
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Assigns every node of the tree its class, children before their parents.
+		 */
+		void classify (Expression expression) {
+			final Deque<Expression> pending = new ArrayDeque<>();
+			pending.push(expression);
+			while (!pending.isEmpty()) {
+				final Expression node = pending.peek();
+				if (classes.containsKey(node)) {
+					pending.pop();
+					continue;
+				}
+				final Expression[] children = children(node);
+				boolean ready = true;
+				for (Expression child : children) {
+					if (!classes.containsKey(child)) {
+						pending.push(child);
+						ready = false;
+					}
+				}
+				if (ready) {
+					pending.pop();
+					final List<Object> key = new ArrayList<>(key(node));
+					for (Expression child : children) {
+						key.add(classes.get(child));
+					}
+					final Integer known = distinct.putIfAbsent(key, distinct.size());
+					classes.put(node, known != null ? known : distinct.size() - 1);
+				}
+			}
+		}
+
+		/**
+		 * Returns the children of a node, in the order they are written.
+		 */
+		static Expression[] children (Expression expression) {
+			if (expression instanceof AdditiveExpression) {
+				return new Expression[] { ((AdditiveExpression) expression).getLeft(), ((AdditiveExpression) expression).getRight() };
+			} else if (expression instanceof MultiplicativeExpression) {
+				return new Expression[] { ((MultiplicativeExpression) expression).getLeft(), ((MultiplicativeExpression) expression).getRight() };
+			} else if (expression instanceof ExponentialExpression) {
+				return new Expression[] { ((ExponentialExpression) expression).getBase(), ((ExponentialExpression) expression).getPower() };
+			} else if (expression instanceof LogarithmicExpression) {
+				return new Expression[] { ((LogarithmicExpression) expression).getArgument() };
+			} else if (expression instanceof ParentheticalExpression) {
+				return new Expression[] { ((ParentheticalExpression) expression).getExpression() };
+			} else if (expression instanceof AffineExpression) {
+				return new Expression[] { ((AffineExpression) expression).getOperand() };
+			} else if (expression instanceof IntegerPowerExpression) {
+				return new Expression[] { ((IntegerPowerExpression) expression).getBase() };
+			} else if (expression instanceof VariableExpression || expression instanceof LiteralExpression) {
+				return new Expression[0];
+			}
+			throw new IllegalArgumentException("Cannot encode " + expression.getClass().getName());
+		}
+
+		/**
+		 * Returns what identifies a node apart from its children: its opcode and operands.
+		 */
+		static List<Object> key (Expression expression) {
+			if (expression instanceof VariableExpression) {
+				final VariableExpression variable = (VariableExpression) expression;
+				return List.of(VARIABLE, variable.getName(), variable.getSlot());
+			} else if (expression instanceof LiteralExpression) {
+				return List.of(LITERAL, Double.doubleToRawLongBits(((LiteralExpression) expression).getValue()));
+			} else if (expression instanceof AffineExpression) {
+				final AffineExpression affine = (AffineExpression) expression;
+				return List.of(AFFINE, Double.doubleToRawLongBits(affine.getScale()), Double.doubleToRawLongBits(affine.getOffset()));
+			} else if (expression instanceof IntegerPowerExpression) {
+				return List.of(INTEGER_POWER, ((IntegerPowerExpression) expression).getExponent());
+			}
+			return List.of(opcode(expression));
+		}
+
+		/**
+		 * Returns the opcode of a node, which for the operators is all there is to write after its children.
+		 */
+		static int opcode (Expression expression) {
+			if (expression instanceof AdditiveExpression) {
+				return ((AdditiveExpression) expression).isSubtraction() ? SUBTRACT : ADD;
+			} else if (expression instanceof MultiplicativeExpression) {
+				return ((MultiplicativeExpression) expression).isDivision() ? DIVIDE : MULTIPLY;
+			} else if (expression instanceof ExponentialExpression) {
+				return POWER;
+			} else if (expression instanceof LogarithmicExpression) {
+				return LOG;
+			} else if (expression instanceof ParentheticalExpression) {
+				return PARENTHESES;
+			} else if (expression instanceof AffineExpression) {
+				return AFFINE;
+			} else if (expression instanceof IntegerPowerExpression) {
+				return INTEGER_POWER;
+			} else if (expression instanceof VariableExpression) {
+				return VARIABLE;
+			}
+			return LITERAL;
+		}
+
+		/**
+		 * Writes a node whose children, if any, have been written.
+		 */
+		void writeNode (Expression expression) {
+			final int op = opcode(expression);
+			writeVarint(op);
+			if (op == VARIABLE) {
+				final byte[] name = ((VariableExpression) expression).getName().getBytes(StandardCharsets.UTF_8);
+				writeVarint(name.length);
+				out.write(name, 0, name.length);
+				writeVarint(((VariableExpression) expression).getSlot());
+			} else if (op == LITERAL) {
+				writeDouble(((LiteralExpression) expression).getValue());
+			} else if (op == AFFINE) {
+				writeDouble(((AffineExpression) expression).getScale());
+				writeDouble(((AffineExpression) expression).getOffset());
+			} else if (op == INTEGER_POWER) {
+				final int exponent = ((IntegerPowerExpression) expression).getExponent();
+				writeVarint((exponent << 1) ^ (exponent >> 31));
+			}
+		}
+
+		/**
+		 * Writes a non-negative int seven bits at a time, low bits first, with the top bit of each byte set if more follow.
+		 */
+		void writeVarint (int value) {
+			while ((value & ~0x7f) != 0) {
+				out.write((value & 0x7f) | 0x80);
+				value >>>= 7;
+			}
+			out.write(value);
+		}
+
+		void writeDouble (double value) {
+			final long bits = Double.doubleToRawLongBits(value);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				out.write((int) (bits >>> shift));
+			}
+		}
+	}
+
+	/**
+	 * Decodes an expression.
+	 * @param bytes an encoding made by encode
+	 * @return the expression
+	 * @throws IllegalArgumentException if the bytes are not a valid encoding
+	 */
+	public static Expression decode (byte[] bytes) {
+		return decode(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Decodes an expression from the remaining bytes of a buffer, which are all consumed.
+	 * @param buffer holds an encoding made by encode, from its position to its limit
+	 * @return the expression
+	 * @throws IllegalArgumentException if the bytes are not a valid encoding
+	 */
+	public static Expression decode (ByteBuffer buffer) {
+		try {
+			final int version = buffer.get() & 0xff;
+			if (version < 1 || version > VERSION) {
+				throw new IllegalArgumentException("Unknown expression encoding version " + version);
+			}
+			final List<Expression> nodes = new ArrayList<>();
+			final Deque<Expression> stack = new ArrayDeque<>();
+			while (buffer.hasRemaining()) {
+				final int op = readVarint(buffer);
+				if (op == REFERENCE) {
+					final int index = readVarint(buffer);
+					if (index < 0 || index >= nodes.size()) {
+						throw new IllegalArgumentException("Reference to node " + index + " of " + nodes.size());
+					}
+					stack.push(nodes.get(index));
+					continue;
+				}
+				final Expression node;
+				switch (op) {
+					case VARIABLE: {
+						final int length = readVarint(buffer);
+						if (length > buffer.remaining()) {
+							throw new IllegalArgumentException("Variable name of " + length + " bytes with " + buffer.remaining() + " left");
+						}
+						final byte[] name = new byte[length];
+						buffer.get(name);
+						node = new VariableExpression(new String(name, StandardCharsets.UTF_8), version == 1 ? 0 : readVarint(buffer));
+						break;
+					}
+					case LITERAL:
+						node = new LiteralExpression(buffer.getDouble());
+						break;
+					case ADD:
+					case SUBTRACT: {
+						final Expression right = pop(stack), left = pop(stack);
+						node = new AdditiveExpression(left, right, op == SUBTRACT);
+						break;
+					}
+					case MULTIPLY:
+					case DIVIDE: {
+						final Expression right = pop(stack), left = pop(stack);
+						node = new MultiplicativeExpression(left, right, op == DIVIDE);
+						break;
+					}
+					case POWER: {
+						final Expression power = pop(stack), base = pop(stack);
+						node = new ExponentialExpression(base, power);
+						break;
+					}
+					case LOG:
+						node = new LogarithmicExpression(pop(stack));
+						break;
+					case PARENTHESES:
+						node = new ParentheticalExpression(pop(stack));
+						break;
+					case AFFINE: {
+						final double scale = buffer.getDouble(), offset = buffer.getDouble();
+						node = new AffineExpression(scale, offset, pop(stack));
+						break;
+					}
+					case INTEGER_POWER: {
+						final int zigzag = readRawVarint(buffer);
+						node = new IntegerPowerExpression(pop(stack), (zigzag >>> 1) ^ -(zigzag & 1));
+						break;
+					}
+					default:
+						throw new IllegalArgumentException("Unknown opcode " + op);
+				}
+				nodes.add(node);
+				stack.push(node);
+			}
+			if (stack.size() != 1) {
+				throw new IllegalArgumentException("Encoding leaves " + stack.size() + " expressions instead of one");
+			}
+			return stack.pop();
+		} catch (BufferUnderflowException e) {
+			throw new IllegalArgumentException("Truncated expression encoding", e);
+		}
+	}
+
+	private static Expression pop (Deque<Expression> stack) {
+		if (stack.isEmpty()) {
+			throw new IllegalArgumentException("Operator without operands");
+		}
+		return stack.pop();
+	}
+
+	/**
+	 * Reads a count, index or opcode, which is never negative.
+	 */
+	private static int readVarint (ByteBuffer buffer) {
+		final int value = readRawVarint(buffer);
+		if (value < 0) {
+			throw new IllegalArgumentException("Negative varint " + value);
+		}
+		return value;
+	}
+
+	/**
+	 * Reads any 32 bits, as a zigzag exponent may use all of them.
+	 */
+	private static int readRawVarint (ByteBuffer buffer) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			final byte b = buffer.get();
+			value |= (b & 0x7f) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("Varint longer than five bytes");
+	}
+}
@@ -0,0 +1,151 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Tests for the binary expression encoding and the memory-mapped store built on it.
+ */
+public class ExpressionCodecTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	@Test
+	/**
+	 * Verifies that random expressions, parsed, optimized and differentiated, decode to equal trees.
+	 */
+	public void testRoundTripRandomExpressions () {
+		final Random random = new Random(20);
+		for (int i = 0; i < 300; i++) {
+			final Expression parsed;
+			try {
+				parsed = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			final List<Expression> expressions = new ArrayList<>(List.of(parsed, ExpressionOptimizer.optimize(parsed)));
+			try {
+				expressions.add(parsed.differentiate());
+			} catch (UnsupportedOperationException uoe) {
+			}
+			for (Expression expression : expressions) {
+				final Expression decoded = ExpressionCodec.decode(ExpressionCodec.encode(expression));
+				assertEquals(expression, decoded, expression.convertToString(0));
+				assertEquals(expression.convertToString(0), decoded.convertToString(0));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that repeated subtrees are written once and shared again when decoded, and that
+	 * literals keep their exact bits.
+	 */
+	public void testSharingAndExactLiterals () throws ExpressionParseException {
+		final Expression half = _parser.parse("(x^2+3*x-log(x))");
+		final Expression doubled = new MultiplicativeExpression(half, half, false);
+		assertTrue(ExpressionCodec.encode(doubled).length < 2 * ExpressionCodec.encode(half).length);
+		final MultiplicativeExpression decoded = (MultiplicativeExpression) ExpressionCodec.decode(ExpressionCodec.encode(doubled));
+		assertSame(decoded.getLeft(), decoded.getRight());
+
+		for (double value : new double[] { -0.0, 0.1, Double.MIN_VALUE, Double.MAX_VALUE, Double.POSITIVE_INFINITY }) {
+			final LiteralExpression literal = (LiteralExpression) ExpressionCodec.decode(ExpressionCodec.encode(new LiteralExpression(value)));
+			assertEquals(Double.doubleToRawLongBits(value), Double.doubleToRawLongBits(literal.getValue()));
+		}
+		final IntegerPowerExpression power = (IntegerPowerExpression) ExpressionCodec.decode(ExpressionCodec.encode(new IntegerPowerExpression(new VariableExpression("x"), -300)));
+		assertEquals(-300, power.getExponent());
+	}
+
+	@Test
+	/**
+	 * Verifies that a long chain of terms, which parses to a tree as deep as the chain is long, encodes
+	 * without overflowing the stack, and decodes to a tree of the same shape.
+	 */
+	public void testDeepTree () throws ExpressionParseException {
+		final StringBuilder text = new StringBuilder("x");
+		for (int i = 0; i < 20000; i++) {
+			text.append(i % 2 == 0 ? "+x" : "-2");
+		}
+		Expression chain = _parser.parse(text.toString());
+		for (int i = 0; i < 100000; i++) {
+			chain = new AdditiveExpression(chain, new LiteralExpression(i % 7), i % 3 == 0);
+		}
+		final byte[] encoded = ExpressionCodec.encode(chain);
+		final Expression decoded = ExpressionCodec.decode(encoded);
+		assertArrayEquals(encoded, ExpressionCodec.encode(decoded));
+		// The literals 0 to 6 are each written once and referred to after that, not written out in 9 bytes each time.
+		assertTrue(encoded.length < 6 * (100000 + 20000), encoded.length + " bytes");
+		int depth = 0;
+		for (Expression node = decoded; node instanceof AdditiveExpression || node instanceof MultiplicativeExpression; depth++) {
+			node = node instanceof AdditiveExpression ? ((AdditiveExpression) node).getLeft() : ((MultiplicativeExpression) node).getLeft();
+		}
+		assertEquals(100000 + 20000, depth);
+	}
+
+	@Test
+	/**
+	 * Verifies that malformed encodings are rejected rather than decoded into something else.
+	 */
+	public void testRejectsMalformedEncodings () throws ExpressionParseException {
+		final byte[] valid = ExpressionCodec.encode(_parser.parse("x*2+1"));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(Arrays.copyOf(valid, valid.length - 3)));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[0]));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { 9, 0, 1, 'x' }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, ExpressionCodec.ADD }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, ExpressionCodec.REFERENCE, 0 }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, 0x7f }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, 0, 1, 'x', 0, 1, 'x' }));
+		// Five-byte varints that decode to negative lengths, indices and opcodes.
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, ExpressionCodec.VARIABLE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f, 'x' }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, ExpressionCodec.REFERENCE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f }));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x08 }));
+		// A name length larger than the bytes left, which must not be allocated.
+		assertThrows(IllegalArgumentException.class, () -> ExpressionCodec.decode(new byte[] { ExpressionCodec.VERSION, ExpressionCodec.VARIABLE, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07 }));
+		final IntegerPowerExpression extreme = (IntegerPowerExpression) ExpressionCodec.decode(ExpressionCodec.encode(new IntegerPowerExpression(new VariableExpression("x"), Integer.MIN_VALUE)));
+		assertEquals(Integer.MIN_VALUE, extreme.getExponent());
+	}
+
+	@Test
+	/**
+	 * Verifies that a store written to a file reopens with every expression, found by key.
+	 */
+	public void testStoreRoundTrip () throws IOException, ExpressionParseException {
+		final Path file = Files.createTempFile("expressions", ".store");
+		try {
+			final Map<String, Expression> expressions = new HashMap<>();
+			for (int i = 0; i < 1000; i++) {
+				expressions.put("f" + i, _parser.parse(i + "*x^2+log(x)-" + (i % 7)));
+			}
+			ExpressionStore.write(file, expressions);
+
+			final ExpressionStore store = ExpressionStore.open(file);
+			assertEquals(1000, store.size());
+			for (int i = 1; i < store.size(); i++) {
+				assertTrue(store.key(i - 1).compareTo(store.key(i)) < 0);
+			}
+			for (Map.Entry<String, Expression> entry : expressions.entrySet()) {
+				assertEquals(entry.getValue(), store.get(entry.getKey()));
+			}
+			assertSame(store.get("f500"), store.get("f500"));
+			assertNull(store.get("g"));
+			assertThrows(IndexOutOfBoundsException.class, () -> store.get(1000));
+
+			// Entries whose offsets or lengths point outside the file.
+			final byte[] bytes = Files.readAllBytes(file);
+			final ByteBuffer corrupt = ByteBuffer.wrap(bytes);
+			corrupt.putInt(12, -5);
+			corrupt.putInt(12 + 16 + 12, Integer.MAX_VALUE);
+			Files.write(file, bytes);
+			final ExpressionStore corrupted = ExpressionStore.open(file);
+			assertThrows(IllegalArgumentException.class, () -> corrupted.key(0));
+			assertThrows(IllegalArgumentException.class, () -> corrupted.get(1));
+			assertEquals(store.get(2), corrupted.get(2));
+
+			Files.write(file, new byte[] { 1, 2, 3 });
+			assertThrows(IOException.class, () -> ExpressionStore.open(file));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
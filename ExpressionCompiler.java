@@ -0,0 +1,340 @@
+import java.io.*;
+import java.lang.invoke.*;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Compiles an expression tree into a hidden class implementing DoubleUnaryOperator. The generated
+ * applyAsDouble method is straight-line bytecode -- dload, ldc2_w, dadd/dsub/dmul/ddiv and static calls
+ * to Math.pow, Math.log and IntegerPowerExpression.power -- so the JIT can inline and optimize the whole formula instead of making one
+ * megamorphic Expression.evaluate call per node per point.
+ *
+ * A node reached more than once -- as in the DAGs ExpressionInterner builds -- is computed only the first
+ * time; its value is kept in a local variable and loaded from there afterwards.
+ *
+ * The class file is written by hand: it has no fields, no branches and therefore needs no stack map
+ * frames. Trees that cannot be compiled (unknown node types, or code larger than a JVM method allows),
+ * or a JVM that refuses to define the class, fall back to interpreting the tree with evaluate.
+ */
+public class ExpressionCompiler {
+	private static final int MAX_CODE_LENGTH = 65535;
+	private static final int ACC_PUBLIC = 0x0001, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+	private static final int DLOAD_1 = 0x27, LDC2_W = 0x14, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f;
+	private static final int DLOAD = 0x18, DSTORE = 0x39, DUP2 = 0x5c, WIDE = 0xc4, BIPUSH = 0x10, MAX_LOCALS = 0xFFFF;
+	private static final int ALOAD_0 = 0x2a, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, RETURN = 0xb1, DRETURN = 0xaf;
+
+	/**
+	 * The interpreter fallback: evaluates the tree node by node.
+	 */
+	static final class Interpreted implements DoubleUnaryOperator {
+		private final Expression expression;
+
+		Interpreted (Expression expression) {
+			this.expression = expression;
+		}
+
+		public double applyAsDouble (double x) {
+			return expression.evaluate(x);
+		}
+	}
+
+	/**
+	 * Compiles the specified expression into a DoubleUnaryOperator whose applyAsDouble(x) returns the
+	 * same value as expression.evaluate(x).
+	 * @param expression the expression to compile
+	 * @return the compiled expression, or an interpreter for it if it cannot be compiled
+	 */
+	public static DoubleUnaryOperator compile (Expression expression) {
+		try {
+			final byte[] classFile = new ClassFileWriter().write(expression);
+			final MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+			return (DoubleUnaryOperator) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+		} catch (Throwable t) {
+			if (t instanceof VirtualMachineError && !(t instanceof StackOverflowError)) {
+				throw (VirtualMachineError) t;
+			}
+			return new Interpreted(expression);
+		}
+	}
+
+	/**
+	 * Writes the class file of a single compiled expression.
+	 */
+	private static class ClassFileWriter {
+		private final ByteArrayOutputStream constants = new ByteArrayOutputStream();
+		private final DataOutputStream pool = new DataOutputStream(constants);
+		private final Map<String, Integer> poolIndices = new HashMap<>();
+		private int poolCount = 1;
+
+		private final ByteArrayOutputStream bytecode = new ByteArrayOutputStream();
+		private final DataOutputStream code = new DataOutputStream(bytecode);
+		private int stack, maxStack;
+		private final Map<Expression, Integer> uses = new IdentityHashMap<>();
+		private final Map<Expression, Integer> locals = new IdentityHashMap<>();
+		// Slot 0 holds this and slots 1-2 hold x.
+		private int maxLocals = 3;
+
+		byte[] write (Expression expression) throws IOException {
+			final int thisClass = classConstant("CompiledExpression");
+			final int superClass = classConstant("java/lang/Object");
+			final int operator = classConstant("java/util/function/DoubleUnaryOperator");
+			final int objectInit = memberConstant(10, "java/lang/Object", "<init>", "()V");
+			final int codeName = utf8("Code");
+
+			countUses(expression);
+			emit(expression);
+			code.writeByte(DRETURN);
+			if (bytecode.size() > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Expression too large to compile");
+			}
+			final int applyName = utf8("applyAsDouble");
+			final int applyDescriptor = utf8("(D)D");
+			final int initName = utf8("<init>");
+			final int initDescriptor = utf8("()V");
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(61);
+			out.writeShort(poolCount);
+			constants.writeTo(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(1);
+			out.writeShort(operator);
+			out.writeShort(0);
+			out.writeShort(2);
+
+			// public CompiledExpression () { super(); }
+			final byte[] init = { (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (objectInit >> 8), (byte) objectInit, (byte) RETURN };
+			writeMethod(out, initName, initDescriptor, codeName, 1, 1, init);
+			// public double applyAsDouble (double x) { return <expression>; }
+			writeMethod(out, applyName, applyDescriptor, codeName, maxStack, maxLocals, bytecode.toByteArray());
+
+			out.writeShort(0);
+			return bytes.toByteArray();
+		}
+
+		private static void writeMethod (DataOutputStream out, int name, int descriptor, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(name);
+			out.writeShort(descriptor);
+			out.writeShort(1);
+			out.writeShort(codeName);
+			out.writeInt(12 + code.length);
+			out.writeShort(maxStack);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+
+		/**
+		 * Counts how many times each node is reached from the root, visiting shared nodes' children once.
+		 */
+		private void countUses (Expression expression) {
+			if (uses.merge(expression, 1, Integer::sum) > 1) {
+				return;
+			}
+			if (expression instanceof ParentheticalExpression) {
+				countUses(((ParentheticalExpression) expression).getExpression());
+			} else if (expression instanceof AdditiveExpression) {
+				countUses(((AdditiveExpression) expression).getLeft());
+				countUses(((AdditiveExpression) expression).getRight());
+			} else if (expression instanceof MultiplicativeExpression) {
+				countUses(((MultiplicativeExpression) expression).getLeft());
+				countUses(((MultiplicativeExpression) expression).getRight());
+			} else if (expression instanceof ExponentialExpression) {
+				countUses(((ExponentialExpression) expression).getBase());
+				countUses(((ExponentialExpression) expression).getPower());
+			} else if (expression instanceof LogarithmicExpression) {
+				countUses(((LogarithmicExpression) expression).getArgument());
+			} else if (expression instanceof AffineExpression) {
+				countUses(((AffineExpression) expression).getOperand());
+			} else if (expression instanceof IntegerPowerExpression) {
+				countUses(((IntegerPowerExpression) expression).getBase());
+			}
+		}
+
+		/**
+		 * Emits code that leaves the value of the expression on the operand stack.
+		 */
+		private void emit (Expression expression) throws IOException {
+			final Integer local = locals.get(expression);
+			if (local != null) {
+				localInstruction(DLOAD, local);
+				push();
+				return;
+			}
+			if (expression instanceof VariableExpression) {
+				ExpressionProgram.requireX((VariableExpression) expression);
+				code.writeByte(DLOAD_1);
+				push();
+			} else if (expression instanceof LiteralExpression) {
+				code.writeByte(LDC2_W);
+				code.writeShort(doubleConstant(((LiteralExpression) expression).getValue()));
+				push();
+			} else if (expression instanceof ParentheticalExpression) {
+				emit(((ParentheticalExpression) expression).getExpression());
+			} else if (expression instanceof AdditiveExpression) {
+				final AdditiveExpression additive = (AdditiveExpression) expression;
+				emit(additive.getLeft());
+				emit(additive.getRight());
+				code.writeByte(additive.isSubtraction() ? DSUB : DADD);
+				pop();
+			} else if (expression instanceof MultiplicativeExpression) {
+				final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+				emit(multiplicative.getLeft());
+				emit(multiplicative.getRight());
+				code.writeByte(multiplicative.isDivision() ? DDIV : DMUL);
+				pop();
+			} else if (expression instanceof ExponentialExpression) {
+				final ExponentialExpression exponential = (ExponentialExpression) expression;
+				emit(exponential.getBase());
+				emit(exponential.getPower());
+				invokeMath("pow", "(DD)D");
+				pop();
+			} else if (expression instanceof LogarithmicExpression) {
+				emit(((LogarithmicExpression) expression).getArgument());
+				invokeMath("log", "(D)D");
+				code.writeByte(LDC2_W);
+				code.writeShort(doubleConstant(Math.log(LogarithmicExpression.BASE)));
+				push();
+				code.writeByte(DDIV);
+				pop();
+			} else if (expression instanceof AffineExpression) {
+				final AffineExpression affine = (AffineExpression) expression;
+				emit(affine.getOperand());
+				code.writeByte(LDC2_W);
+				code.writeShort(doubleConstant(affine.getScale()));
+				push();
+				code.writeByte(DMUL);
+				pop();
+				code.writeByte(LDC2_W);
+				code.writeShort(doubleConstant(affine.getOffset()));
+				push();
+				code.writeByte(DADD);
+				pop();
+			} else if (expression instanceof IntegerPowerExpression) {
+				final IntegerPowerExpression power = (IntegerPowerExpression) expression;
+				if (power.getExponent() != (byte) power.getExponent()) {
+					throw new IllegalArgumentException("Exponent too large to compile");
+				}
+				emit(power.getBase());
+				code.writeByte(BIPUSH);
+				code.writeByte(power.getExponent());
+				push();
+				code.writeByte(INVOKESTATIC);
+				code.writeShort(memberConstant(10, "IntegerPowerExpression", "power", "(DI)D"));
+				pop();
+			} else {
+				throw new IllegalArgumentException("Cannot compile " + expression.getClass().getName());
+			}
+			if (uses.get(expression) > 1 && !(expression instanceof VariableExpression || expression instanceof LiteralExpression)) {
+				// Keep a copy of a shared node's value for the other places it is used.
+				if (maxLocals + 2 > MAX_LOCALS) {
+					throw new IllegalArgumentException("Expression has too many shared nodes to compile");
+				}
+				code.writeByte(DUP2);
+				push();
+				localInstruction(DSTORE, maxLocals);
+				pop();
+				locals.put(expression, maxLocals);
+				maxLocals += 2;
+			}
+			if (bytecode.size() > MAX_CODE_LENGTH) {
+				throw new IllegalArgumentException("Expression too large to compile");
+			}
+		}
+
+		private void localInstruction (int opcode, int index) throws IOException {
+			if (index > 0xFF) {
+				code.writeByte(WIDE);
+				code.writeByte(opcode);
+				code.writeShort(index);
+			} else {
+				code.writeByte(opcode);
+				code.writeByte(index);
+			}
+		}
+
+		private void invokeMath (String name, String descriptor) throws IOException {
+			code.writeByte(INVOKESTATIC);
+			code.writeShort(memberConstant(10, "java/lang/Math", name, descriptor));
+		}
+
+		// A double occupies two operand stack slots.
+		private void push () {
+			stack += 2;
+			maxStack = Math.max(maxStack, stack);
+		}
+
+		private void pop () {
+			stack -= 2;
+		}
+
+		private int utf8 (String value) throws IOException {
+			final Integer known = poolIndices.get("U" + value);
+			if (known != null) {
+				return known;
+			}
+			pool.writeByte(1);
+			pool.writeUTF(value);
+			return addConstant("U" + value, 1);
+		}
+
+		private int classConstant (String internalName) throws IOException {
+			final Integer known = poolIndices.get("C" + internalName);
+			if (known != null) {
+				return known;
+			}
+			final int name = utf8(internalName);
+			pool.writeByte(7);
+			pool.writeShort(name);
+			return addConstant("C" + internalName, 1);
+		}
+
+		private int memberConstant (int tag, String owner, String name, String descriptor) throws IOException {
+			final String key = "M" + owner + "." + name + descriptor;
+			final Integer known = poolIndices.get(key);
+			if (known != null) {
+				return known;
+			}
+			final int ownerIndex = classConstant(owner);
+			final int nameIndex = utf8(name);
+			final int descriptorIndex = utf8(descriptor);
+			pool.writeByte(12);
+			pool.writeShort(nameIndex);
+			pool.writeShort(descriptorIndex);
+			final int nameAndType = addConstant(key + "#nt", 1);
+			pool.writeByte(tag);
+			pool.writeShort(ownerIndex);
+			pool.writeShort(nameAndType);
+			return addConstant(key, 1);
+		}
+
+		private int doubleConstant (double value) throws IOException {
+			final String key = "D" + Double.doubleToRawLongBits(value);
+			final Integer known = poolIndices.get(key);
+			if (known != null) {
+				return known;
+			}
+			pool.writeByte(6);
+			pool.writeDouble(value);
+			return addConstant(key, 2);
+		}
+
+		private int addConstant (String key, int slots) {
+			if (poolCount + slots > 0xFFFF) {
+				throw new IllegalArgumentException("Expression has too many constants to compile");
+			}
+			final int index = poolCount;
+			poolIndices.put(key, index);
+			poolCount += slots;
+			return index;
+		}
+	}
+}
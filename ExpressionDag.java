@@ -0,0 +1,237 @@
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Evaluates an expression as a DAG: every distinct subexpression is computed once per point, however
+ * many times it occurs, and its value is reused from a slot. Structurally equal subtrees are merged
+ * when the DAG is built, so this also removes common subexpressions from plain trees; for the DAGs
+ * that ExpressionInterner.differentiate produces, it turns an evaluation whose tree walk would be
+ * exponential in the order of the derivative into a linear one.
+ *
+ * The nodes are stored in topological order as parallel arrays of ExpressionProgram opcodes and slot
+ * indices, so evaluate(x) is a single loop over them. Like ExpressionProgram, evaluate(x) reuses slots
+ * owned by the DAG and is not safe for concurrent use; concurrent callers pass their own slots to
+ * evaluate(x, slots).
+ */
+public final class ExpressionDag implements DoubleUnaryOperator {
+	private static final double LOG_BASE = Math.log(LogarithmicExpression.BASE);
+
+	private final byte[] ops;
+	private final int[] lefts;
+	private final int[] rights;
+	private final double[] constants;
+	private double[] slots;
+
+	private ExpressionDag (byte[] ops, int[] lefts, int[] rights, double[] constants) {
+		this.ops = ops;
+		this.lefts = lefts;
+		this.rights = rights;
+		this.constants = constants;
+	}
+
+	/**
+	 * Builds the DAG of the specified expression.
+	 * @param expression the expression; may share subtrees
+	 * @return the DAG computing the same value as expression.evaluate
+	 * @throws IllegalArgumentException if the expression contains a node type that has no opcode, or a variable other than x
+	 */
+	public static ExpressionDag compile (Expression expression) {
+		final Builder builder = new Builder();
+		builder.slotOf(expression);
+		final int size = builder.size;
+		return new ExpressionDag(Arrays.copyOf(builder.ops, size), Arrays.copyOf(builder.lefts, size), Arrays.copyOf(builder.rights, size), Arrays.copyOf(builder.constants, size));
+	}
+
+	/**
+	 * Identifies a node by its opcode and operands: the slots of its children, or its constant.
+	 */
+	private static final class NodeKey {
+		final byte op;
+		final int left, right;
+		final long constant;
+
+		NodeKey (byte op, int left, int right, double constant) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+			this.constant = Double.doubleToLongBits(constant);
+		}
+
+		@Override
+		public boolean equals (Object other) {
+			if (!(other instanceof NodeKey)) {
+				return false;
+			}
+			final NodeKey key = (NodeKey) other;
+			return op == key.op && left == key.left && right == key.right && constant == key.constant;
+		}
+
+		@Override
+		public int hashCode () {
+			return ((op * 31 + left) * 31 + right) * 31 + Long.hashCode(constant);
+		}
+	}
+
+	/**
+	 * Numbers the distinct nodes of a DAG in postfix order.
+	 */
+	private static class Builder {
+		final Map<NodeKey, Integer> slots = new HashMap<>();
+		final Map<Expression, Integer> visited = new IdentityHashMap<>();
+		byte[] ops = new byte[16];
+		int[] lefts = new int[16];
+		int[] rights = new int[16];
+		double[] constants = new double[16];
+		int size;
+
+		int slotOf (Expression expression) {
+			final Integer known = visited.get(expression);
+			if (known != null) {
+				return known;
+			}
+			final int slot;
+			if (expression instanceof VariableExpression) {
+				ExpressionProgram.requireX((VariableExpression) expression);
+				slot = add(ExpressionProgram.PUSH_X, -1, -1, 0);
+			} else if (expression instanceof LiteralExpression) {
+				slot = add(ExpressionProgram.PUSH_CONST, -1, -1, ((LiteralExpression) expression).getValue());
+			} else if (expression instanceof ParentheticalExpression) {
+				slot = slotOf(((ParentheticalExpression) expression).getExpression());
+			} else if (expression instanceof AdditiveExpression) {
+				final AdditiveExpression additive = (AdditiveExpression) expression;
+				slot = add(additive.isSubtraction() ? ExpressionProgram.SUB : ExpressionProgram.ADD, slotOf(additive.getLeft()), slotOf(additive.getRight()), 0);
+			} else if (expression instanceof MultiplicativeExpression) {
+				final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+				slot = add(multiplicative.isDivision() ? ExpressionProgram.DIV : ExpressionProgram.MUL, slotOf(multiplicative.getLeft()), slotOf(multiplicative.getRight()), 0);
+			} else if (expression instanceof ExponentialExpression) {
+				final ExponentialExpression exponential = (ExponentialExpression) expression;
+				slot = add(ExpressionProgram.POW, slotOf(exponential.getBase()), slotOf(exponential.getPower()), 0);
+			} else if (expression instanceof LogarithmicExpression) {
+				slot = add(ExpressionProgram.LOG, slotOf(((LogarithmicExpression) expression).getArgument()), -1, 0);
+			} else if (expression instanceof AffineExpression) {
+				final AffineExpression affine = (AffineExpression) expression;
+				final int scale = add(ExpressionProgram.PUSH_CONST, -1, -1, affine.getScale());
+				final int offset = add(ExpressionProgram.PUSH_CONST, -1, -1, affine.getOffset());
+				slot = add(ExpressionProgram.ADD, add(ExpressionProgram.MUL, scale, slotOf(affine.getOperand()), 0), offset, 0);
+			} else if (expression instanceof IntegerPowerExpression) {
+				// The exponent takes the place of the right operand's slot.
+				final IntegerPowerExpression power = (IntegerPowerExpression) expression;
+				slot = add(ExpressionProgram.IPOW, slotOf(power.getBase()), power.getExponent(), 0);
+			} else {
+				throw new IllegalArgumentException("Cannot lower " + expression.getClass().getName());
+			}
+			visited.put(expression, slot);
+			return slot;
+		}
+
+		/**
+		 * Returns the slot of an equal node already numbered, or numbers this one. Its children are
+		 * numbered first, so equal nodes have equal opcodes and operands.
+		 */
+		private int add (byte op, int left, int right, double constant) {
+			final NodeKey key = new NodeKey(op, left, right, constant);
+			final Integer known = slots.get(key);
+			if (known != null) {
+				return known;
+			}
+			if (size == ops.length) {
+				ops = Arrays.copyOf(ops, size * 2);
+				lefts = Arrays.copyOf(lefts, size * 2);
+				rights = Arrays.copyOf(rights, size * 2);
+				constants = Arrays.copyOf(constants, size * 2);
+			}
+			ops[size] = op;
+			lefts[size] = left;
+			rights[size] = right;
+			constants[size] = constant;
+			slots.put(key, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * @return how many distinct nodes are computed per point
+	 */
+	public int size () {
+		return ops.length;
+	}
+
+	// The i-th node, for evaluators that walk the DAG themselves. Children always come before their parents.
+
+	byte op (int i) {
+		return ops[i];
+	}
+
+	int left (int i) {
+		return lefts[i];
+	}
+
+	int right (int i) {
+		return rights[i];
+	}
+
+	double constant (int i) {
+		return constants[i];
+	}
+
+	/**
+	 * Given the value of the independent variable x, compute the value of the DAG, using the DAG's
+	 * own slots. Not safe for concurrent use.
+	 * @param x the value of the independent variable x
+	 * @return the value of the expression
+	 */
+	public double evaluate (double x) {
+		if (slots == null) {
+			slots = new double[ops.length];
+		}
+		return evaluate(x, slots);
+	}
+
+	@Override
+	public double applyAsDouble (double x) {
+		return evaluate(x);
+	}
+
+	/**
+	 * Given the value of the independent variable x, compute the value of the DAG.
+	 * @param x the value of the independent variable x
+	 * @param slots where to keep the value of every node, at least size() long
+	 * @return the value of the expression
+	 */
+	public double evaluate (double x, double[] slots) {
+		final byte[] ops = this.ops;
+		final int[] lefts = this.lefts, rights = this.rights;
+		for (int i = 0; i < ops.length; i++) {
+			switch (ops[i]) {
+				case ExpressionProgram.PUSH_X:
+					slots[i] = x;
+					break;
+				case ExpressionProgram.PUSH_CONST:
+					slots[i] = constants[i];
+					break;
+				case ExpressionProgram.ADD:
+					slots[i] = slots[lefts[i]] + slots[rights[i]];
+					break;
+				case ExpressionProgram.SUB:
+					slots[i] = slots[lefts[i]] - slots[rights[i]];
+					break;
+				case ExpressionProgram.MUL:
+					slots[i] = slots[lefts[i]] * slots[rights[i]];
+					break;
+				case ExpressionProgram.DIV:
+					slots[i] = slots[lefts[i]] / slots[rights[i]];
+					break;
+				case ExpressionProgram.POW:
+					slots[i] = Math.pow(slots[lefts[i]], slots[rights[i]]);
+					break;
+				case ExpressionProgram.IPOW:
+					slots[i] = IntegerPowerExpression.power(slots[lefts[i]], rights[i]);
+					break;
+				default:
+					slots[i] = Math.log(slots[lefts[i]]) / LOG_BASE;
+					break;
+			}
+		}
+		return slots[ops.length - 1];
+	}
+}
@@ -0,0 +1,164 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.io.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Checks the alternative ways of evaluating an expression against Expression.evaluate.
+ */
+public class ExpressionEvaluationTester {
+	private static final double[] XS = { -10, -2.5, -1, -0.5, 0, 0.25, 1, 2, 3.75, 10 };
+
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	/**
+	 * Parses a fixed seed's worth of random well-formed expressions.
+	 */
+	private List<Expression> randomExpressions (int count) {
+		final Random random = new Random(3);
+		final List<Expression> expressions = new ArrayList<>();
+		while (expressions.size() < count) {
+			try {
+				expressions.add(_parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4)));
+			} catch (ExpressionParseException epe) {
+			}
+		}
+		return expressions;
+	}
+
+	static void assertSameValue (double expected, double actual, String message) {
+		if (Double.isFinite(expected)) {
+			assertEquals(expected, actual, 1e-9 * Math.max(1, Math.abs(expected)), message);
+		} else {
+			assertEquals(expected, actual, message);
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that compiled expressions agree with the tree walk.
+	 */
+	public void testCompiledMatchesEvaluate () {
+		for (Expression expression : randomExpressions(300)) {
+			final DoubleUnaryOperator compiled = ExpressionCompiler.compile(expression);
+			assertFalse(compiled instanceof ExpressionCompiler.Interpreted, expression.convertToString(0));
+			for (double x : XS) {
+				assertSameValue(expression.evaluate(x), compiled.applyAsDouble(x), expression.convertToString(0));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that a node type the compiler does not know about falls back to the interpreter.
+	 */
+	public void testCompilerFallsBackToInterpreter () throws ExpressionParseException {
+		final Expression square = _parser.parse("x^2");
+		final Expression unknown = new Expression() {
+			public Expression deepCopy () { return this; }
+			public String convertToString (int indentLevel) { return "?\n"; }
+			public double evaluate (double x) { return square.evaluate(x) + 1; }
+			public Expression differentiate () { return square.differentiate(); }
+		};
+		final DoubleUnaryOperator compiled = ExpressionCompiler.compile(new AdditiveExpression(unknown, square));
+		assertTrue(compiled instanceof ExpressionCompiler.Interpreted);
+		assertEquals(19, compiled.applyAsDouble(3), 1e-12);
+	}
+
+	@Test
+	/**
+	 * Verifies that lowered programs agree with the tree walk, before and after serialization.
+	 */
+	public void testProgramMatchesEvaluate () throws IOException, ClassNotFoundException {
+		for (Expression expression : randomExpressions(300)) {
+			final ExpressionProgram program = ExpressionProgram.compile(expression);
+
+			final ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+			try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+				out.writeObject(program);
+			}
+			final ExpressionProgram deserialized = (ExpressionProgram) new ObjectInputStream(new ByteArrayInputStream(serialized.toByteArray())).readObject();
+
+			final ByteArrayOutputStream compact = new ByteArrayOutputStream();
+			program.writeTo(new DataOutputStream(compact));
+			final ExpressionProgram reread = ExpressionProgram.readFrom(new DataInputStream(new ByteArrayInputStream(compact.toByteArray())));
+
+			for (double x : XS) {
+				final double expected = expression.evaluate(x);
+				assertSameValue(expected, program.evaluate(x), expression.convertToString(0));
+				assertSameValue(expected, deserialized.evaluate(x), expression.convertToString(0));
+				assertSameValue(expected, reread.evaluate(x), expression.convertToString(0));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that a malformed program is rejected when it is read.
+	 */
+	public void testMalformedProgramRejected () throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		out.writeShort(0);
+		out.writeInt(2);
+		out.write(new byte[] { ExpressionProgram.PUSH_X, ExpressionProgram.ADD });
+		assertThrows(InvalidObjectException.class, () -> ExpressionProgram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	@Test
+	/**
+	 * Verifies that batch evaluation agrees with the tree walk, across block boundaries and for node types without a column kernel.
+	 */
+	public void testBatchMatchesEvaluate () throws ExpressionParseException {
+		final double[] xs = new double[2 * ColumnScratch.COLUMN_LENGTH + 17];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = -10 + 20.0 * i / (xs.length - 1);
+		}
+		final double[] ys = new double[xs.length];
+		final List<Expression> expressions = randomExpressions(100);
+		final Expression square = _parser.parse("x^2");
+		expressions.add(new MultiplicativeExpression(new Expression() {
+			public Expression deepCopy () { return this; }
+			public String convertToString (int indentLevel) { return "?\n"; }
+			public double evaluate (double x) { return square.evaluate(x) + 1; }
+			public Expression differentiate () { return square.differentiate(); }
+		}, square));
+		for (Expression expression : expressions) {
+			expression.evaluate(xs, ys);
+			for (int i = 0; i < xs.length; i++) {
+				assertSameValue(expression.evaluate(xs[i]), ys[i], expression.convertToString(0));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that parallel sampling produces evenly spaced, reproducible x values and the matching y values.
+	 */
+	public void testParallelSamplingMatchesEvaluate () throws ExpressionParseException {
+		final Expression expression = _parser.parse("3*x^3 - log(x^2 + 1)/(x+20)");
+		final double[] xs = new double[100001];
+		final double[] ys = new double[xs.length];
+		final Sampler sampler = new Sampler();
+		sampler.sample(expression, -10, 10, xs, ys);
+		assertEquals(-10, xs[0]);
+		assertEquals(10, xs[xs.length - 1]);
+		for (int i = 0; i < xs.length; i++) {
+			assertEquals(-10 + i * (20.0 / (xs.length - 1)), xs[i], 1e-12);
+			assertSameValue(expression.evaluate(xs[i]), ys[i], "x = " + xs[i]);
+		}
+		final double[] compiledYs = new double[xs.length];
+		sampler.sample(ExpressionCompiler.compile(expression), -10, 10, new double[xs.length], compiledYs);
+		for (int i = 0; i < xs.length; i++) {
+			assertSameValue(ys[i], compiledYs[i], "x = " + xs[i]);
+		}
+
+		// A single point is the start of the range.
+		assertEquals(-10, Sampler.x(-10, 10, 0, 1));
+		final double[] single = new double[1], singleY = new double[1];
+		sampler.sample(expression, -10, 10, single, singleY);
+		assertEquals(-10, single[0]);
+		assertSameValue(expression.evaluate(-10), singleY[0], "x = -10");
+	}
+}
@@ -0,0 +1,293 @@
+import java.util.*;
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events for the three stages that cost a calculator its time -- parsing,
+ * differentiation and sampling -- and the Metrics recorded alongside them.
+ *
+ * The stages call begin before their work and end after it. While no recording has the events enabled
+ * and Metrics are off, that is all they do: end does not measure the trees or read the clock. Record
+ * the events with, for example,
+ *
+ *   java -XX:StartFlightRecording:filename=calculator.jfr ...
+ *
+ * and read them with "jfr print --categories Expressions calculator.jfr" or Mission Control.
+ */
+final class ExpressionEvents {
+	private ExpressionEvents () {
+	}
+
+	@Name("expressions.Parse")
+	@Label("Expression Parse")
+	@Category("Expressions")
+	@Description("A call to ExpressionParser.parse")
+	static final class ParseEvent extends Event {
+		@Label("Parser")
+		String parser;
+		@Label("Input Length")
+		int inputLength;
+		@Label("Nodes")
+		@Description("Distinct nodes in the tree, or 0 if the input was rejected")
+		int nodeCount;
+		@Label("Depth")
+		int depth;
+		@Label("Steps")
+		@Description("Tokens consumed, or productions attempted, or -1 where the parser does not count them")
+		long steps;
+		@Label("Succeeded")
+		boolean succeeded;
+		/** When the metrics' clock started; not recorded. */
+		transient long startNanos;
+	}
+
+	@Name("expressions.Differentiate")
+	@Label("Expression Differentiate")
+	@Category("Expressions")
+	@Description("A symbolic differentiation")
+	static final class DifferentiateEvent extends Event {
+		@Label("Nodes")
+		int nodeCount;
+		@Label("Depth")
+		int depth;
+		@Label("Derivative Nodes")
+		@Description("Distinct nodes in the derivative, or 0 if there is no derivative")
+		int derivativeNodeCount;
+		@Label("Succeeded")
+		boolean succeeded;
+		transient long startNanos;
+	}
+
+	@Name("expressions.Sample")
+	@Label("Curve Sample")
+	@Category("Expressions")
+	@Description("Sampling a curve across a view")
+	static final class SampleEvent extends Event {
+		@Label("Curve")
+		String curve;
+		@Label("Min X")
+		double minX;
+		@Label("Max X")
+		double maxX;
+		@Label("Pixel Width")
+		int pixelWidth;
+		@Label("Tiles")
+		int tiles;
+		@Label("Tiles Sampled")
+		@Description("Tiles that were not cached and had to be sampled")
+		int tilesSampled;
+		@Label("Tiles Culled")
+		@Description("Sampled tiles that proved to lie outside the view")
+		int tilesCulled;
+		@Label("Points Sampled")
+		@Description("Points, breaks included, in the tiles that were sampled")
+		long points;
+		transient long startNanos;
+	}
+
+	/**
+	 * Starts timing a parse.
+	 */
+	static ParseEvent beginParse () {
+		final ParseEvent event = new ParseEvent();
+		event.begin();
+		if (Metrics.isEnabled()) {
+			event.startNanos = System.nanoTime();
+		}
+		return event;
+	}
+
+	/**
+	 * Whether a parse that has begun is being recorded, as an event or in the metrics, so that the
+	 * steps it takes are worth counting.
+	 */
+	static boolean isRecorded (ParseEvent event) {
+		return event.isEnabled() || event.startNanos != 0;
+	}
+
+	/**
+	 * Finishes timing a parse, and commits its event and metrics.
+	 * @param parser the parser
+	 * @param input the string it was given
+	 * @param result its tree, or null if it rejected the input
+	 * @param steps the tokens or productions it went through, or -1 if it does not count them
+	 */
+	static void endParse (ParseEvent event, ExpressionParser parser, String input, Expression result, long steps) {
+		event.end();
+		final boolean metrics = Metrics.isEnabled() && event.startNanos != 0;
+		if (!metrics && !event.shouldCommit()) {
+			return;
+		}
+		final int[] shape = shape(result);
+		if (event.shouldCommit()) {
+			event.parser = parser.getClass().getSimpleName();
+			event.inputLength = input.length();
+			event.nodeCount = shape[0];
+			event.depth = shape[1];
+			event.steps = steps;
+			event.succeeded = result != null;
+			event.commit();
+		}
+		if (metrics) {
+			Metrics.histogram("parse.nanos").record(System.nanoTime() - event.startNanos);
+			Metrics.histogram("parse.inputLength").record(input.length());
+			Metrics.counter(result == null ? "parse.failures" : "parse.successes").increment();
+			if (steps >= 0) {
+				Metrics.histogram("parse.steps").record(steps);
+			}
+			if (result != null) {
+				Metrics.histogram("parse.nodes").record(shape[0]);
+				Metrics.histogram("parse.depth").record(shape[1]);
+			}
+		}
+	}
+
+	/**
+	 * Starts timing a differentiation.
+	 */
+	static DifferentiateEvent beginDifferentiate () {
+		final DifferentiateEvent event = new DifferentiateEvent();
+		event.begin();
+		if (Metrics.isEnabled()) {
+			event.startNanos = System.nanoTime();
+		}
+		return event;
+	}
+
+	/**
+	 * Finishes timing a differentiation, and commits its event and metrics.
+	 * @param expression what was differentiated
+	 * @param derivative its derivative, or null if it has none
+	 */
+	static void endDifferentiate (DifferentiateEvent event, Expression expression, Expression derivative) {
+		event.end();
+		final boolean metrics = Metrics.isEnabled() && event.startNanos != 0;
+		if (!metrics && !event.shouldCommit()) {
+			return;
+		}
+		final int[] shape = shape(expression), derivativeShape = shape(derivative);
+		if (event.shouldCommit()) {
+			event.nodeCount = shape[0];
+			event.depth = shape[1];
+			event.derivativeNodeCount = derivativeShape[0];
+			event.succeeded = derivative != null;
+			event.commit();
+		}
+		if (metrics) {
+			Metrics.histogram("differentiate.nanos").record(System.nanoTime() - event.startNanos);
+			Metrics.counter(derivative == null ? "differentiate.failures" : "differentiate.successes").increment();
+			if (derivative != null) {
+				Metrics.histogram("differentiate.nodes").record(derivativeShape[0]);
+			}
+		}
+	}
+
+	/**
+	 * Starts timing the sampling of a curve.
+	 */
+	static SampleEvent beginSample () {
+		final SampleEvent event = new SampleEvent();
+		event.begin();
+		if (Metrics.isEnabled()) {
+			event.startNanos = System.nanoTime();
+		}
+		return event;
+	}
+
+	/**
+	 * Finishes timing the sampling of a curve, and commits its event and metrics.
+	 * @param curve the key of the curve
+	 * @param tiles how many tiles the view covers
+	 * @param tilesSampled how many of them were sampled rather than found in the cache
+	 * @param tilesCulled how many of those lay outside the view
+	 * @param points how many points the sampled tiles hold
+	 */
+	static void endSample (SampleEvent event, Object curve, double minX, double maxX, int pixelWidth, int tiles, int tilesSampled, int tilesCulled, long points) {
+		event.end();
+		if (event.shouldCommit()) {
+			event.curve = String.valueOf(curve);
+			event.minX = minX;
+			event.maxX = maxX;
+			event.pixelWidth = pixelWidth;
+			event.tiles = tiles;
+			event.tilesSampled = tilesSampled;
+			event.tilesCulled = tilesCulled;
+			event.points = points;
+			event.commit();
+		}
+		if (Metrics.isEnabled() && event.startNanos != 0) {
+			Metrics.histogram("sample.nanos").record(System.nanoTime() - event.startNanos);
+			Metrics.counter("sample.tiles").add(tiles);
+			Metrics.counter("sample.tilesSampled").add(tilesSampled);
+			Metrics.counter("sample.tilesCulled").add(tilesCulled);
+			Metrics.counter("sample.points").add(points);
+		}
+	}
+
+	/**
+	 * Measures a tree, counting each shared node once.
+	 * @param expression the tree, or null
+	 * @return its number of distinct nodes and its depth, or zeros for null
+	 */
+	static int[] shape (Expression expression) {
+		if (expression == null) {
+			return new int[2];
+		}
+		final Map<Expression, Integer> depths = new IdentityHashMap<>();
+		final int depth = depth(expression, depths);
+		return new int[] { depths.size(), depth };
+	}
+
+	/**
+	 * Finds the depth of every node under expression, with an explicit stack rather than recursion, so
+	 * that measuring a tree never overflows the stack where parsing or differentiating it did not.
+	 */
+	private static int depth (Expression expression, Map<Expression, Integer> depths) {
+		final Deque<Expression> stack = new ArrayDeque<>();
+		stack.push(expression);
+		while (!stack.isEmpty()) {
+			final Expression node = stack.pop();
+			if (depths.containsKey(node)) {
+				continue;
+			}
+			// A node is measured once all its children are; until then it waits beneath them.
+			final List<Expression> children = children(node);
+			int depth = 0;
+			boolean ready = true;
+			for (Expression child : children) {
+				final Integer known = depths.get(child);
+				if (known == null) {
+					if (ready) {
+						stack.push(node);
+						ready = false;
+					}
+					stack.push(child);
+				} else {
+					depth = Math.max(depth, known);
+				}
+			}
+			if (ready) {
+				depths.put(node, depth + 1);
+			}
+		}
+		return depths.get(expression);
+	}
+
+	private static List<Expression> children (Expression expression) {
+		if (expression instanceof AdditiveExpression) {
+			return List.of(((AdditiveExpression) expression).getLeft(), ((AdditiveExpression) expression).getRight());
+		} else if (expression instanceof MultiplicativeExpression) {
+			return List.of(((MultiplicativeExpression) expression).getLeft(), ((MultiplicativeExpression) expression).getRight());
+		} else if (expression instanceof ExponentialExpression) {
+			return List.of(((ExponentialExpression) expression).getBase(), ((ExponentialExpression) expression).getPower());
+		} else if (expression instanceof LogarithmicExpression) {
+			return List.of(((LogarithmicExpression) expression).getArgument());
+		} else if (expression instanceof ParentheticalExpression) {
+			return List.of(((ParentheticalExpression) expression).getExpression());
+		} else if (expression instanceof AffineExpression) {
+			return List.of(((AffineExpression) expression).getOperand());
+		} else if (expression instanceof IntegerPowerExpression) {
+			return List.of(((IntegerPowerExpression) expression).getBase());
+		}
+		return List.of();
+	}
+}
@@ -0,0 +1,266 @@
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Computes definite integrals of an expression by adaptive 15-point Gauss-Kronrod quadrature.
+ *
+ * The range is split into panels, and each panel is integrated with the 15-point Kronrod rule, whose
+ * difference from the 7-point Gauss rule embedded in it estimates the error, scaled as QUADPACK's QK15
+ * scales it. While the estimates add up to more than the tolerance, every panel carrying more than its
+ * share of the tolerance is halved, and the new panels of that round are integrated in parallel on the
+ * common fork-join pool, in blocks that fill a ColumnScratch column, so the expression is evaluated a
+ * node at a time over a block of points by evaluateColumn. Since the panels chosen are the ones with
+ * the largest errors across the whole range, a singularity at an end of it, as log(x) has at 0, is
+ * refined only as far as the total error needs.
+ *
+ * A smooth integrand converges after a few hundred evaluations, where the trapezoid rule would need
+ * millions of points for the same accuracy. The rules never evaluate the ends of a panel, so an
+ * integrand that is infinite at an end of the range but integrable there is handled. A panel that
+ * evaluates to NaN or infinity is halved, in case a point of it happened to fall on a singularity; if
+ * both halves are still not finite, the integrand is not finite across a stretch of the range, and the
+ * integral ends at once, unconverged and NaN. An integral that diverges otherwise ends unconverged once
+ * the panels over their share are MAX_DEPTH halvings narrow, or MAX_PANELS is reached.
+ */
+public class ExpressionIntegrator {
+	public static final int DEFAULT_INITIAL_PANELS = 8;
+	/** The tolerance, absolute for integrals smaller than 1 and relative for larger ones. */
+	public static final double DEFAULT_TOLERANCE = 1e-10;
+	public static final int MAX_PANELS = 1 << 16;
+	/** How many times a panel may be halved; one about a point where the integrand diverges never converges. */
+	public static final int MAX_DEPTH = 40;
+	/** How many points the rule evaluates on each panel. */
+	public static final int POINTS_PER_PANEL = 15;
+	private static final int PANELS_PER_BLOCK = ColumnScratch.COLUMN_LENGTH / POINTS_PER_PANEL;
+	private static final double EPSILON = Math.ulp(1.0);
+
+	/** The abscissae of the Kronrod rule on [-1, 1], from the outermost in; the odd ones are the Gauss abscissae. */
+	private static final double[] KRONROD_NODES = {
+		0.991455371120812639206854697526329,
+		0.949107912342758524526189684047851,
+		0.864864423359769072789712788640926,
+		0.741531185599394439863864773280788,
+		0.586087235467691130294144845693013,
+		0.405845151377397166906606412076961,
+		0.207784955007898467600689403773245,
+		0.000000000000000000000000000000000
+	};
+	private static final double[] KRONROD_WEIGHTS = {
+		0.022935322010529224963732008058970,
+		0.063092092629978553290700663189204,
+		0.104790010322250183839876322541518,
+		0.140653259715525918745189590510238,
+		0.169004726639267902826583426598550,
+		0.190350578064785409913256402421014,
+		0.204432940075298892414161999234649,
+		0.209482141084727828012999174891714
+	};
+	/** The weights of the Gauss rule, for KRONROD_NODES[1], [3], [5] and [7]. */
+	private static final double[] GAUSS_WEIGHTS = {
+		0.129484966168869693270611432679082,
+		0.279705391489276667901467771423780,
+		0.381830050505118944950369775488975,
+		0.417959183673469387755102040816327
+	};
+
+	/**
+	 * A definite integral, with an estimate of its error.
+	 */
+	public static final class Result {
+		public final double value, error;
+		/** How many times the expression was evaluated. */
+		public final long evaluations;
+		/** Whether the error estimate met the tolerance. */
+		public final boolean converged;
+
+		Result (double value, double error, long evaluations, boolean converged) {
+			this.value = value;
+			this.error = error;
+			this.evaluations = evaluations;
+			this.converged = converged;
+		}
+
+		@Override
+		public String toString () {
+			return value + " +/- " + error + (converged ? "" : " (not converged)");
+		}
+	}
+
+	/**
+	 * A piece of the range, with its integral and the estimate of its error.
+	 */
+	private static final class Panel {
+		final double a, b;
+		double value, error;
+		/** Whether the error is all rounding, which halving the panel would not reduce. */
+		boolean rounding;
+
+		Panel (double a, double b) {
+			this.a = a;
+			this.b = b;
+		}
+	}
+
+	private final Expression expression;
+	private final int initialPanels;
+	private final double tolerance;
+
+	public ExpressionIntegrator (Expression expression) {
+		this(expression, DEFAULT_INITIAL_PANELS, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * @param expression the expression to integrate; it is optimized once, here
+	 * @param initialPanels how many equal panels to split a range into before refining it
+	 * @param tolerance the error to reach, absolute for integrals smaller than 1 and relative for larger ones
+	 */
+	public ExpressionIntegrator (Expression expression, int initialPanels, double tolerance) {
+		if (initialPanels < 1 || initialPanels > MAX_PANELS || !(tolerance > 0)) {
+			throw new IllegalArgumentException("Invalid initial panels " + initialPanels + " or tolerance " + tolerance);
+		}
+		this.expression = ExpressionOptimizer.optimize(expression);
+		this.initialPanels = initialPanels;
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Integrates the expression from min to max; if max is less than min, the integral is negative.
+	 * @throws IllegalArgumentException if either bound is not finite
+	 */
+	public Result integrate (double min, double max) {
+		if (!Double.isFinite(min) || !Double.isFinite(max)) {
+			throw new IllegalArgumentException("Cannot integrate from " + min + " to " + max);
+		}
+		if (min == max) {
+			return new Result(0, 0, 0, true);
+		}
+		if (max < min) {
+			final Result reversed = integrate(max, min);
+			return new Result(-reversed.value, reversed.error, reversed.evaluations, reversed.converged);
+		}
+
+		List<Panel> panels = new ArrayList<>();
+		for (int i = 0; i < initialPanels; i++) {
+			panels.add(new Panel(Sampler.x(min, max, i, initialPanels + 1), Sampler.x(min, max, i + 1, initialPanels + 1)));
+		}
+		integrate(panels);
+		long evaluations = (long) POINTS_PER_PANEL * panels.size();
+		while (true) {
+			// The tolerance is set by the finite panels alone, so that one NaN or infinite panel does not
+			// make every other panel's share of it NaN.
+			double value = 0, error = 0;
+			boolean finite = true;
+			for (Panel panel : panels) {
+				if (Double.isFinite(panel.value)) {
+					value += panel.value;
+					error += panel.error;
+				} else {
+					finite = false;
+				}
+			}
+			final double target = tolerance * Math.max(1, Math.abs(value));
+			if (finite && error <= target) {
+				return new Result(value, error, evaluations, true);
+			}
+
+			// Halve every panel that is not finite or is over its share of the tolerance, unless rounding is
+			// all that puts it over.
+			final double share = target / panels.size(), narrowest = Math.scalb(max - min, -MAX_DEPTH);
+			final List<Panel> next = new ArrayList<>(), split = new ArrayList<>();
+			// Which of the pairs in split are the halves of a panel that was not finite.
+			final BitSet unbounded = new BitSet();
+			for (Panel panel : panels) {
+				final double middle = panel.a + (panel.b - panel.a) / 2;
+				final boolean bounded = Double.isFinite(panel.value);
+				if ((!bounded || !(panel.error <= share || panel.rounding)) && panel.b - panel.a > narrowest && middle > panel.a && middle < panel.b) {
+					if (!bounded) {
+						unbounded.set(split.size() / 2);
+					}
+					split.add(new Panel(panel.a, middle));
+					split.add(new Panel(middle, panel.b));
+				} else {
+					next.add(panel);
+				}
+			}
+			if (split.isEmpty() || next.size() + split.size() > MAX_PANELS) {
+				return new Result(finite ? value : Double.NaN, finite ? error : Double.POSITIVE_INFINITY, evaluations, false);
+			}
+			integrate(split);
+			evaluations += (long) POINTS_PER_PANEL * split.size();
+
+			// A point where the integrand is not finite leaves at most one half of the panel around it
+			// that is not finite either; if both halves are not, it is not finite across a whole stretch,
+			// as log(x) is for x < 0, and no amount of halving will make the integral finite.
+			for (int pair = unbounded.nextSetBit(0); pair >= 0; pair = unbounded.nextSetBit(pair + 1)) {
+				if (!Double.isFinite(split.get(2 * pair).value) && !Double.isFinite(split.get(2 * pair + 1).value)) {
+					return new Result(Double.NaN, Double.POSITIVE_INFINITY, evaluations, false);
+				}
+			}
+			next.addAll(split);
+			panels = next;
+		}
+	}
+
+	/**
+	 * Integrates each of the panels, a block of them at a time, the blocks in parallel.
+	 */
+	private void integrate (List<Panel> panels) {
+		final int blocks = (panels.size() + PANELS_PER_BLOCK - 1) / PANELS_PER_BLOCK;
+		IntStream.range(0, blocks).parallel().forEach(block -> {
+			final int first = block * PANELS_PER_BLOCK, count = Math.min(PANELS_PER_BLOCK, panels.size() - first);
+			final ColumnScratch scratch = new ColumnScratch();
+			final double[] xs = scratch.push(), fs = scratch.push();
+			for (int p = 0; p < count; p++) {
+				final Panel panel = panels.get(first + p);
+				final double center = panel.a + (panel.b - panel.a) / 2, half = (panel.b - panel.a) / 2;
+				final int offset = p * POINTS_PER_PANEL;
+				xs[offset] = center;
+				for (int j = 0; j < 7; j++) {
+					xs[offset + 1 + 2 * j] = center - half * KRONROD_NODES[j];
+					xs[offset + 2 + 2 * j] = center + half * KRONROD_NODES[j];
+				}
+			}
+			expression.evaluateColumn(xs, fs, count * POINTS_PER_PANEL, scratch);
+			for (int p = 0; p < count; p++) {
+				rule(panels.get(first + p), fs, p * POINTS_PER_PANEL);
+			}
+		});
+	}
+
+	/**
+	 * Applies the Gauss and Kronrod rules to the values of the integrand at the points of a panel, laid
+	 * out as the center and then the pairs of points either side of it, from the outermost in.
+	 */
+	private static void rule (Panel panel, double[] fs, int offset) {
+		final double half = (panel.b - panel.a) / 2;
+		final double center = fs[offset];
+		double kronrod = KRONROD_WEIGHTS[7] * center, gauss = GAUSS_WEIGHTS[3] * center;
+		double absolute = Math.abs(kronrod);
+		for (int j = 0; j < 7; j++) {
+			final double pair = fs[offset + 1 + 2 * j] + fs[offset + 2 + 2 * j];
+			kronrod += KRONROD_WEIGHTS[j] * pair;
+			absolute += KRONROD_WEIGHTS[j] * (Math.abs(fs[offset + 1 + 2 * j]) + Math.abs(fs[offset + 2 + 2 * j]));
+			if (j % 2 == 1) {
+				gauss += GAUSS_WEIGHTS[j / 2] * pair;
+			}
+		}
+		// How far the integrand strays from its mean over the panel, which bounds what the rules can disagree by.
+		final double mean = kronrod / 2;
+		double spread = KRONROD_WEIGHTS[7] * Math.abs(center - mean);
+		for (int j = 0; j < 7; j++) {
+			spread += KRONROD_WEIGHTS[j] * (Math.abs(fs[offset + 1 + 2 * j] - mean) + Math.abs(fs[offset + 2 + 2 * j] - mean));
+		}
+		spread *= half;
+		absolute *= half;
+		double error = Math.abs((kronrod - gauss) * half);
+		if (spread != 0 && error != 0) {
+			error = spread * Math.min(1, Math.pow(200 * error / spread, 1.5));
+		}
+		panel.rounding = false;
+		if (absolute > Double.MIN_NORMAL / (50 * EPSILON) && error <= 50 * EPSILON * absolute) {
+			error = 50 * EPSILON * absolute;
+			panel.rounding = true;
+		}
+		panel.value = kronrod * half;
+		panel.error = Double.isFinite(panel.value) ? error : Double.POSITIVE_INFINITY;
+	}
+}
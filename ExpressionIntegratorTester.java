@@ -0,0 +1,86 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+
+/**
+ * Tests for adaptive Gauss-Kronrod integration of expressions.
+ */
+public class ExpressionIntegratorTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	private ExpressionIntegrator.Result integrate (String text, double min, double max) throws ExpressionParseException {
+		return new ExpressionIntegrator(_parser.parse(text)).integrate(min, max);
+	}
+
+	@Test
+	/**
+	 * Verifies that polynomials, which the Kronrod rule integrates exactly, converge on the first panels.
+	 */
+	public void testPolynomials () throws ExpressionParseException {
+		final ExpressionIntegrator.Result cubic = integrate("x^3 - 2*x + 1", 0, 2);
+		assertEquals(4 - 4 + 2, cubic.value, 1e-12);
+		assertTrue(cubic.converged);
+		assertEquals(ExpressionIntegrator.DEFAULT_INITIAL_PANELS * ExpressionIntegrator.POINTS_PER_PANEL, cubic.evaluations);
+
+		final ExpressionIntegrator.Result reversed = integrate("x^3 - 2*x + 1", 2, 0);
+		assertEquals(-cubic.value, reversed.value);
+		assertEquals(0, integrate("x", 3, 3).value);
+
+		// Large integrals are held to the tolerance relative to their size.
+		assertEquals(1e6 / 6, integrate("x^5", 0, 10).value, 1e6 / 6 * 1e-12);
+		assertThrows(IllegalArgumentException.class, () -> integrate("x", 0, Double.POSITIVE_INFINITY));
+	}
+
+	@Test
+	/**
+	 * Verifies that smooth and sharply peaked integrands reach 1e-10 with far fewer evaluations than
+	 * uniform sampling would need.
+	 */
+	public void testAccuracy () throws ExpressionParseException {
+		final ExpressionIntegrator.Result arctan = integrate("1/(1+x*x)", 0, 1);
+		assertEquals(Math.PI / 4, arctan.value, 1e-10);
+		assertTrue(arctan.converged);
+		assertTrue(arctan.evaluations < 1000);
+
+		final ExpressionIntegrator.Result peak = integrate("1/(x*x + 0.000001)", -1, 1);
+		assertEquals(2 * Math.atan(1000) / 0.001, peak.value, 1e-10 * peak.value);
+		assertTrue(peak.converged);
+		assertTrue(peak.evaluations < 20000);
+		assertTrue(peak.error <= 1e-10 * peak.value);
+	}
+
+	@Test
+	/**
+	 * Verifies that an integrable singularity at an end of the range converges, and that a divergent
+	 * integral is reported as not converged.
+	 */
+	public void testSingularities () throws ExpressionParseException {
+		final ExpressionIntegrator.Result logarithm = integrate("log(x)", 0, 1);
+		assertEquals(-1 / Math.log(LogarithmicExpression.BASE), logarithm.value, 1e-10);
+		assertTrue(logarithm.converged);
+
+		final ExpressionIntegrator.Result root = integrate("x^0.5", 0, 4);
+		assertEquals(16.0 / 3, root.value, 1e-10);
+		assertTrue(root.converged);
+
+		assertFalse(integrate("1/x", 0, 1).converged);
+	}
+
+	@Test
+	/**
+	 * Verifies that integrands that are NaN across part of the range, or diverge inside it, give up
+	 * quickly instead of halving every panel up to MAX_PANELS.
+	 */
+	public void testNonFiniteIntegrandsGiveUpQuickly () throws ExpressionParseException {
+		for (String text : new String[] { "log(x)", "x^0.5", "1/x", "1/(x-0.5)", "1/x^2" }) {
+			final ExpressionIntegrator.Result result = integrate(text, -10, 10);
+			assertFalse(result.converged, text);
+			assertTrue(result.evaluations < 10000, text + " took " + result.evaluations);
+		}
+		assertTrue(Double.isNaN(integrate("log(x)", -10, 10).value));
+
+		// A single point where the integrand is not finite, here the center of the first panel, is stepped around.
+		final ExpressionIntegrator.Result removable = integrate("x/x", -1.25, 18.75);
+		assertEquals(20, removable.value, 1e-10);
+		assertTrue(removable.converged);
+	}
+}
@@ -0,0 +1,181 @@
+import java.util.*;
+
+/**
+ * Hash-conses expressions: every structurally equal subtree is replaced by one canonical, shared node,
+ * so the expressions it returns form an immutable DAG rather than a tree. Nodes compare and hash by
+ * structure, with the hash cached in the node, so looking up a node whose children are already
+ * canonical costs O(1).
+ *
+ * differentiate(e) follows the same rules as the nodes' own differentiate, but builds each derivative
+ * out of canonical nodes, reuses the original subterms instead of deep copies, and remembers the
+ * derivative of every node. A derivative of order n therefore shares everything it can with the lower
+ * orders, and its size grows polynomially in n instead of exponentially. Evaluate such DAGs with
+ * ExpressionDag or ExpressionCompiler, which compute each shared node once; Expression.evaluate still
+ * walks them as trees.
+ *
+ * An interner keeps every node it has seen, so use one per task rather than one per application.
+ * It is not safe for concurrent use.
+ */
+public class ExpressionInterner {
+	private final Map<Expression, Expression> nodes = new HashMap<>();
+	private final Set<Expression> canonicalNodes = Collections.newSetFromMap(new IdentityHashMap<>());
+	private final Map<Expression, Expression> derivatives = new IdentityHashMap<>();
+	private final Expression zero = literal("0");
+	private final Expression one = literal("1");
+	private final Expression two = literal("2");
+
+	/**
+	 * Returns the canonical DAG for the specified expression.
+	 * @param expression the expression to intern; may itself share subtrees
+	 * @return the canonical expression, structurally equal to the specified one
+	 */
+	public Expression intern (Expression expression) {
+		return intern(expression, new IdentityHashMap<>());
+	}
+
+	private Expression intern (Expression expression, Map<Expression, Expression> seen) {
+		if (canonicalNodes.contains(expression)) {
+			return expression;
+		}
+		final Expression known = seen.get(expression);
+		if (known != null) {
+			return known;
+		}
+		final Expression interned;
+		if (expression instanceof AdditiveExpression) {
+			final AdditiveExpression additive = (AdditiveExpression) expression;
+			interned = add(intern(additive.getLeft(), seen), intern(additive.getRight(), seen), additive.isSubtraction());
+		} else if (expression instanceof MultiplicativeExpression) {
+			final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+			interned = multiply(intern(multiplicative.getLeft(), seen), intern(multiplicative.getRight(), seen), multiplicative.isDivision());
+		} else if (expression instanceof ExponentialExpression) {
+			final ExponentialExpression exponential = (ExponentialExpression) expression;
+			interned = power(intern(exponential.getBase(), seen), intern(exponential.getPower(), seen));
+		} else if (expression instanceof LogarithmicExpression) {
+			interned = log(intern(((LogarithmicExpression) expression).getArgument(), seen));
+		} else if (expression instanceof ParentheticalExpression) {
+			interned = canonical(new ParentheticalExpression(intern(((ParentheticalExpression) expression).getExpression(), seen)));
+		} else {
+			// Leaves have no children to share.
+			interned = canonical(expression);
+		}
+		seen.put(expression, interned);
+		return interned;
+	}
+
+	/**
+	 * Returns the derivative of the specified expression as a canonical DAG.
+	 * @param expression the expression to differentiate
+	 * @return its derivative
+	 * @throws UnsupportedOperationException where Expression.differentiate would throw it
+	 */
+	public Expression differentiate (Expression expression) {
+		final ExpressionEvents.DifferentiateEvent event = ExpressionEvents.beginDifferentiate();
+		Expression derivative = null;
+		try {
+			derivative = derive(expression);
+			return derivative;
+		} finally {
+			ExpressionEvents.endDifferentiate(event, expression, derivative);
+		}
+	}
+
+	private Expression derive (Expression expression) {
+		final Expression interned = intern(expression);
+		final Expression known = derivatives.get(interned);
+		if (known != null) {
+			return known;
+		}
+		final Expression derivative;
+		if (interned instanceof VariableExpression) {
+			derivative = ((VariableExpression) interned).getSlot() == 0 ? one : zero;
+		} else if (interned instanceof LiteralExpression) {
+			derivative = zero;
+		} else if (interned instanceof ParentheticalExpression) {
+			derivative = derive(((ParentheticalExpression) interned).getExpression());
+		} else if (interned instanceof AdditiveExpression) {
+			final AdditiveExpression additive = (AdditiveExpression) interned;
+			derivative = add(derive(additive.getLeft()), derive(additive.getRight()), additive.isSubtraction());
+		} else if (interned instanceof MultiplicativeExpression) {
+			final MultiplicativeExpression multiplicative = (MultiplicativeExpression) interned;
+			final Expression u = multiplicative.getLeft(), v = multiplicative.getRight();
+			final Expression left = multiply(derive(u), v, false);
+			final Expression right = multiply(u, derive(v), false);
+			if (multiplicative.isDivision()) {
+				derivative = multiply(add(left, right, true), power(v, two), true);
+			} else {
+				derivative = add(left, right, false);
+			}
+		} else if (interned instanceof ExponentialExpression) {
+			final ExponentialExpression exponential = (ExponentialExpression) interned;
+			final Expression base = exponential.getBase(), power = exponential.getPower();
+			if (!(power instanceof LiteralExpression)) {
+				if (!(base instanceof LiteralExpression)) {
+					throw new UnsupportedOperationException();
+				}
+				derivative = multiply(multiply(interned, derive(power), false), log(base), false);
+			} else {
+				derivative = multiply(multiply(power(base, add(power, one, true)), derive(base), false), power, false);
+			}
+		} else if (interned instanceof LogarithmicExpression) {
+			final Expression argument = ((LogarithmicExpression) interned).getArgument();
+			derivative = multiply(derive(argument), argument, true);
+		} else {
+			derivative = intern(interned.differentiate());
+		}
+		derivatives.put(interned, derivative);
+		return derivative;
+	}
+
+	/**
+	 * @return how many distinct nodes have been interned
+	 */
+	public int size () {
+		return nodes.size();
+	}
+
+	/**
+	 * Forgets every node and derivative interned so far.
+	 */
+	public void clear () {
+		nodes.clear();
+		canonicalNodes.clear();
+		derivatives.clear();
+		for (Expression constant : List.of(zero, one, two)) {
+			canonical(constant);
+		}
+	}
+
+	private Expression add (Expression left, Expression right, boolean subtraction) {
+		return canonical(new AdditiveExpression(left, right, subtraction));
+	}
+
+	private Expression multiply (Expression left, Expression right, boolean division) {
+		return canonical(new MultiplicativeExpression(left, right, division));
+	}
+
+	private Expression power (Expression base, Expression power) {
+		return canonical(new ExponentialExpression(base, power));
+	}
+
+	private Expression log (Expression argument) {
+		return canonical(new LogarithmicExpression(argument));
+	}
+
+	private Expression literal (String value) {
+		return canonical(new LiteralExpression(value));
+	}
+
+	/**
+	 * Returns the node already interned that equals the specified one, or interns it; its children
+	 * must already be canonical.
+	 */
+	private Expression canonical (Expression node) {
+		final Expression known = nodes.putIfAbsent(node, node);
+		if (known != null) {
+			return known;
+		}
+		canonicalNodes.add(node);
+		return node;
+	}
+}
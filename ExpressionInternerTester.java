@@ -0,0 +1,121 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tests for structural equality, hash-consing and the shared-DAG derivative and evaluators.
+ */
+public class ExpressionInternerTester {
+	private static final double[] XS = { -2.5, -1, -0.5, 0.25, 1, 2, 3.75 };
+
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	@Test
+	/**
+	 * Verifies that expressions compare and hash by structure.
+	 */
+	public void testStructuralEquality () throws ExpressionParseException {
+		assertEquals(_parser.parse("x*(2+x)"), _parser.parse("x*(2+x)"));
+		assertEquals(_parser.parse("x*(2+x)").hashCode(), _parser.parse("x*(2+x)").hashCode());
+		assertEquals(_parser.parse("2"), _parser.parse("2.0"));
+		assertNotEquals(_parser.parse("x*(2+x)"), _parser.parse("x*(2-x)"));
+		assertNotEquals(_parser.parse("x*(2+x)"), _parser.parse("x*2+x"));
+		assertNotEquals(_parser.parse("(x)"), _parser.parse("x"));
+	}
+
+	@Test
+	/**
+	 * Verifies that equal subtrees become one shared node.
+	 */
+	public void testInternSharesSubtrees () throws ExpressionParseException {
+		final ExpressionInterner interner = new ExpressionInterner();
+		final MultiplicativeExpression product = (MultiplicativeExpression) interner.intern(_parser.parse("(x+1)*(x+1)"));
+		assertSame(product.getLeft(), product.getRight());
+		assertSame(product, interner.intern(_parser.parse("(x+1)*(x+1)")));
+		assertSame(product, interner.intern(product));
+	}
+
+	@Test
+	/**
+	 * Verifies that interned derivatives have the same values as the nodes' own, and fail where they do.
+	 */
+	public void testDifferentiateMatchesNodes () {
+		final Random random = new Random(5);
+		final ExpressionInterner interner = new ExpressionInterner();
+		for (int i = 0; i < 300; i++) {
+			final Expression expression;
+			try {
+				expression = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			final Expression expected;
+			try {
+				expected = expression.differentiate();
+			} catch (UnsupportedOperationException uoe) {
+				assertThrows(UnsupportedOperationException.class, () -> interner.differentiate(expression));
+				continue;
+			}
+			final Expression actual = interner.differentiate(expression);
+			assertEquals(expected, actual);
+			for (double x : XS) {
+				ExpressionEvaluationTester.assertSameValue(expected.evaluate(x), actual.evaluate(x), expression.convertToString(0));
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that repeated differentiation grows polynomially, and that the DAG evaluators agree
+	 * with the tree walk.
+	 */
+	public void testHighOrderDerivatives () throws ExpressionParseException {
+		final ExpressionInterner interner = new ExpressionInterner();
+		// Quotients and logarithms lead to powers with non-literal exponents, which cannot be differentiated twice.
+		Expression tree = _parser.parse("(x*x+1)*(x*x*x-2*x)*(x+2)");
+		Expression dag = tree;
+		for (int order = 1; order <= 4; order++) {
+			tree = tree.differentiate();
+			dag = interner.differentiate(dag);
+		}
+		final ExpressionDag evaluator = ExpressionDag.compile(dag);
+		final DoubleUnaryOperator compiled = ExpressionCompiler.compile(dag);
+		assertFalse(compiled instanceof ExpressionCompiler.Interpreted);
+		for (double x : XS) {
+			ExpressionEvaluationTester.assertSameValue(tree.evaluate(x), evaluator.evaluate(x), "order 4");
+			ExpressionEvaluationTester.assertSameValue(tree.evaluate(x), compiled.applyAsDouble(x), "order 4");
+		}
+
+		for (int order = 5; order <= 12; order++) {
+			dag = interner.differentiate(dag);
+		}
+		assertTrue(interner.size() < 20_000, "" + interner.size());
+		final ExpressionDag twelfth = ExpressionDag.compile(dag);
+		final DoubleUnaryOperator compiledTwelfth = ExpressionCompiler.compile(dag);
+		for (double x : XS) {
+			ExpressionEvaluationTester.assertSameValue(twelfth.evaluate(x), compiledTwelfth.applyAsDouble(x), "order 12");
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that the DAG evaluator merges common subexpressions and agrees with the tree walk.
+	 */
+	public void testDagMatchesEvaluate () throws ExpressionParseException {
+		assertEquals(4, ExpressionDag.compile(_parser.parse("(x+1)*(x+1)")).size());
+		final Random random = new Random(6);
+		for (int i = 0; i < 300; i++) {
+			final Expression expression;
+			try {
+				expression = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 5));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			final ExpressionDag dag = ExpressionDag.compile(expression);
+			for (double x : XS) {
+				ExpressionEvaluationTester.assertSameValue(expression.evaluate(x), dag.evaluate(x), expression.convertToString(0));
+			}
+		}
+	}
+}
@@ -0,0 +1,136 @@
+import java.util.*;
+
+/**
+ * Rewrites an expression into an equivalent one that is cheaper to evaluate point by point:
+ *
+ *   - parentheses are stripped;
+ *   - subtrees without x are folded into literals, computed once by evaluate itself;
+ *   - powers with a small literal integer exponent become IntegerPowerExpressions, which multiply
+ *     instead of calling Math.pow;
+ *   - c*e, e*c, e+c, c+e, e-c, c-e and (c*e)+b with literal c and b are fused into one
+ *     AffineExpression.
+ *
+ * Unlike ExpressionSimplifier, every rewrite does exactly the same floating-point operations as the
+ * nodes it replaces, in the same order, except that x^n is computed by repeated multiplication, which
+ * may differ from Math.pow in the last place. The result is meant for evaluation -- ExpressionCompiler,
+ * ExpressionProgram and ExpressionDag all understand the fused nodes -- not for further symbolic work.
+ */
+public class ExpressionOptimizer {
+	public static final int MAX_INTEGER_POWER = 32;
+	/** The offset of a bare product c*e: adding -0.0 leaves every value, even -0.0, unchanged, where +0.0 would not. */
+	private static final double NO_OFFSET = -0.0;
+
+	private ExpressionOptimizer () {
+	}
+
+	/**
+	 * Optimizes the specified expression.
+	 * @param expression the expression to optimize; may share subtrees, and is not modified
+	 * @return the optimized expression
+	 */
+	public static Expression optimize (Expression expression) {
+		return optimize(expression, new IdentityHashMap<>());
+	}
+
+	private static Expression optimize (Expression expression, Map<Expression, Expression> done) {
+		final Expression known = done.get(expression);
+		if (known != null) {
+			return known;
+		}
+		Expression result = expression;
+		if (expression instanceof ParentheticalExpression) {
+			result = optimize(((ParentheticalExpression) expression).getExpression(), done);
+		} else if (expression instanceof AdditiveExpression) {
+			final AdditiveExpression additive = (AdditiveExpression) expression;
+			result = optimizeAdditive(optimize(additive.getLeft(), done), optimize(additive.getRight(), done), additive.isSubtraction());
+		} else if (expression instanceof MultiplicativeExpression) {
+			final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+			result = optimizeMultiplicative(optimize(multiplicative.getLeft(), done), optimize(multiplicative.getRight(), done), multiplicative.isDivision());
+		} else if (expression instanceof ExponentialExpression) {
+			final ExponentialExpression exponential = (ExponentialExpression) expression;
+			result = optimizeExponential(optimize(exponential.getBase(), done), optimize(exponential.getPower(), done));
+		} else if (expression instanceof LogarithmicExpression) {
+			final Expression argument = optimize(((LogarithmicExpression) expression).getArgument(), done);
+			result = fold(new LogarithmicExpression(argument), argument);
+		}
+		done.put(expression, result);
+		return result;
+	}
+
+	private static Expression optimizeAdditive (Expression left, Expression right, boolean subtraction) {
+		if (isLiteral(left) && isLiteral(right)) {
+			return fold(new AdditiveExpression(left, right, subtraction));
+		}
+		if (isLiteral(right)) {
+			// (c*e) + b and (c*e) - b; e + b and e - b.
+			final double offset = subtraction ? -value(right) : value(right);
+			if (left instanceof AffineExpression && isUnshifted((AffineExpression) left)) {
+				return new AffineExpression(((AffineExpression) left).getScale(), offset, ((AffineExpression) left).getOperand());
+			}
+			return new AffineExpression(1, offset, left);
+		}
+		if (isLiteral(left)) {
+			// b + (c*e) and b - (c*e); b + e and b - e.
+			if (right instanceof AffineExpression && isUnshifted((AffineExpression) right)) {
+				final double scale = ((AffineExpression) right).getScale();
+				return new AffineExpression(subtraction ? -scale : scale, value(left), ((AffineExpression) right).getOperand());
+			}
+			return new AffineExpression(subtraction ? -1 : 1, value(left), right);
+		}
+		return new AdditiveExpression(left, right, subtraction);
+	}
+
+	private static Expression optimizeMultiplicative (Expression left, Expression right, boolean division) {
+		if (isLiteral(left) && isLiteral(right)) {
+			return fold(new MultiplicativeExpression(left, right, division));
+		}
+		if (!division && isLiteral(left)) {
+			return new AffineExpression(value(left), NO_OFFSET, right);
+		}
+		if (!division && isLiteral(right)) {
+			return new AffineExpression(value(right), NO_OFFSET, left);
+		}
+		return new MultiplicativeExpression(left, right, division);
+	}
+
+	private static Expression optimizeExponential (Expression base, Expression power) {
+		if (isLiteral(base) && isLiteral(power)) {
+			return fold(new ExponentialExpression(base, power));
+		}
+		if (isLiteral(power)) {
+			final double exponent = value(power);
+			if (exponent == Math.rint(exponent) && exponent != 0 && exponent != 1 && Math.abs(exponent) <= MAX_INTEGER_POWER) {
+				return new IntegerPowerExpression(base, (int) exponent);
+			}
+		}
+		return new ExponentialExpression(base, power);
+	}
+
+	/**
+	 * Tells whether an AffineExpression has no offset, so that one can be added to it without changing
+	 * the operations done.
+	 */
+	private static boolean isUnshifted (AffineExpression affine) {
+		return Double.doubleToRawLongBits(affine.getOffset()) == Double.doubleToRawLongBits(NO_OFFSET);
+	}
+
+	/**
+	 * Replaces a node whose children are all literals with a literal of its value.
+	 */
+	private static Expression fold (Expression node, Expression... children) {
+		for (Expression child : children) {
+			if (!isLiteral(child)) {
+				return node;
+			}
+		}
+		return new LiteralExpression(node.evaluate(0));
+	}
+
+	private static boolean isLiteral (Expression expression) {
+		return expression instanceof LiteralExpression;
+	}
+
+	private static double value (Expression literal) {
+		return ((LiteralExpression) literal).getValue();
+	}
+}
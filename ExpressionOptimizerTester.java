@@ -0,0 +1,99 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.io.*;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tests for the evaluation optimizer and its fused nodes.
+ */
+public class ExpressionOptimizerTester {
+	private static final double[] XS = { -10, -2.5, -1, -0.5, -0.0, 0, 0.25, 1, 2, 3.75, 10 };
+
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	private Expression optimize (String expression) throws ExpressionParseException {
+		return ExpressionOptimizer.optimize(_parser.parse(expression));
+	}
+
+	@Test
+	/**
+	 * Verifies that the common shapes are folded, fused or strength-reduced.
+	 */
+	public void testShapes () throws ExpressionParseException {
+		assertEquals(new LiteralExpression("14"), optimize("2*(3+4)"));
+		assertEquals(new IntegerPowerExpression(new VariableExpression("x"), 2), optimize("(x)^2"));
+		assertEquals(new IntegerPowerExpression(new VariableExpression("x"), 3), optimize("x^(1+2)"));
+		assertTrue(optimize("x^0.5") instanceof ExponentialExpression);
+
+		final AffineExpression affine = (AffineExpression) optimize("2*x+1");
+		assertEquals(2, affine.getScale(), 0);
+		assertEquals(1, affine.getOffset(), 0);
+		assertEquals(new VariableExpression("x"), affine.getOperand());
+
+		final AffineExpression reversed = (AffineExpression) optimize("3-x*4");
+		assertEquals(-4, reversed.getScale(), 0);
+		assertEquals(3, reversed.getOffset(), 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that fused nodes keep the sign of zero, as in 1/((0-1)*x) at x = 0.
+	 */
+	public void testKeepsSignOfZero () throws ExpressionParseException {
+		assertEquals(Double.NEGATIVE_INFINITY, _parser.parse("1/((0-1)*x)").evaluate(0));
+		assertEquals(Double.NEGATIVE_INFINITY, optimize("1/((0-1)*x)").evaluate(0));
+		assertEquals(Double.NEGATIVE_INFINITY, optimize("1/(x*2)").evaluate(-0.0));
+		assertEquals(Double.POSITIVE_INFINITY, optimize("1/((0-1)*x+0)").evaluate(-0.0));
+	}
+
+	@Test
+	/**
+	 * Verifies that optimized random expressions agree with the originals, and that every evaluator
+	 * agrees exactly with the optimized tree.
+	 */
+	public void testOptimizedMatchesEvaluate () throws IOException {
+		final Random random = new Random(8);
+		for (int i = 0; i < 500; i++) {
+			final Expression expression;
+			try {
+				expression = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4).replace("^", "^2+0*"));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			final Expression optimized = ExpressionOptimizer.optimize(expression);
+			final DoubleUnaryOperator compiled = ExpressionCompiler.compile(optimized);
+			final ExpressionProgram program = ExpressionProgram.compile(optimized);
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			program.writeTo(new DataOutputStream(bytes));
+			final ExpressionProgram read = ExpressionProgram.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+			final ExpressionDag dag = ExpressionDag.compile(optimized);
+			final double[] column = new double[XS.length];
+			optimized.evaluate(XS, column);
+			for (int j = 0; j < XS.length; j++) {
+				final double x = XS[j], value = optimized.evaluate(x);
+				final String message = expression.convertToString(0);
+				ExpressionEvaluationTester.assertSameValue(expression.evaluate(x), value, message);
+				assertEquals(value, compiled.applyAsDouble(x), message);
+				assertEquals(value, read.evaluate(x), message);
+				assertEquals(value, dag.evaluate(x), message);
+				assertEquals(value, column[j], message);
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies integer powers by repeated multiplication, including negative exponents.
+	 */
+	public void testIntegerPower () {
+		assertEquals(1024, IntegerPowerExpression.power(2, 10), 0);
+		assertEquals(0.125, IntegerPowerExpression.power(2, -3), 0);
+		assertEquals(-27, IntegerPowerExpression.power(-3, 3), 0);
+		assertEquals(Double.POSITIVE_INFINITY, IntegerPowerExpression.power(0, -2), 0);
+		assertTrue(Double.isNaN(IntegerPowerExpression.power(Double.NaN, 2)));
+		for (int n = -ExpressionOptimizer.MAX_INTEGER_POWER; n <= ExpressionOptimizer.MAX_INTEGER_POWER; n++) {
+			ExpressionEvaluationTester.assertSameValue(Math.pow(1.1, n), IntegerPowerExpression.power(1.1, n), "1.1^" + n);
+		}
+	}
+}
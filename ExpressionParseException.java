@@ -1,5 +1,24 @@
 class ExpressionParseException extends Exception {
+	private final int errorOffset;
+
 	public ExpressionParseException (String message) {
+		this(message, -1);
+	}
+
+	/**
+	 * @param message the detail message
+	 * @param errorOffset the character offset into the original input at which parsing failed
+	 */
+	public ExpressionParseException (String message, int errorOffset) {
 		super(message);
+		this.errorOffset = errorOffset;
+	}
+
+	/**
+	 * Returns the character offset into the original input at which parsing failed.
+	 * @return the failing offset, or -1 if the parser could not tell where the input went wrong
+	 */
+	public int getErrorOffset () {
+		return errorOffset;
 	}
 }
@@ -7,7 +7,7 @@ import java.io.*;
  * Some code to help you test Project 4.
  */
 public class ExpressionParserTester {
-	private ExpressionParser _parser;
+	protected ExpressionParser _parser;
 
 	@BeforeEach
 	/**
@@ -0,0 +1,332 @@
+import java.io.*;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An expression tree lowered to a flat postfix program: a byte[] of opcodes and a double[] constant pool,
+ * run by a single loop over a preallocated double[] operand stack. Unlike the linked tree of Expression
+ * nodes, the whole program sits in two small contiguous arrays, and evaluation neither chases pointers
+ * nor allocates once the stack exists. Use this where classes cannot be generated at runtime; see
+ * ExpressionCompiler otherwise.
+ *
+ * Programs are immutable and Serializable, and can also be written to and read from a compact binary
+ * form with writeTo and readFrom. Both readers verify the program before it is ever run.
+ *
+ * evaluate(x) and applyAsDouble(x) reuse a stack owned by the program, so a program must not be
+ * evaluated by several threads at once through them; concurrent callers pass their own stack to
+ * evaluate(x, stack) instead.
+ */
+public final class ExpressionProgram implements DoubleUnaryOperator, Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final byte PUSH_X = 0, PUSH_CONST = 1, ADD = 2, SUB = 3, MUL = 4, DIV = 5, POW = 6, LOG = 7, AFFINE = 8, IPOW = 9;
+	private static final double LOG_BASE = Math.log(LogarithmicExpression.BASE);
+
+	private final double[] constants;
+	private final byte[] code;
+	private final int maxStack;
+	private transient double[] stack;
+
+	private ExpressionProgram (double[] constants, byte[] code) {
+		this.constants = constants;
+		this.code = code;
+		this.maxStack = verify(constants, code);
+	}
+
+	/**
+	 * Lowers the specified expression tree to a program.
+	 * @param expression the expression to lower
+	 * @return the program computing the same value as expression.evaluate
+	 * @throws IllegalArgumentException if the tree contains a node type that has no opcode, or a variable other than x
+	 */
+	public static ExpressionProgram compile (Expression expression) {
+		final Lowering lowering = new Lowering();
+		lowering.emit(expression);
+		return new ExpressionProgram(Arrays.copyOf(lowering.constants, lowering.constantCount), lowering.code.toByteArray());
+	}
+
+	/**
+	 * Checks that a variable is x, the only one that programs, DAGs and compiled functions give a value.
+	 * @throws IllegalArgumentException if it is another variable
+	 */
+	static void requireX (VariableExpression variable) {
+		if (variable.getSlot() != 0) {
+			throw new IllegalArgumentException("Cannot compile variable " + variable.getName() + ": only x, slot 0, has a value");
+		}
+	}
+
+	/**
+	 * Collects the opcodes and constants of a program while walking a tree in postfix order.
+	 */
+	private static class Lowering {
+		final ByteArrayOutputStream code = new ByteArrayOutputStream();
+		final Map<Long, Integer> constantIndices = new HashMap<>();
+		double[] constants = new double[8];
+		int constantCount;
+
+		void emit (Expression expression) {
+			if (expression instanceof VariableExpression) {
+				requireX((VariableExpression) expression);
+				code.write(PUSH_X);
+			} else if (expression instanceof LiteralExpression) {
+				pushConstant(((LiteralExpression) expression).getValue());
+			} else if (expression instanceof ParentheticalExpression) {
+				emit(((ParentheticalExpression) expression).getExpression());
+			} else if (expression instanceof AdditiveExpression) {
+				final AdditiveExpression additive = (AdditiveExpression) expression;
+				emit(additive.getLeft());
+				emit(additive.getRight());
+				code.write(additive.isSubtraction() ? SUB : ADD);
+			} else if (expression instanceof MultiplicativeExpression) {
+				final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+				emit(multiplicative.getLeft());
+				emit(multiplicative.getRight());
+				code.write(multiplicative.isDivision() ? DIV : MUL);
+			} else if (expression instanceof ExponentialExpression) {
+				final ExponentialExpression exponential = (ExponentialExpression) expression;
+				emit(exponential.getBase());
+				emit(exponential.getPower());
+				code.write(POW);
+			} else if (expression instanceof LogarithmicExpression) {
+				emit(((LogarithmicExpression) expression).getArgument());
+				code.write(LOG);
+			} else if (expression instanceof AffineExpression) {
+				// AFFINE scale offset: top = scale * top + offset
+				final AffineExpression affine = (AffineExpression) expression;
+				emit(affine.getOperand());
+				code.write(AFFINE);
+				writeIndex(constantIndex(affine.getScale()));
+				writeIndex(constantIndex(affine.getOffset()));
+			} else if (expression instanceof IntegerPowerExpression) {
+				// IPOW n: top = top^n, for n a signed byte
+				final IntegerPowerExpression power = (IntegerPowerExpression) expression;
+				if (power.getExponent() != (byte) power.getExponent()) {
+					throw new IllegalArgumentException("Exponent too large to lower");
+				}
+				emit(power.getBase());
+				code.write(IPOW);
+				code.write(power.getExponent());
+			} else {
+				throw new IllegalArgumentException("Cannot lower " + expression.getClass().getName());
+			}
+		}
+
+		void pushConstant (double value) {
+			code.write(PUSH_CONST);
+			writeIndex(constantIndex(value));
+		}
+
+		void writeIndex (int index) {
+			code.write(index >> 8);
+			code.write(index);
+		}
+
+		int constantIndex (double value) {
+			Integer index = constantIndices.get(Double.doubleToRawLongBits(value));
+			if (index == null) {
+				if (constantCount == 0xFFFF) {
+					throw new IllegalArgumentException("Expression has too many constants");
+				}
+				if (constantCount == constants.length) {
+					constants = Arrays.copyOf(constants, constantCount * 2);
+				}
+				index = constantCount;
+				constants[constantCount++] = value;
+				constantIndices.put(Double.doubleToRawLongBits(value), index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Checks that every opcode is known, every constant index is in range and the program leaves exactly
+	 * one value on the stack without ever underflowing it.
+	 * @return the deepest the operand stack gets
+	 * @throws IllegalArgumentException if the program is malformed
+	 */
+	private static int verify (double[] constants, byte[] code) {
+		int depth = 0, maxDepth = 0;
+		for (int pc = 0; pc < code.length; pc++) {
+			switch (code[pc]) {
+				case PUSH_CONST:
+					if (pc + 2 >= code.length || constantAt(code, pc + 1) >= constants.length) {
+						throw new IllegalArgumentException("Bad constant index at " + pc);
+					}
+					pc += 2;
+					maxDepth = Math.max(maxDepth, ++depth);
+					break;
+				case PUSH_X:
+					maxDepth = Math.max(maxDepth, ++depth);
+					break;
+				case ADD: case SUB: case MUL: case DIV: case POW:
+					if (--depth < 1) {
+						throw new IllegalArgumentException("Stack underflow at " + pc);
+					}
+					break;
+				case LOG:
+					if (depth < 1) {
+						throw new IllegalArgumentException("Stack underflow at " + pc);
+					}
+					break;
+				case AFFINE:
+					if (pc + 4 >= code.length || constantAt(code, pc + 1) >= constants.length || constantAt(code, pc + 3) >= constants.length) {
+						throw new IllegalArgumentException("Bad constant index at " + pc);
+					}
+					if (depth < 1) {
+						throw new IllegalArgumentException("Stack underflow at " + pc);
+					}
+					pc += 4;
+					break;
+				case IPOW:
+					if (pc + 1 >= code.length) {
+						throw new IllegalArgumentException("Missing exponent at " + pc);
+					}
+					if (depth < 1) {
+						throw new IllegalArgumentException("Stack underflow at " + pc);
+					}
+					pc += 1;
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown opcode " + code[pc] + " at " + pc);
+			}
+		}
+		if (depth != 1) {
+			throw new IllegalArgumentException("Program leaves " + depth + " values on the stack");
+		}
+		return maxDepth;
+	}
+
+	private static int constantAt (byte[] code, int pc) {
+		return ((code[pc] & 0xFF) << 8) | (code[pc + 1] & 0xFF);
+	}
+
+	/**
+	 * @return how many operand stack slots evaluate needs
+	 */
+	public int getMaxStack () {
+		return maxStack;
+	}
+
+	/**
+	 * Given the value of the independent variable x, compute the value of the program, using the
+	 * program's own operand stack. Not safe for concurrent use.
+	 * @param x the value of the independent variable x
+	 * @return the value of the expression
+	 */
+	public double evaluate (double x) {
+		if (stack == null) {
+			stack = new double[maxStack];
+		}
+		return evaluate(x, stack);
+	}
+
+	@Override
+	public double applyAsDouble (double x) {
+		return evaluate(x);
+	}
+
+	/**
+	 * Given the value of the independent variable x, compute the value of the program.
+	 * @param x the value of the independent variable x
+	 * @param stack the operand stack to use, at least getMaxStack() long
+	 * @return the value of the expression
+	 */
+	public double evaluate (double x, double[] stack) {
+		final byte[] code = this.code;
+		final double[] constants = this.constants;
+		int top = -1;
+		for (int pc = 0; pc < code.length; pc++) {
+			switch (code[pc]) {
+				case PUSH_X:
+					stack[++top] = x;
+					break;
+				case PUSH_CONST:
+					stack[++top] = constants[constantAt(code, pc + 1)];
+					pc += 2;
+					break;
+				case ADD:
+					top--;
+					stack[top] = stack[top] + stack[top + 1];
+					break;
+				case SUB:
+					top--;
+					stack[top] = stack[top] - stack[top + 1];
+					break;
+				case MUL:
+					top--;
+					stack[top] = stack[top] * stack[top + 1];
+					break;
+				case DIV:
+					top--;
+					stack[top] = stack[top] / stack[top + 1];
+					break;
+				case POW:
+					top--;
+					stack[top] = Math.pow(stack[top], stack[top + 1]);
+					break;
+				case AFFINE:
+					stack[top] = constants[constantAt(code, pc + 1)] * stack[top] + constants[constantAt(code, pc + 3)];
+					pc += 4;
+					break;
+				case IPOW:
+					stack[top] = IntegerPowerExpression.power(stack[top], code[pc + 1]);
+					pc += 1;
+					break;
+				default:
+					stack[top] = Math.log(stack[top]) / LOG_BASE;
+					break;
+			}
+		}
+		return stack[0];
+	}
+
+	/**
+	 * Writes the program in its compact binary form: the constant count and raw IEEE-754 constants,
+	 * followed by the code length and opcodes.
+	 * @param out where to write the program
+	 * @throws IOException if out cannot be written
+	 */
+	public void writeTo (DataOutput out) throws IOException {
+		out.writeShort(constants.length);
+		for (double constant : constants) {
+			out.writeDouble(constant);
+		}
+		out.writeInt(code.length);
+		out.write(code);
+	}
+
+	/**
+	 * Reads a program written by writeTo.
+	 * @param in where to read the program from
+	 * @return the program
+	 * @throws IOException if in cannot be read or does not hold a well-formed program
+	 */
+	public static ExpressionProgram readFrom (DataInput in) throws IOException {
+		final double[] constants = new double[in.readUnsignedShort()];
+		for (int i = 0; i < constants.length; i++) {
+			constants[i] = in.readDouble();
+		}
+		final int length = in.readInt();
+		if (length < 0) {
+			throw new InvalidObjectException("Negative code length");
+		}
+		final byte[] code = new byte[length];
+		in.readFully(code);
+		try {
+			return new ExpressionProgram(constants, code);
+		} catch (IllegalArgumentException iae) {
+			throw new InvalidObjectException(iae.getMessage());
+		}
+	}
+
+	private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		try {
+			if (verify(constants, code) != maxStack) {
+				throw new InvalidObjectException("Wrong stack size");
+			}
+		} catch (IllegalArgumentException | NullPointerException e) {
+			throw new InvalidObjectException(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,318 @@
+import java.util.*;
+
+/**
+ * Simplifies expressions, chiefly the raw output of differentiate, by rewriting them bottom-up with
+ * local algebraic rules until no rule applies or a step budget runs out:
+ *
+ *   - parentheses are dropped, since the tree already fixes the order of operations;
+ *   - operations on literals are folded, so x^(2-1) becomes x^1 and then x;
+ *   - identities are eliminated: e+0, e-0, e*1, e/1, e^1 become e; e*0, 0/e become 0; e-e becomes 0,
+ *     e/e and e^0 and 1^e become 1;
+ *   - like terms are collected: a*e + b*e becomes (a+b)*e, with literal coefficients moved to the front
+ *     of products and multiplied together;
+ *   - powers of the same base with integer exponents are merged: e*e becomes e^2, e^a*e^b becomes
+ *     e^(a+b), e^a/e^b becomes e^(a-b) and (e^a)^b becomes e^(a*b).
+ *
+ * The rules are the usual ones of real algebra, so the simplified expression has the same value
+ * wherever the original is defined; it may also be defined where the original is not, as 0*log(x)
+ * becoming 0 shows.
+ *
+ * Nodes are hash-consed through an ExpressionInterner as they are rebuilt, so the comparisons that
+ * like-term collection and power merging make are identity checks, and the result is a shared DAG.
+ */
+public class ExpressionSimplifier {
+	public static final int DEFAULT_STEP_BUDGET = 10_000;
+
+	private final int stepBudget;
+
+	public ExpressionSimplifier () {
+		this(DEFAULT_STEP_BUDGET);
+	}
+
+	/**
+	 * @param stepBudget the most rewrites to make per call to simplify
+	 */
+	public ExpressionSimplifier (int stepBudget) {
+		this.stepBudget = stepBudget;
+	}
+
+	/**
+	 * Simplifies the specified expression.
+	 * @param expression the expression to simplify; it is not modified
+	 * @return the simplified expression, or the best found when the step budget ran out
+	 */
+	public Expression simplify (Expression expression) {
+		return new Run().simplify(expression);
+	}
+
+	/**
+	 * The state of a single call to simplify.
+	 */
+	private class Run {
+		final ExpressionInterner interner = new ExpressionInterner();
+		final Expression zero = interner.intern(new LiteralExpression("0"));
+		final Expression one = interner.intern(new LiteralExpression("1"));
+		int steps;
+
+		Expression simplify (Expression expression) {
+			Expression current = interner.intern(expression);
+			while (steps < stepBudget) {
+				final Expression next = pass(current, new IdentityHashMap<>());
+				if (next == current) {
+					break;
+				}
+				current = next;
+			}
+			return current;
+		}
+
+		/**
+		 * Rebuilds the DAG once bottom-up, rewriting each node after its children.
+		 */
+		Expression pass (Expression expression, Map<Expression, Expression> done) {
+			final Expression known = done.get(expression);
+			if (known != null) {
+				return known;
+			}
+			Expression result = expression;
+			if (expression instanceof AdditiveExpression) {
+				final AdditiveExpression additive = (AdditiveExpression) expression;
+				final Expression left = pass(additive.getLeft(), done), right = pass(additive.getRight(), done);
+				if (left != additive.getLeft() || right != additive.getRight()) {
+					result = add(left, right, additive.isSubtraction());
+				}
+			} else if (expression instanceof MultiplicativeExpression) {
+				final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+				final Expression left = pass(multiplicative.getLeft(), done), right = pass(multiplicative.getRight(), done);
+				if (left != multiplicative.getLeft() || right != multiplicative.getRight()) {
+					result = multiply(left, right, multiplicative.isDivision());
+				}
+			} else if (expression instanceof ExponentialExpression) {
+				final ExponentialExpression exponential = (ExponentialExpression) expression;
+				final Expression base = pass(exponential.getBase(), done), power = pass(exponential.getPower(), done);
+				if (base != exponential.getBase() || power != exponential.getPower()) {
+					result = power(base, power);
+				}
+			} else if (expression instanceof LogarithmicExpression) {
+				final LogarithmicExpression logarithmic = (LogarithmicExpression) expression;
+				final Expression argument = pass(logarithmic.getArgument(), done);
+				if (argument != logarithmic.getArgument()) {
+					result = interner.intern(new LogarithmicExpression(argument));
+				}
+			} else if (expression instanceof ParentheticalExpression) {
+				result = pass(((ParentheticalExpression) expression).getExpression(), done);
+			}
+			while (steps < stepBudget) {
+				final Expression rewritten = rewrite(result);
+				if (rewritten == null) {
+					break;
+				}
+				steps++;
+				result = rewritten;
+			}
+			done.put(expression, result);
+			return result;
+		}
+
+		/**
+		 * Applies the first rule that matches the specified node, whose children are already simplified.
+		 * @return the rewritten node, or null if no rule matches
+		 */
+		Expression rewrite (Expression expression) {
+			if (expression instanceof ParentheticalExpression) {
+				return ((ParentheticalExpression) expression).getExpression();
+			} else if (expression instanceof AdditiveExpression) {
+				return rewriteAdditive((AdditiveExpression) expression);
+			} else if (expression instanceof MultiplicativeExpression) {
+				return rewriteMultiplicative((MultiplicativeExpression) expression);
+			} else if (expression instanceof ExponentialExpression) {
+				return rewriteExponential((ExponentialExpression) expression);
+			} else if (expression instanceof LogarithmicExpression) {
+				final Expression argument = ((LogarithmicExpression) expression).getArgument();
+				return isLiteral(argument) ? literal(expression.evaluate(0)) : null;
+			}
+			return null;
+		}
+
+		Expression rewriteAdditive (AdditiveExpression additive) {
+			final Expression left = additive.getLeft(), right = additive.getRight();
+			final boolean subtraction = additive.isSubtraction();
+			if (isLiteral(left) && isLiteral(right)) {
+				return literal(additive.evaluate(0));
+			}
+			if (isLiteral(right, 0)) {
+				return left;
+			}
+			if (!subtraction && isLiteral(left, 0)) {
+				return right;
+			}
+			if (subtraction && left == right) {
+				return zero;
+			}
+			// (e + a) + b becomes e + (a + b).
+			if (isLiteral(right) && left instanceof AdditiveExpression && isLiteral(((AdditiveExpression) left).getRight())) {
+				final AdditiveExpression inner = (AdditiveExpression) left;
+				final double a = value(inner.getRight()) * (inner.isSubtraction() ? -1 : 1);
+				final double c = a + value(right) * (subtraction ? -1 : 1);
+				return add(inner.getLeft(), literal(Math.abs(c)), c < 0);
+			}
+			// a*e + b*e becomes (a + b)*e.
+			final Expression leftTerm = term(left), rightTerm = term(right);
+			if (leftTerm == rightTerm && !isLiteral(leftTerm)) {
+				final double c = coefficient(left) + coefficient(right) * (subtraction ? -1 : 1);
+				return scale(c, leftTerm);
+			}
+			return null;
+		}
+
+		Expression rewriteMultiplicative (MultiplicativeExpression multiplicative) {
+			final Expression left = multiplicative.getLeft(), right = multiplicative.getRight();
+			if (isLiteral(left) && isLiteral(right)) {
+				return literal(multiplicative.evaluate(0));
+			}
+			if (multiplicative.isDivision()) {
+				if (isLiteral(right, 1)) {
+					return left;
+				}
+				if (isLiteral(left, 0)) {
+					return zero;
+				}
+				if (left == right) {
+					return one;
+				}
+				// e^a / e^b becomes e^(a - b).
+				if (base(left) == base(right) && isInteger(exponent(left)) && isInteger(exponent(right))) {
+					return power(base(left), literal(exponent(left) - exponent(right)));
+				}
+				return null;
+			}
+			if (isLiteral(left, 0) || isLiteral(right, 0)) {
+				return zero;
+			}
+			if (isLiteral(left, 1)) {
+				return right;
+			}
+			if (isLiteral(right, 1)) {
+				return left;
+			}
+			// Literal coefficients go first, and are multiplied together.
+			if (isLiteral(right)) {
+				return multiply(right, left, false);
+			}
+			if (isLiteral(left) && right instanceof MultiplicativeExpression && !((MultiplicativeExpression) right).isDivision() && isLiteral(((MultiplicativeExpression) right).getLeft())) {
+				final MultiplicativeExpression inner = (MultiplicativeExpression) right;
+				return scale(value(left) * value(inner.getLeft()), inner.getRight());
+			}
+			// e^a * e^b becomes e^(a + b).
+			if (base(left) == base(right) && isInteger(exponent(left)) && isInteger(exponent(right))) {
+				return power(base(left), literal(exponent(left) + exponent(right)));
+			}
+			return null;
+		}
+
+		Expression rewriteExponential (ExponentialExpression exponential) {
+			final Expression base = exponential.getBase(), power = exponential.getPower();
+			if (isLiteral(base) && isLiteral(power)) {
+				return literal(exponential.evaluate(0));
+			}
+			if (isLiteral(power, 1)) {
+				return base;
+			}
+			if (isLiteral(power, 0) || isLiteral(base, 1)) {
+				return one;
+			}
+			// (e^a)^b becomes e^(a*b).
+			if (base instanceof ExponentialExpression && isInteger(exponent(base)) && isLiteral(power) && isInteger(value(power))) {
+				return power(((ExponentialExpression) base).getBase(), literal(exponent(base) * value(power)));
+			}
+			return null;
+		}
+
+		/**
+		 * Returns c*term, leaving out a coefficient of 1 and collapsing a coefficient of 0.
+		 */
+		Expression scale (double c, Expression term) {
+			if (c == 0) {
+				return zero;
+			}
+			return c == 1 ? term : multiply(literal(c), term, false);
+		}
+
+		/**
+		 * Returns the literal coefficient of a product a*e, or 1 for any other expression.
+		 */
+		double coefficient (Expression expression) {
+			return isScaled(expression) ? value(((MultiplicativeExpression) expression).getLeft()) : 1;
+		}
+
+		/**
+		 * Returns e for a product a*e with a literal coefficient a, or the expression itself otherwise.
+		 */
+		Expression term (Expression expression) {
+			return isScaled(expression) ? ((MultiplicativeExpression) expression).getRight() : expression;
+		}
+
+		/**
+		 * Returns b for a power b^p with a literal exponent, or the expression itself otherwise.
+		 */
+		Expression base (Expression expression) {
+			if (expression instanceof ExponentialExpression && isLiteral(((ExponentialExpression) expression).getPower())) {
+				return ((ExponentialExpression) expression).getBase();
+			}
+			return expression;
+		}
+
+		/**
+		 * Returns p for a power b^p with a literal exponent, or 1 otherwise.
+		 */
+		double exponent (Expression expression) {
+			if (expression instanceof ExponentialExpression && isLiteral(((ExponentialExpression) expression).getPower())) {
+				return value(((ExponentialExpression) expression).getPower());
+			}
+			return 1;
+		}
+
+		Expression add (Expression left, Expression right, boolean subtraction) {
+			return interner.intern(new AdditiveExpression(left, right, subtraction));
+		}
+
+		Expression multiply (Expression left, Expression right, boolean division) {
+			return interner.intern(new MultiplicativeExpression(left, right, division));
+		}
+
+		Expression power (Expression base, Expression power) {
+			return interner.intern(new ExponentialExpression(base, power));
+		}
+
+		Expression literal (double value) {
+			return interner.intern(new LiteralExpression(value));
+		}
+	}
+
+	/**
+	 * Tells whether an expression is a product a*e with a literal coefficient a.
+	 */
+	private static boolean isScaled (Expression expression) {
+		return expression instanceof MultiplicativeExpression && !((MultiplicativeExpression) expression).isDivision()
+			&& isLiteral(((MultiplicativeExpression) expression).getLeft());
+	}
+
+	private static boolean isLiteral (Expression expression) {
+		return expression instanceof LiteralExpression;
+	}
+
+	private static boolean isLiteral (Expression expression, double value) {
+		return expression instanceof LiteralExpression && ((LiteralExpression) expression).getValue() == value;
+	}
+
+	private static double value (Expression literal) {
+		return ((LiteralExpression) literal).getValue();
+	}
+
+	/**
+	 * Tells whether a value is a whole number small enough that sums and products of such stay exact.
+	 */
+	private static boolean isInteger (double value) {
+		return value == Math.rint(value) && Math.abs(value) <= 1 << 20;
+	}
+}
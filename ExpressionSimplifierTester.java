@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for the algebraic simplifier.
+ */
+public class ExpressionSimplifierTester {
+	private static final double[] XS = { -2.5, -1, -0.5, 0.25, 1, 2, 3.75 };
+
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+	private final ExpressionSimplifier _simplifier = new ExpressionSimplifier();
+
+	/**
+	 * Asserts that an expression simplifies to the expected one, which is already as simple as it gets
+	 * but for its parentheses.
+	 */
+	private void assertSimplifiesTo (String expected, String expression) throws ExpressionParseException {
+		assertEquals(_simplifier.simplify(_parser.parse(expected)), _simplifier.simplify(_parser.parse(expression)), expression);
+	}
+
+	@Test
+	/**
+	 * Verifies each kind of rewrite.
+	 */
+	public void testRewrites () throws ExpressionParseException {
+		assertSimplifiesTo("x", "x^(2-1)");
+		assertSimplifiesTo("x", "((x))");
+		assertSimplifiesTo("14", "2*(3+4)");
+		assertSimplifiesTo("x", "0*x+1*x");
+		assertSimplifiesTo("x", "x/1-0");
+		assertSimplifiesTo("0", "log(x)-log(x)");
+		assertSimplifiesTo("1", "(x+1)/(x+1)");
+		assertSimplifiesTo("1", "x^0");
+		assertSimplifiesTo("5*x", "2*x+x*3");
+		assertSimplifiesTo("x+3", "x+1+2");
+		assertSimplifiesTo("6*x", "2*(x*3)");
+		assertSimplifiesTo("(x+1)^2", "(x+1)*(x+1)");
+		assertSimplifiesTo("x^5", "x^2*x^3");
+		assertSimplifiesTo("x^2", "x^5/x^3");
+		assertSimplifiesTo("x^6", "(x^2)^3");
+	}
+
+	@Test
+	/**
+	 * Verifies that the product-rule output of a derivative is reduced to its real complexity.
+	 */
+	public void testSimplifiesDerivatives () throws ExpressionParseException {
+		assertEquals(_parser.parse("3*x^2"), _simplifier.simplify(_parser.parse("x^3").differentiate()));
+		assertEquals(_parser.parse("5"), _simplifier.simplify(_parser.parse("5*x+7").differentiate()));
+
+		final ExpressionInterner interner = new ExpressionInterner();
+		Expression derivative = _parser.parse("(x*x+1)*(x*x*x-2*x)*(x+2)");
+		for (int order = 1; order <= 4; order++) {
+			derivative = interner.differentiate(derivative);
+		}
+		final Expression simplified = _simplifier.simplify(derivative);
+		assertTrue(ExpressionDag.compile(simplified).size() * 4 < ExpressionDag.compile(derivative).size());
+		for (double x : XS) {
+			ExpressionEvaluationTester.assertSameValue(derivative.evaluate(x), simplified.evaluate(x), "order 4");
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that simplified random expressions keep their values wherever the originals are defined.
+	 */
+	public void testPreservesValues () {
+		final Random random = new Random(7);
+		for (int i = 0; i < 500; i++) {
+			final Expression expression;
+			try {
+				expression = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			final Expression simplified = _simplifier.simplify(expression);
+			for (double x : XS) {
+				final double expected = expression.evaluate(x);
+				if (Double.isFinite(expected)) {
+					assertEquals(expected, simplified.evaluate(x), 1e-6 * Math.max(1, Math.abs(expected)), expression.convertToString(0));
+				}
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that the step budget bounds the rewriting.
+	 */
+	public void testStepBudget () throws ExpressionParseException {
+		final Expression expression = _parser.parse("0*x+1*(x+0)");
+		assertEquals(expression, new ExpressionSimplifier(0).simplify(expression));
+		assertNotEquals(_parser.parse("x"), new ExpressionSimplifier(1).simplify(expression));
+	}
+}
@@ -0,0 +1,173 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A file of named expressions in ExpressionCodec's encoding, read through a memory-mapped FileChannel.
+ *
+ * The file is a header -- the magic number, the format version and the number of entries -- followed
+ * by an index of (key offset, key length, encoding offset, encoding length) ints, one per entry,
+ * sorted by key, and then the keys in UTF-8 and the encodings. Opening a store maps the file and reads
+ * the header only; get finds a key by binary search over the index, and decodes its expression on first
+ * use. Startup therefore costs the same for ten expressions as for ten thousand, and expressions that
+ * are never asked for are never decoded.
+ *
+ * A store may be read by several threads at once. Files are limited to 2 GB, the most one buffer maps.
+ */
+public final class ExpressionStore {
+	public static final int MAGIC = 0x45585052; // "EXPR"
+	public static final int VERSION = 1;
+	private static final int HEADER_BYTES = 12, INDEX_ENTRY_BYTES = 16;
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final AtomicReferenceArray<Expression> decoded;
+
+	private ExpressionStore (ByteBuffer buffer, int size) {
+		this.buffer = buffer;
+		this.size = size;
+		this.decoded = new AtomicReferenceArray<>(size);
+	}
+
+	/**
+	 * Writes the specified expressions to a file, replacing it.
+	 * @param file where to write the store
+	 * @param expressions the expressions to store, by key
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write (Path file, Map<String, Expression> expressions) throws IOException {
+		final List<String> keys = new ArrayList<>(expressions.keySet());
+		Collections.sort(keys);
+		final byte[][] names = new byte[keys.size()][], encodings = new byte[keys.size()][];
+		long length = HEADER_BYTES + (long) INDEX_ENTRY_BYTES * keys.size();
+		for (int i = 0; i < keys.size(); i++) {
+			names[i] = keys.get(i).getBytes(StandardCharsets.UTF_8);
+			encodings[i] = ExpressionCodec.encode(expressions.get(keys.get(i)));
+			length += names[i].length + encodings[i].length;
+		}
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Store of " + length + " bytes is too large to map");
+		}
+
+		final ByteBuffer out = ByteBuffer.allocate((int) length);
+		out.putInt(MAGIC).putInt(VERSION).putInt(keys.size());
+		int offset = HEADER_BYTES + INDEX_ENTRY_BYTES * keys.size();
+		for (int i = 0; i < keys.size(); i++) {
+			out.putInt(offset).putInt(names[i].length);
+			offset += names[i].length;
+			out.putInt(offset).putInt(encodings[i].length);
+			offset += encodings[i].length;
+		}
+		for (int i = 0; i < keys.size(); i++) {
+			out.put(names[i]).put(encodings[i]);
+		}
+		out.flip();
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+	}
+
+	/**
+	 * Opens a store, mapping its file. The channel is closed again at once; the mapping stays valid.
+	 * @param file the store
+	 * @return the store
+	 * @throws IOException if the file cannot be read, or is not a store
+	 */
+	public static ExpressionStore open (Path file) throws IOException {
+		final MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large to map");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+			throw new IOException(file + " is not an expression store");
+		}
+		if (buffer.getInt(4) != VERSION) {
+			throw new IOException(file + " has unknown version " + buffer.getInt(4));
+		}
+		final int size = buffer.getInt(8);
+		if (size < 0 || HEADER_BYTES + (long) INDEX_ENTRY_BYTES * size > buffer.capacity()) {
+			throw new IOException(file + " has a truncated index");
+		}
+		return new ExpressionStore(buffer, size);
+	}
+
+	/**
+	 * @return how many expressions the store holds
+	 */
+	public int size () {
+		return size;
+	}
+
+	/**
+	 * @param i which entry, from 0, in order of key
+	 * @return the key of the entry
+	 * @throws IllegalArgumentException if the entry's bounds are corrupt
+	 */
+	public String key (int i) {
+		final int entry = HEADER_BYTES + INDEX_ENTRY_BYTES * Objects.checkIndex(i, size);
+		final ByteBuffer slice = slice(entry);
+		final byte[] name = new byte[slice.remaining()];
+		slice.get(name);
+		return new String(name, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param i which entry, from 0, in order of key
+	 * @return the expression of the entry, decoded on first use
+	 * @throws IllegalArgumentException if the entry's bounds or encoding are corrupt
+	 */
+	public Expression get (int i) {
+		Expression expression = decoded.get(Objects.checkIndex(i, size));
+		if (expression == null) {
+			final int entry = HEADER_BYTES + INDEX_ENTRY_BYTES * i;
+			expression = ExpressionCodec.decode(slice(entry + 8));
+			// Two threads may both decode an entry; either tree will do, so keep whichever came first.
+			if (!decoded.compareAndSet(i, null, expression)) {
+				expression = decoded.get(i);
+			}
+		}
+		return expression;
+	}
+
+	/**
+	 * Returns the bytes that an (offset, length) pair of the index points to.
+	 * @throws IllegalArgumentException if they are not within the file
+	 */
+	private ByteBuffer slice (int field) {
+		final int offset = buffer.getInt(field), length = buffer.getInt(field + 4);
+		if (offset < 0 || length < 0 || (long) offset + length > buffer.capacity()) {
+			throw new IllegalArgumentException("Index entry points to " + length + " bytes at " + offset + " of " + buffer.capacity());
+		}
+		return buffer.slice(offset, length);
+	}
+
+	/**
+	 * @param key the key of an expression
+	 * @return the expression, decoded on first use, or null if the store has no such key
+	 */
+	public Expression get (String key) {
+		int low = 0, high = size - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final int comparison = key(middle).compareTo(key);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return get(middle);
+			}
+		}
+		return null;
+	}
+}
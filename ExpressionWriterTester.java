@@ -0,0 +1,83 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * Tests for writing expression trees with appendTo and convertToString.
+ */
+public class ExpressionWriterTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	@Test
+	/**
+	 * Verifies that appendTo writes the same text as convertToString, quickly even for a large tree.
+	 */
+	public void testAppendToLargeTree () throws IOException, ExpressionParseException {
+		final Expression small = _parser.parse("(x+2)*log(x)-x^3/1.5");
+		assertEquals(small.convertToString(0).replaceAll("(?m)^", "\t\t"), small.convertToString(2));
+
+		// A balanced tree of 2^17 leaves, as large derivatives are.
+		List<Expression> level = new ArrayList<>();
+		for (int i = 0; i < 1 << 17; i++) {
+			level.add(i % 2 == 0 ? new VariableExpression("x") : new LiteralExpression(Integer.toString(i)));
+		}
+		while (level.size() > 1) {
+			final List<Expression> next = new ArrayList<>();
+			for (int i = 0; i < level.size(); i += 2) {
+				next.add(i % 4 == 0 ? new AdditiveExpression(level.get(i), level.get(i + 1), false) : new MultiplicativeExpression(level.get(i), level.get(i + 1), false));
+			}
+			level = next;
+		}
+		final Expression large = level.get(0);
+		assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+			final StringWriter out = new StringWriter();
+			large.appendTo(out, 1);
+			assertEquals(large.convertToString(1), out.toString());
+			assertEquals((1 << 18) - 1, out.toString().split("\n").length);
+		});
+	}
+
+	@Test
+	/**
+	 * Verifies that a long chain of terms, which parses to a left-leaning tree as deep as the chain is
+	 * long, is written without overflowing the stack, with every node of it at its own indent.
+	 */
+	public void testDeepLeftLeaningTree () throws IOException, ExpressionParseException {
+		final Expression chain = _parser.parse("x*x-2*x-3");
+		assertEquals("-\n\t-\n\t\t*\n\t\t\tx\n\t\t\tx\n\t\t*\n\t\t\t2.0\n\t\t\tx\n\t3.0\n", chain.convertToString(0));
+
+		final int terms = 100000;
+		Expression deep = new VariableExpression("x");
+		for (int i = 1; i < terms; i++) {
+			deep = i % 2 == 0 ? new AdditiveExpression(deep, new LiteralExpression(Integer.toString(i)), true) : new MultiplicativeExpression(deep, new VariableExpression("x"), false);
+		}
+		// The text is as long as the square of the depth, so it is counted rather than kept: indents are
+		// appended as slices of tabs, and everything else as whole lines or characters.
+		final long[] counts = new long[2];
+		final Appendable counter = new Appendable() {
+			public Appendable append (CharSequence csq) {
+				counts[1] += csq.chars().filter(c -> c == '\n').count();
+				return this;
+			}
+
+			public Appendable append (CharSequence csq, int start, int end) {
+				counts[0] += end - start;
+				return this;
+			}
+
+			public Appendable append (char c) {
+				counts[1] += c == '\n' ? 1 : 0;
+				return this;
+			}
+		};
+		deep.appendTo(counter, 0);
+		// Each node of the chain is at its depth, and the term to its right one deeper.
+		assertEquals((long) terms * (terms - 1), counts[0]);
+		assertEquals(2 * terms - 1, counts[1]);
+
+		// Parenthesized and expanded nodes are walked the same way.
+		final Expression nested = new ParentheticalExpression(new AffineExpression(2, 1, new IntegerPowerExpression(new ParentheticalExpression(new LogarithmicExpression(new ParentheticalExpression(new VariableExpression("x")))), 3)));
+		assertEquals(_parser.parse("(2.0*(log(x))^3+1.0)").convertToString(1), nested.convertToString(1));
+	}
+}
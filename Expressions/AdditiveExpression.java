@@ -1,7 +1,10 @@
+import java.io.IOException;
+
 public class AdditiveExpression implements Expression {
-    private Expression leftOfSign;
-    private Expression rightOfSign;
-    private boolean isSubtraction;
+    private final Expression leftOfSign;
+    private final Expression rightOfSign;
+    private final boolean isSubtraction;
+    private int hash;
 
     public AdditiveExpression(Expression left, Expression right, boolean subtraction){
         leftOfSign = left;
@@ -15,6 +18,38 @@ public class AdditiveExpression implements Expression {
         isSubtraction = false;
     }
 
+    Expression getLeft() {
+        return leftOfSign;
+    }
+
+    Expression getRight() {
+        return rightOfSign;
+    }
+
+    boolean isSubtraction() {
+        return isSubtraction;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof AdditiveExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        AdditiveExpression that = (AdditiveExpression) other;
+        return isSubtraction == that.isSubtraction && leftOfSign.equals(that.leftOfSign) && rightOfSign.equals(that.rightOfSign);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = (31 * leftOfSign.hashCode() + rightOfSign.hashCode()) * 31 + (isSubtraction ? 2 : 1);
+        }
+        return hash;
+    }
+
     @Override
     public Expression deepCopy() {
         return new AdditiveExpression(leftOfSign.deepCopy(), rightOfSign.deepCopy(), isSubtraction); 
@@ -22,12 +57,12 @@ public class AdditiveExpression implements Expression {
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
-        
-        return indent + (isSubtraction ? "-" : "+") + "\n" + leftOfSign.convertToString(indentLevel + 1) + rightOfSign.convertToString(indentLevel + 1);
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
     }
 
     @Override
@@ -38,6 +73,51 @@ public class AdditiveExpression implements Expression {
         return leftOfSign.evaluate(x) + rightOfSign.evaluate(x); 
     }
 
+    @Override
+    public double evaluateAt(double[] environment) {
+        if(isSubtraction){
+            return leftOfSign.evaluateAt(environment) - rightOfSign.evaluateAt(environment);
+        }
+        return leftOfSign.evaluateAt(environment) + rightOfSign.evaluateAt(environment);
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        leftOfSign.evaluateColumn(xs, out, length, scratch);
+        final double[] right = scratch.push();
+        rightOfSign.evaluateColumn(xs, right, length, scratch);
+        if(isSubtraction){
+            for(int i = 0; i < length; i++){
+                out[i] -= right[i];
+            }
+        } else {
+            for(int i = 0; i < length; i++){
+                out[i] += right[i];
+            }
+        }
+        scratch.pop();
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double left = leftOfSign.evaluateWithDerivative(x, derivative);
+        double leftDerivative = derivative[0];
+        double right = rightOfSign.evaluateWithDerivative(x, derivative);
+        if(isSubtraction){
+            derivative[0] = leftDerivative - derivative[0];
+            return left - right;
+        }
+        derivative[0] = leftDerivative + derivative[0];
+        return left + right;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        Interval left = leftOfSign.evaluateInterval(lo, hi);
+        Interval right = rightOfSign.evaluateInterval(lo, hi);
+        return isSubtraction ? left.subtract(right) : left.add(right);
+    }
+
     @Override
     public Expression differentiate() {
         return new AdditiveExpression(leftOfSign.differentiate(), rightOfSign.differentiate(), isSubtraction);
@@ -0,0 +1,110 @@
+import java.io.IOException;
+
+/**
+ * A fused node computing scale * operand + offset, for the common shapes c*e, e+c, e-c, c-e and c*e+b.
+ * It is produced by ExpressionOptimizer and does the same floating-point operations as the nodes it
+ * replaces, in one node instead of up to three.
+ */
+public class AffineExpression implements Expression {
+    private final double scale;
+    private final double offset;
+    private final Expression operand;
+    private int hash;
+
+    public AffineExpression(double scale, double offset, Expression operand){
+        this.scale = scale;
+        this.offset = offset;
+        this.operand = operand;
+    }
+
+    double getScale() {
+        return scale;
+    }
+
+    double getOffset() {
+        return offset;
+    }
+
+    Expression getOperand() {
+        return operand;
+    }
+
+    /**
+     * Returns the same computation built from the basic node types.
+     */
+    Expression expand() {
+        Expression product = new MultiplicativeExpression(new LiteralExpression(Double.toString(scale)), operand);
+        return new AdditiveExpression(product, new LiteralExpression(Double.toString(offset)));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof AffineExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        AffineExpression that = (AffineExpression) other;
+        return Double.doubleToLongBits(scale) == Double.doubleToLongBits(that.scale)
+            && Double.doubleToLongBits(offset) == Double.doubleToLongBits(that.offset) && operand.equals(that.operand);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = ((31 * operand.hashCode() + Double.hashCode(scale)) * 31 + Double.hashCode(offset)) * 31 + 10;
+        }
+        return hash;
+    }
+
+    @Override
+    public Expression deepCopy() {
+        return new AffineExpression(scale, offset, operand.deepCopy());
+    }
+
+    @Override
+    public String convertToString(int indentLevel) {
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
+    }
+
+    @Override
+    public double evaluate(double x) {
+        return scale * operand.evaluate(x) + offset;
+    }
+
+    @Override
+    public double evaluateAt(double[] environment) {
+        return scale * operand.evaluateAt(environment) + offset;
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        operand.evaluateColumn(xs, out, length, scratch);
+        for(int i = 0; i < length; i++){
+            out[i] = scale * out[i] + offset;
+        }
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double value = operand.evaluateWithDerivative(x, derivative);
+        derivative[0] = scale * derivative[0];
+        return scale * value + offset;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return new Interval(scale, scale).multiply(operand.evaluateInterval(lo, hi)).add(new Interval(offset, offset));
+    }
+
+    @Override
+    public Expression differentiate() {
+        return new MultiplicativeExpression(new LiteralExpression(Double.toString(scale)), operand.differentiate());
+    }
+}
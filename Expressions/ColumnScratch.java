@@ -0,0 +1,28 @@
+/**
+ * A stack of reusable columns for Expression.evaluateColumn. A node borrows a column for
+ * each intermediate result with push and returns it with pop, so a batch evaluation needs
+ * only as many columns as the tree is deep, however many points it covers. Each column is
+ * small enough to stay in cache while a whole tree is evaluated over it.
+ *
+ * A ColumnScratch must only be used by one thread at a time.
+ */
+public class ColumnScratch {
+    public static final int COLUMN_LENGTH = 1024;
+
+    private double[][] columns = new double[8][];
+    private int depth;
+
+    public double[] push() {
+        if(depth == columns.length){
+            columns = java.util.Arrays.copyOf(columns, depth * 2);
+        }
+        if(columns[depth] == null){
+            columns[depth] = new double[COLUMN_LENGTH];
+        }
+        return columns[depth++];
+    }
+
+    public void pop() {
+        depth--;
+    }
+}
@@ -1,12 +1,43 @@
+import java.io.IOException;
+
 public class ExponentialExpression implements Expression {
-    private Expression base;
-    private Expression power;
+    private final Expression base;
+    private final Expression power;
+    private int hash;
 
     public ExponentialExpression(Expression base, Expression power){
         this.base = base;
         this.power = power;
     }
 
+    Expression getBase() {
+        return base;
+    }
+
+    Expression getPower() {
+        return power;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof ExponentialExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        ExponentialExpression that = (ExponentialExpression) other;
+        return base.equals(that.base) && power.equals(that.power);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = (31 * base.hashCode() + power.hashCode()) * 31 + 5;
+        }
+        return hash;
+    }
+
     @Override
     public Expression deepCopy() {
         return new ExponentialExpression(base.deepCopy(), power.deepCopy()); 
@@ -14,12 +45,12 @@ public class ExponentialExpression implements Expression {
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
+        return ExpressionWriter.toString(this, indentLevel);
+    }
 
-        return indent + "^\n" + base.convertToString(indentLevel + 1) + power.convertToString(indentLevel + 1);
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
     }
 
     @Override
@@ -27,6 +58,46 @@ public class ExponentialExpression implements Expression {
         return Math.pow(base.evaluate(x), power.evaluate(x)); 
     }
 
+    @Override
+    public double evaluateAt(double[] environment) {
+        return Math.pow(base.evaluateAt(environment), power.evaluateAt(environment));
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        base.evaluateColumn(xs, out, length, scratch);
+        final double[] exponents = scratch.push();
+        power.evaluateColumn(xs, exponents, length, scratch);
+        for(int i = 0; i < length; i++){
+            out[i] = Math.pow(out[i], exponents[i]);
+        }
+        scratch.pop();
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double b = base.evaluateWithDerivative(x, derivative);
+        double baseDerivative = derivative[0];
+        double p = power.evaluateWithDerivative(x, derivative);
+        double powerDerivative = derivative[0];
+        double value = Math.pow(b, p);
+        // d(b^p) = p*b^(p-1)*db + b^p*log(b)*dp; a term whose factor db or dp is 0 is left out, so
+        // that x^2 at x = 0, or 2^x, do not pick up a NaN from b^(p-1) or log(b).
+        derivative[0] = 0;
+        if(baseDerivative != 0){
+            derivative[0] += p * Math.pow(b, p - 1) * baseDerivative;
+        }
+        if(powerDerivative != 0){
+            derivative[0] += value * Math.log(b) * powerDerivative;
+        }
+        return value;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return base.evaluateInterval(lo, hi).pow(power.evaluateInterval(lo, hi));
+    }
+
     @Override
     public Expression differentiate() throws UnsupportedOperationException{
 
@@ -1,3 +1,4 @@
+import java.io.IOException;
 
 //import javafx.scene.layout.*;
 //import javafx.scene.paint.Color;
@@ -23,6 +24,19 @@ interface Expression {
 	 */
 	public String convertToString (int indentLevel);
 
+	/**
+	 * Writes the same text as convertToString(indentLevel) to out, streaming it a line at a time, so
+	 * a tree is written in time linear in the length of its text instead of having every level copy the
+	 * strings of the levels below it. Node types override this, and implement convertToString on top
+	 * of it; the default falls back to convertToString.
+	 * @param out where to write the text, such as a StringBuilder or a Writer
+	 * @param indentLevel how many tab characters should appear at the beginning of each line.
+	 * @throws IOException if out does
+	 */
+	default void appendTo (Appendable out, int indentLevel) throws IOException {
+		out.append(convertToString(indentLevel));
+	}
+
 	/**
 	 * Given the value of the independent variable x, compute the value of this expression.
 	 * @param x the value of the independent variable x
@@ -30,6 +44,80 @@ interface Expression {
 	 */
 	public double evaluate (double x);
 
+	/**
+	 * Given the values of every variable, compute the value of this expression. Each variable reads its
+	 * value from the slot its name was resolved to when the expression was parsed, so there are no
+	 * lookups by name. Node types override this; the default evaluates at environment[0], the slot of x.
+	 * It is named apart from evaluate(double[], double[]), which takes a batch of x values, so that one
+	 * is not called for the other by dropping an argument.
+	 * @param environment the value of each variable, indexed by slot
+	 * @return the value of this expression.
+	 */
+	default double evaluateAt (double[] environment) {
+		return evaluate(environment[0]);
+	}
+
+	/**
+	 * Given an array of values of the independent variable x, compute the value of this expression
+	 * for each of them. The work is done a block of points at a time and node by node, each node
+	 * filling a column from its children's columns, so there is one call per node per block rather
+	 * than one per node per point.
+	 * @param xs the values of the independent variable x
+	 * @param out where to store the value of this expression for each xs[i]; at least xs.length long
+	 */
+	default void evaluate (double[] xs, double[] out) {
+		final ColumnScratch scratch = new ColumnScratch();
+		final double[] xColumn = scratch.push();
+		final double[] column = scratch.push();
+		for (int offset = 0; offset < xs.length; offset += ColumnScratch.COLUMN_LENGTH) {
+			final int length = Math.min(ColumnScratch.COLUMN_LENGTH, xs.length - offset);
+			System.arraycopy(xs, offset, xColumn, 0, length);
+			evaluateColumn(xColumn, column, length, scratch);
+			System.arraycopy(column, 0, out, offset, length);
+		}
+	}
+
+	/**
+	 * Computes the value of this expression for the first length values of the column xs.
+	 * Node types override this with a loop per node; the default falls back to evaluate(double).
+	 * @param xs the values of the independent variable x
+	 * @param out where to store the values of this expression
+	 * @param length how many values to compute, at most ColumnScratch.COLUMN_LENGTH
+	 * @param scratch where to borrow columns for intermediate results
+	 */
+	default void evaluateColumn (double[] xs, double[] out, int length, ColumnScratch scratch) {
+		for (int i = 0; i < length; i++) {
+			out[i] = evaluate(xs[i]);
+		}
+	}
+
+	/**
+	 * Given the value of the independent variable x, compute the value of this expression and its
+	 * derivative with respect to x together, in one traversal and without allocating, by carrying
+	 * (value, derivative) pairs up the tree (forward-mode automatic differentiation). Unlike
+	 * differentiate, this works for every expression, x^x included.
+	 * Node types override this; the default falls back to differentiate.
+	 * @param x the value of the independent variable x
+	 * @param derivative where to store the derivative, in derivative[0]
+	 * @return the value of this expression
+	 */
+	default double evaluateWithDerivative (double x, double[] derivative) {
+		derivative[0] = differentiate().evaluate(x);
+		return evaluate(x);
+	}
+
+	/**
+	 * Encloses every value this expression takes for x from lo to hi, by interval arithmetic.
+	 * The enclosure is guaranteed but may be wider than the true range, as x*x over [-1, 1] shows.
+	 * Node types override this; the default encloses nothing.
+	 * @param lo the lowest value of the independent variable x
+	 * @param hi the highest value of the independent variable x
+	 * @return the enclosure, which also tells whether this expression is defined throughout
+	 */
+	default Interval evaluateInterval (double lo, double hi) {
+		return Interval.ENTIRE;
+	}
+
 	/**
 	 * Produce a new, fully independent (i.e., there should be no shared subtrees) Expression
 	 * representing the derivative of this expression.
@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Helpers for Expression.appendTo. Indents are appended as slices of one shared string of tabs, so
+ * writing a line costs no allocation however deep it is, and a whole tree is written in time linear
+ * in the length of its text. Trees are walked with an explicit stack rather than by recursion, so a
+ * long chain of terms, which the parsers build as a left-leaning tree as deep as the chain is long,
+ * is written without overflowing the call stack.
+ */
+public final class ExpressionWriter {
+    private static volatile String tabs = "\t".repeat(64);
+
+    private ExpressionWriter() {
+    }
+
+    /**
+     * Appends indentLevel tabs to out.
+     */
+    public static void indent(Appendable out, int indentLevel) throws IOException {
+        String tabs = ExpressionWriter.tabs;
+        if(tabs.length() < indentLevel){
+            tabs = "\t".repeat(Math.max(indentLevel, 2 * tabs.length()));
+            ExpressionWriter.tabs = tabs;
+        }
+        out.append(tabs, 0, indentLevel);
+    }
+
+    /**
+     * Writes the tree rooted at expression to out, as appendTo does, a node at a time. The interior node
+     * types implement appendTo with this; leaves write themselves, and any other node type is written
+     * with its convertToString.
+     */
+    public static void write(Appendable out, Expression expression, int indentLevel) throws IOException {
+        final Deque<Expression> nodes = new ArrayDeque<>();
+        // The indent of each node on the stack, by its depth in the stack.
+        int[] indents = new int[16];
+        nodes.push(expression);
+        indents[0] = indentLevel;
+        while(!nodes.isEmpty()){
+            Expression node = nodes.pop();
+            final int indent = indents[nodes.size()];
+            if(node instanceof AffineExpression){
+                node = ((AffineExpression) node).expand();
+            }else if(node instanceof IntegerPowerExpression){
+                node = ((IntegerPowerExpression) node).expand();
+            }
+
+            final String label;
+            final Expression first, second;
+            if(node instanceof AdditiveExpression){
+                final AdditiveExpression additive = (AdditiveExpression) node;
+                label = additive.isSubtraction() ? "-\n" : "+\n";
+                first = additive.getLeft();
+                second = additive.getRight();
+            }else if(node instanceof MultiplicativeExpression){
+                final MultiplicativeExpression multiplicative = (MultiplicativeExpression) node;
+                label = multiplicative.isDivision() ? "/\n" : "*\n";
+                first = multiplicative.getLeft();
+                second = multiplicative.getRight();
+            }else if(node instanceof ExponentialExpression){
+                final ExponentialExpression exponential = (ExponentialExpression) node;
+                label = "^\n";
+                first = exponential.getBase();
+                second = exponential.getPower();
+            }else if(node instanceof LogarithmicExpression){
+                label = "log\n";
+                first = ((LogarithmicExpression) node).getArgument();
+                second = null;
+            }else if(node instanceof ParentheticalExpression){
+                label = "()\n";
+                first = ((ParentheticalExpression) node).getExpression();
+                second = null;
+            }else{
+                if(node instanceof LiteralExpression || node instanceof VariableExpression){
+                    node.appendTo(out, indent);
+                }else{
+                    out.append(node.convertToString(indent));
+                }
+                continue;
+            }
+
+            indent(out, indent);
+            out.append(label);
+            if(indents.length < nodes.size() + 2){
+                indents = Arrays.copyOf(indents, 2 * indents.length);
+            }
+            if(second != null){
+                indents[nodes.size()] = indent + 1;
+                nodes.push(second);
+            }
+            indents[nodes.size()] = indent + 1;
+            nodes.push(first);
+        }
+    }
+
+    /**
+     * Returns what expression.appendTo writes, for convertToString.
+     */
+    public static String toString(Expression expression, int indentLevel) {
+        final StringBuilder out = new StringBuilder();
+        try {
+            expression.appendTo(out, indentLevel);
+        } catch(IOException e){
+            // A StringBuilder does not throw.
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+
+/**
+ * A node raising its base to a small whole-number power by repeated multiplication instead of Math.pow.
+ * It is produced by ExpressionOptimizer for literal integer exponents such as x^2 and x^3.
+ */
+public class IntegerPowerExpression implements Expression {
+    private final Expression base;
+    private final int exponent;
+    private int hash;
+
+    public IntegerPowerExpression(Expression base, int exponent){
+        this.base = base;
+        this.exponent = exponent;
+    }
+
+    Expression getBase() {
+        return base;
+    }
+
+    int getExponent() {
+        return exponent;
+    }
+
+    /**
+     * Raises base to the specified power by squaring and multiplying; a negative power takes the reciprocal.
+     */
+    public static double power(double base, int exponent) {
+        long n = Math.abs((long) exponent);
+        double result = 1;
+        double square = base;
+        while(n > 0){
+            if((n & 1) != 0){
+                result *= square;
+            }
+            square *= square;
+            n >>= 1;
+        }
+        return exponent < 0 ? 1 / result : result;
+    }
+
+    /**
+     * Returns the same power built from the basic node types.
+     */
+    Expression expand() {
+        return new ExponentialExpression(base, new LiteralExpression(Integer.toString(exponent)));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof IntegerPowerExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        IntegerPowerExpression that = (IntegerPowerExpression) other;
+        return exponent == that.exponent && base.equals(that.base);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = (31 * base.hashCode() + exponent) * 31 + 11;
+        }
+        return hash;
+    }
+
+    @Override
+    public Expression deepCopy() {
+        return new IntegerPowerExpression(base.deepCopy(), exponent);
+    }
+
+    @Override
+    public String convertToString(int indentLevel) {
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
+    }
+
+    @Override
+    public double evaluate(double x) {
+        return power(base.evaluate(x), exponent);
+    }
+
+    @Override
+    public double evaluateAt(double[] environment) {
+        return power(base.evaluateAt(environment), exponent);
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        base.evaluateColumn(xs, out, length, scratch);
+        for(int i = 0; i < length; i++){
+            out[i] = power(out[i], exponent);
+        }
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double value = base.evaluateWithDerivative(x, derivative);
+        derivative[0] = exponent * power(value, exponent - 1) * derivative[0];
+        return power(value, exponent);
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return base.evaluateInterval(lo, hi).power(exponent);
+    }
+
+    @Override
+    public Expression differentiate() {
+        return expand().differentiate();
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * A closed range of reals [lo, hi] that encloses every value an expression takes over a range of x,
+ * for Expression.evaluateInterval. Every bound is rounded outward by one ulp, so the enclosure holds
+ * despite floating-point rounding; bounds may be infinite.
+ *
+ * An interval also records whether the expression is defined -- finite, with no division by zero, no
+ * log of a non-positive number, no power of a non-positive base that might fail -- at every x of the
+ * range; an interval with an infinite bound never is. When it is not, the bounds enclose the values at
+ * the x where it is, and the expression may have a pole or the edge of its domain in the range. Every operation is continuous where it is defined, so a
+ * defined interval also means the expression is continuous across the range. The empty interval is
+ * the result of an expression defined nowhere in the range.
+ */
+public final class Interval {
+    public static final Interval EMPTY = new Interval(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, false);
+    public static final Interval ENTIRE = new Interval(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, false);
+
+    private final double lo;
+    private final double hi;
+    private final boolean defined;
+
+    /**
+     * @param lo the lower bound
+     * @param hi the upper bound, no less than lo
+     */
+    public Interval(double lo, double hi) {
+        this(lo, hi, true);
+    }
+
+    Interval(double lo, double hi, boolean defined) {
+        this.lo = lo;
+        this.hi = hi;
+        this.defined = defined && lo > Double.NEGATIVE_INFINITY && hi < Double.POSITIVE_INFINITY;
+    }
+
+    public double getLo() {
+        return lo;
+    }
+
+    public double getHi() {
+        return hi;
+    }
+
+    /**
+     * @return whether the expression is defined at every x of the range
+     */
+    public boolean isDefined() {
+        return defined;
+    }
+
+    /**
+     * @return whether the expression is defined at no x of the range
+     */
+    public boolean isEmpty() {
+        return lo > hi;
+    }
+
+    public double width() {
+        return isEmpty() ? 0 : hi - lo;
+    }
+
+    public boolean contains(double value) {
+        return lo <= value && value <= hi;
+    }
+
+    @Override
+    public String toString() {
+        return isEmpty() ? "[]" : "[" + lo + ", " + hi + "]" + (defined ? "" : "?");
+    }
+
+    /**
+     * Returns the interval from the rounded-to-nearest bounds lo and hi, widened by an ulp each way.
+     * A NaN bound, from infinite bounds cancelling, means the values may be NaN, and are unbounded.
+     */
+    private static Interval outward(double lo, double hi, boolean defined) {
+        if(Double.isNaN(lo) || Double.isNaN(hi)){
+            return ENTIRE;
+        }
+        return new Interval(Math.nextDown(lo), Math.nextUp(hi), defined);
+    }
+
+    public Interval add(Interval other) {
+        if(isEmpty() || other.isEmpty()){
+            return EMPTY;
+        }
+        return outward(lo + other.lo, hi + other.hi, defined && other.defined);
+    }
+
+    public Interval subtract(Interval other) {
+        if(isEmpty() || other.isEmpty()){
+            return EMPTY;
+        }
+        return outward(lo - other.hi, hi - other.lo, defined && other.defined);
+    }
+
+    public Interval multiply(Interval other) {
+        if(isEmpty() || other.isEmpty()){
+            return EMPTY;
+        }
+        final double a = product(lo, other.lo), b = product(lo, other.hi), c = product(hi, other.lo), d = product(hi, other.hi);
+        return outward(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)), defined && other.defined);
+    }
+
+    /**
+     * A product of bounds, where 0 times an infinite bound is 0: the bound is only approached, never reached.
+     */
+    private static double product(double a, double b) {
+        return a == 0 || b == 0 ? 0 : a * b;
+    }
+
+    public Interval divide(Interval other) {
+        if(isEmpty() || other.isEmpty() || (other.lo == 0 && other.hi == 0)){
+            return EMPTY;
+        }
+        if(other.lo > 0 || other.hi < 0){
+            return multiply(new Interval(1 / other.hi, 1 / other.lo, other.defined)).widen();
+        }
+        // The divisor contains 0, where the quotient is undefined; enclose it over the rest.
+        if(other.lo == 0){
+            return multiply(new Interval(1 / other.hi, Double.POSITIVE_INFINITY, false)).widen();
+        }
+        if(other.hi == 0){
+            return multiply(new Interval(Double.NEGATIVE_INFINITY, 1 / other.lo, false)).widen();
+        }
+        return ENTIRE;
+    }
+
+    /**
+     * Widens this interval by another ulp each way, for results that were rounded twice.
+     */
+    private Interval widen() {
+        return isEmpty() ? this : outward(lo, hi, defined);
+    }
+
+    /**
+     * Encloses the logarithm to the base whose natural logarithm is logOfBase, which must be positive.
+     */
+    public Interval log(double logOfBase) {
+        if(isEmpty() || hi <= 0){
+            return EMPTY;
+        }
+        final double low = lo <= 0 ? Double.NEGATIVE_INFINITY : Math.nextDown(Math.log(lo));
+        final double high = Math.nextUp(Math.log(hi));
+        return outward(low / logOfBase, high / logOfBase, defined && lo > 0);
+    }
+
+    /**
+     * Encloses this interval raised to a whole-number power, computed as IntegerPowerExpression.power does.
+     */
+    public Interval power(int exponent) {
+        if(isEmpty()){
+            return EMPTY;
+        }
+        if(exponent == 0){
+            return new Interval(1, 1, defined);
+        }
+        if(exponent < 0){
+            return new Interval(1, 1).divide(power(-exponent));
+        }
+        // Each multiplication of power rounds, so allow an ulp per multiplication, and one more for
+        // Math.pow, which may round the other way.
+        final int roundings = 2 * (32 - Integer.numberOfLeadingZeros(exponent)) + 1;
+        final double a = IntegerPowerExpression.power(lo, exponent), b = IntegerPowerExpression.power(hi, exponent);
+        double low, high;
+        if((exponent & 1) == 1 || lo >= 0){
+            low = Math.min(a, b);
+            high = Math.max(a, b);
+        } else if(hi <= 0){
+            low = b;
+            high = a;
+        } else {
+            low = 0;
+            high = Math.max(a, b);
+        }
+        for(int i = 0; i < roundings; i++){
+            low = low == 0 ? 0 : Math.nextDown(low);
+            high = Math.nextUp(high);
+        }
+        return new Interval(low, high, defined);
+    }
+
+    /**
+     * Encloses Math.pow over every base in this interval and exponent in the other.
+     */
+    public Interval pow(Interval exponent) {
+        if(isEmpty() || exponent.isEmpty()){
+            return EMPTY;
+        }
+        final double p = exponent.lo;
+        if(p == exponent.hi && p == Math.rint(p) && Math.abs(p) <= 1 << 30){
+            // Negative bases are defined for whole-number exponents, and even powers are never negative.
+            final Interval power = power((int) p);
+            return new Interval(power.lo, power.hi, power.defined && exponent.defined);
+        }
+        if(lo > 0){
+            return corners(lo, hi, exponent, defined && exponent.defined);
+        }
+        if(p == exponent.hi){
+            // A fixed fractional power is defined for non-negative bases only, and for 0 only if it is positive.
+            return hi < 0 ? EMPTY : corners(0, hi, exponent, false);
+        }
+        // A varying exponent may be a whole number, for which negative bases are defined too.
+        return ENTIRE;
+    }
+
+    /**
+     * For bases in [lo, hi], lo >= 0: b^p = exp(p log b) is monotonic in b and in p, so it is extreme at the corners.
+     */
+    private static Interval corners(double lo, double hi, Interval exponent, boolean defined) {
+        final double a = Math.pow(lo, exponent.lo), b = Math.pow(lo, exponent.hi), c = Math.pow(hi, exponent.lo), d = Math.pow(hi, exponent.hi);
+        return outward(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)), defined);
+    }
+}
@@ -1,28 +1,83 @@
+import java.io.IOException;
+import java.util.Arrays;
+
 public class LiteralExpression implements Expression {
 
-    private String expressionString;
+    private final double value;
+    private int hash;
 
     public LiteralExpression(String str){
-        expressionString = str;
+        value = Double.valueOf(str);
+    }
+
+    LiteralExpression(double value){
+        this.value = value;
+    }
+
+    double getValue() {
+        return value;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof LiteralExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        LiteralExpression that = (LiteralExpression) other;
+        return Double.doubleToLongBits(value) == Double.doubleToLongBits(that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = Double.hashCode(value) * 31 + 8;
+        }
+        return hash;
     }
 
     @Override
     public Expression deepCopy() {
-        return new LiteralExpression(expressionString);
+        return new LiteralExpression(value);
     }
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
-        return indent + Double.valueOf(expressionString) + "\n";
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.indent(out, indentLevel);
+        out.append(String.valueOf(value)).append('\n');
     }
 
     @Override
     public double evaluate(double x) {
-        return Double.valueOf(expressionString);
+        return value;
+    }
+
+    @Override
+    public double evaluateAt(double[] environment) {
+        return value;
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        Arrays.fill(out, 0, length, value);
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        derivative[0] = 0;
+        return value;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return Double.isNaN(value) ? Interval.EMPTY : new Interval(value, value);
     }
 
     @Override
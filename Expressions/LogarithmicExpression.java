@@ -1,11 +1,39 @@
+import java.io.IOException;
+
 public class LogarithmicExpression implements Expression {
-    private Expression argument;
-    private final static Double BASE = Math.E;
+    private final Expression argument;
+    final static Double BASE = Math.E;
+    private final static double LOG_OF_BASE = Math.log(BASE);
+    private int hash;
 
     public LogarithmicExpression(Expression argument){
         this.argument = argument;
     }
 
+    Expression getArgument() {
+        return argument;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof LogarithmicExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        LogarithmicExpression that = (LogarithmicExpression) other;
+        return argument.equals(that.argument);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = argument.hashCode() * 31 + 6;
+        }
+        return hash;
+    }
+
     @Override
     public Expression deepCopy() {
         return new LogarithmicExpression(argument.deepCopy()); 
@@ -13,16 +41,42 @@ public class LogarithmicExpression implements Expression {
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
-        return indent + "log\n" + argument.convertToString(indentLevel + 1);
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
     }
 
     @Override
     public double evaluate(double x) {
-        return Math.log(argument.evaluate(x)) /  Math.log(BASE); 
+        return Math.log(argument.evaluate(x)) / LOG_OF_BASE; 
+    }
+
+    @Override
+    public double evaluateAt(double[] environment) {
+        return Math.log(argument.evaluateAt(environment)) / LOG_OF_BASE;
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        argument.evaluateColumn(xs, out, length, scratch);
+        for(int i = 0; i < length; i++){
+            out[i] = Math.log(out[i]) / LOG_OF_BASE;
+        }
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double value = argument.evaluateWithDerivative(x, derivative);
+        derivative[0] = derivative[0] / (value * LOG_OF_BASE);
+        return Math.log(value) / LOG_OF_BASE;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return argument.evaluateInterval(lo, hi).log(LOG_OF_BASE);
     }
 
     @Override
@@ -1,7 +1,10 @@
+import java.io.IOException;
+
 public class MultiplicativeExpression implements Expression {
-    private Expression leftOfSign;
-    private Expression rightOfSign;
-    private boolean isDivision;
+    private final Expression leftOfSign;
+    private final Expression rightOfSign;
+    private final boolean isDivision;
+    private int hash;
 
     public MultiplicativeExpression(Expression left, Expression right, boolean division){
         leftOfSign = left;
@@ -15,6 +18,38 @@ public class MultiplicativeExpression implements Expression {
         isDivision = false;
     }
 
+    Expression getLeft() {
+        return leftOfSign;
+    }
+
+    Expression getRight() {
+        return rightOfSign;
+    }
+
+    boolean isDivision() {
+        return isDivision;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof MultiplicativeExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        MultiplicativeExpression that = (MultiplicativeExpression) other;
+        return isDivision == that.isDivision && leftOfSign.equals(that.leftOfSign) && rightOfSign.equals(that.rightOfSign);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = (31 * leftOfSign.hashCode() + rightOfSign.hashCode()) * 31 + (isDivision ? 4 : 3);
+        }
+        return hash;
+    }
+
     @Override
     public Expression deepCopy() {
         return new MultiplicativeExpression(leftOfSign.deepCopy(), rightOfSign.deepCopy(), isDivision); 
@@ -22,12 +57,12 @@ public class MultiplicativeExpression implements Expression {
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
+        return ExpressionWriter.toString(this, indentLevel);
+    }
 
-        return indent + (isDivision ? "/" : "*") + "\n" + leftOfSign.convertToString(indentLevel + 1) + rightOfSign.convertToString(indentLevel + 1);
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
     }
 
     @Override
@@ -39,6 +74,51 @@ public class MultiplicativeExpression implements Expression {
         return leftOfSign.evaluate(x) * rightOfSign.evaluate(x); 
     }
 
+    @Override
+    public double evaluateAt(double[] environment) {
+        if(isDivision){
+            return leftOfSign.evaluateAt(environment) / rightOfSign.evaluateAt(environment);
+        }
+        return leftOfSign.evaluateAt(environment) * rightOfSign.evaluateAt(environment);
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        leftOfSign.evaluateColumn(xs, out, length, scratch);
+        final double[] right = scratch.push();
+        rightOfSign.evaluateColumn(xs, right, length, scratch);
+        if(isDivision){
+            for(int i = 0; i < length; i++){
+                out[i] /= right[i];
+            }
+        } else {
+            for(int i = 0; i < length; i++){
+                out[i] *= right[i];
+            }
+        }
+        scratch.pop();
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        double left = leftOfSign.evaluateWithDerivative(x, derivative);
+        double leftDerivative = derivative[0];
+        double right = rightOfSign.evaluateWithDerivative(x, derivative);
+        if(isDivision){
+            derivative[0] = (leftDerivative * right - left * derivative[0]) / (right * right);
+            return left / right;
+        }
+        derivative[0] = leftDerivative * right + left * derivative[0];
+        return left * right;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        Interval left = leftOfSign.evaluateInterval(lo, hi);
+        Interval right = rightOfSign.evaluateInterval(lo, hi);
+        return isDivision ? left.divide(right) : left.multiply(right);
+    }
+
     @Override
     public Expression differentiate() {
         Expression left = new MultiplicativeExpression(leftOfSign.deepCopy().differentiate(), rightOfSign);
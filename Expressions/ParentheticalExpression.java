@@ -1,10 +1,37 @@
+import java.io.IOException;
+
 public class ParentheticalExpression implements Expression {
-    private Expression expression;
+    private final Expression expression;
+    private int hash;
 
     public ParentheticalExpression(Expression expression){
         this.expression = expression;
     }
 
+    Expression getExpression() {
+        return expression;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof ParentheticalExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        ParentheticalExpression that = (ParentheticalExpression) other;
+        return expression.equals(that.expression);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = expression.hashCode() * 31 + 7;
+        }
+        return hash;
+    }
+
     @Override
     public Expression deepCopy() {
         return new ParentheticalExpression(expression.deepCopy()); 
@@ -12,14 +39,12 @@ public class ParentheticalExpression implements Expression {
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
-
-        
+        return ExpressionWriter.toString(this, indentLevel);
+    }
 
-        return indent + "()\n" + expression.convertToString(indentLevel + 1);
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.write(out, this, indentLevel);
     }
 
     @Override
@@ -27,6 +52,26 @@ public class ParentheticalExpression implements Expression {
         return expression.evaluate(x);
     }
 
+    @Override
+    public double evaluateAt(double[] environment) {
+        return expression.evaluateAt(environment);
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        expression.evaluateColumn(xs, out, length, scratch);
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        return expression.evaluateWithDerivative(x, derivative);
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        return expression.evaluateInterval(lo, hi);
+    }
+
     @Override
     public Expression differentiate() {
         return expression.differentiate();
@@ -1,32 +1,117 @@
+import java.io.IOException;
+
+/**
+ * A variable, read from its slot of the environment. Parsers resolve each name to its slot; x, the
+ * variable of the single-variable methods (evaluate(x), differentiate and the rest), is slot 0.
+ * Those methods cannot give a value to any other variable, and throw UnsupportedOperationException
+ * for one, except differentiate, which treats it as a constant.
+ */
 public class VariableExpression implements Expression {
 
-    private String expressionString;
+    private final String expressionString;
+    private final int slot;
+    private int hash;
 
     public VariableExpression(String str){
+        this(str, 0);
+    }
+
+    public VariableExpression(String str, int slot){
+        if(slot < 0){
+            throw new IllegalArgumentException("Negative slot " + slot + " for " + str);
+        }
         expressionString = str;
+        this.slot = slot;
+    }
+
+    String getName() {
+        return expressionString;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof VariableExpression) || other.hashCode() != hashCode()){
+            return false;
+        }
+        VariableExpression that = (VariableExpression) other;
+        return slot == that.slot && expressionString.equals(that.expressionString);
+    }
+
+    @Override
+    public int hashCode() {
+        if(hash == 0){
+            hash = (expressionString.hashCode() * 31 + slot) * 31 + 9;
+        }
+        return hash;
     }
 
     @Override
     public Expression deepCopy() {
-        return new VariableExpression("x");
+        return new VariableExpression(expressionString, slot);
     }
 
     @Override
     public String convertToString(int indentLevel) {
-        String indent = "";
-        for(int i = 0; i < indentLevel; i++){
-            indent += "\t";
-        }
-        return indent + expressionString + "\n";
+        return ExpressionWriter.toString(this, indentLevel);
+    }
+
+    @Override
+    public void appendTo(Appendable out, int indentLevel) throws IOException {
+        ExpressionWriter.indent(out, indentLevel);
+        out.append(expressionString).append('\n');
     }
 
     @Override
     public double evaluate(double x) {
-        return x; 
+        if(slot != 0){
+            throw unbound();
+        }
+        return x;
+    }
+
+    @Override
+    public double evaluateAt(double[] environment) {
+        return environment[slot];
+    }
+
+    @Override
+    public void evaluateColumn(double[] xs, double[] out, int length, ColumnScratch scratch) {
+        if(slot != 0){
+            throw unbound();
+        }
+        System.arraycopy(xs, 0, out, 0, length);
+    }
+
+    @Override
+    public double evaluateWithDerivative(double x, double[] derivative) {
+        if(slot != 0){
+            throw unbound();
+        }
+        derivative[0] = 1;
+        return x;
+    }
+
+    @Override
+    public Interval evaluateInterval(double lo, double hi) {
+        if(slot != 0){
+            throw unbound();
+        }
+        return new Interval(lo, hi);
     }
 
     @Override
     public Expression differentiate() {
-        return new LiteralExpression("1");
-    }    
-}
\ No newline at end of file
+        return new LiteralExpression(slot == 0 ? "1" : "0");
+    }
+
+    private UnsupportedOperationException unbound() {
+        return new UnsupportedOperationException("Variable " + expressionString + " has no value when only x is given");
+    }
+}
@@ -1,4 +1,5 @@
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.scene.chart.*;
 import javafx.scene.control.Label;
 import javafx.event.EventHandler;
@@ -14,6 +15,11 @@ import javafx.scene.input.ScrollEvent;
 
 import javafx.stage.Stage;
 
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.DoubleUnaryOperator;
+
 public class GraphingCalculator extends Application {
 	public static void main (String[] args) {
 		launch(args);
@@ -24,7 +30,18 @@ public class GraphingCalculator extends Application {
 	protected static final double MIN_Y = -10, MAX_Y = +10;
 	protected static final double GRID_INTERVAL = 5;
 	protected static final String EXAMPLE_EXPRESSION = "2*x+5*x*x";
-	protected final ExpressionParser expressionParser = new SimpleExpressionParser();
+	protected final ExpressionParser expressionParser = new CachingExpressionParser(new IncrementalExpressionParser());
+	protected final ExpressionSimplifier expressionSimplifier = new ExpressionSimplifier();
+	protected static final String[] CURVE_COLORS = { "#f3622d", "#fba71b", "#57b757", "#41a9c9" };
+	protected static final int TILE_CACHE_CAPACITY = 512;
+	/** How many recently graphed expressions to keep optimized, compiled and analyzed. */
+	protected static final int PREPARED_CAPACITY = 16;
+	protected static final String MARKER_COLOR = "#606060";
+	/** Half the width of the cross marking a root or an extremum, in pixels. */
+	protected static final double MARKER_SIZE = 4;
+	protected static final String AREA_COLOR = "rgba(65, 169, 201, 0.4)";
+	/** The distance between the lines that shade the area under the curve, in pixels. */
+	protected static final int AREA_HATCHING = 4;
 
 	private boolean HAS_STARTED = false;
 	private double START_DIFF_X = 0;
@@ -33,20 +50,304 @@ public class GraphingCalculator extends Application {
 	private int GRAPH_CENTER_Y = 213;
 	private int GRAPH_WIDTH = 445;
 	private int GRAPH_HEIGHT = 345;
-	private double SCALING_FACTOR = 0.8;
+	protected double SCALING_FACTOR = 0.8;
 	private int MINIMUM_SCROLL_DELTA = 10; 
+	private final SampleTileCache tileCache = new SampleTileCache(TILE_CACHE_CAPACITY);
+	private final LinkedHashMap<List<Object>, Curves> prepared = new LinkedHashMap<List<Object>, Curves>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry (Map.Entry<List<Object>, Curves> eldest) {
+			return size() > PREPARED_CAPACITY;
+		}
+	};
+	private final RenderPipeline renderPipeline = new RenderPipeline(Platform::runLater);
+	private List<Object> curveKeys = List.of();
+	private List<DoubleUnaryOperator> curves = List.of();
+	private List<Expression> curveExpressions = List.of();
+	private ExpressionAnalyzer curveAnalyzer = null;
+	private TextField pendingField = null;
+	private String pendingText = null;
+	private boolean pendingDerivative = false;
+	/** Whether to shade the area under the first curve and integrate it across the view; read in the background. */
+	protected volatile boolean shadingArea = false;
+	/** Shows the integral of the first curve across the view, when the area is shaded. */
+	protected final Label areaLabel = new Label();
 
-	
-	private void graph (LineChart<Number, Number> chart, Expression expression, boolean clear) {
-		final XYChart.Series series = new XYChart.Series();
-		for (double x = MIN_X; x <= MAX_X; x += DELTA_X) {
-			final double y = expression.evaluate(x);
-			series.getData().add(new XYChart.Data(x, y));
+	/**
+	 * The curves of an expression, ready to sample: their cache keys, the functions and optimized
+	 * expressions they compute, and the analyzer of the first.
+	 */
+	private static final class Curves {
+		final List<Object> keys;
+		final List<DoubleUnaryOperator> functions;
+		final List<Expression> expressions;
+		final ExpressionAnalyzer analyzer;
+
+		Curves (List<Object> keys, List<DoubleUnaryOperator> functions, List<Expression> expressions, ExpressionAnalyzer analyzer) {
+			this.keys = keys;
+			this.functions = functions;
+			this.expressions = expressions;
+			this.analyzer = analyzer;
 		}
-		if (clear) {
-			chart.getData().clear();
+	}
+
+	/**
+	 * The curves being graphed, with the keys they are cached under, the expressions they compute (null
+	 * where there is none), and their samples across one view; and the analyzer of the first curve, with
+	 * crosses marking its roots and extrema in the view; and, when the area is shaded, the lines shading
+	 * it and the integral of the first curve across the view, or null.
+	 */
+	protected static class Plot {
+		final List<Object> keys;
+		final List<DoubleUnaryOperator> curves;
+		final List<Expression> expressions;
+		final List<Samples> samples;
+		final ExpressionAnalyzer analyzer;
+		final Samples markers;
+		final Samples area;
+		final ExpressionIntegrator.Result integral;
+
+		Plot (List<Object> keys, List<DoubleUnaryOperator> curves, List<Expression> expressions, List<Samples> samples, ExpressionAnalyzer analyzer, Samples markers, Samples area, ExpressionIntegrator.Result integral) {
+			this.keys = keys;
+			this.curves = curves;
+			this.expressions = expressions;
+			this.samples = samples;
+			this.analyzer = analyzer;
+			this.markers = markers;
+			this.area = area;
+			this.integral = integral;
+		}
+	}
+
+	/**
+	 * Parses, differentiates and samples the expression in the background, then replaces the curves
+	 * being graphed with it.
+	 * @param text the expression to graph
+	 * @param withDerivative whether to graph its derivative too
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param minY the bottom of the view
+	 * @param maxY the top of the view
+	 * @param pixelWidth how many pixels wide the view is drawn
+	 * @param pixelHeight how many pixels tall the view is drawn
+	 * @param onPlot draws the finished plot; runs on the JavaFX Application Thread
+	 */
+	protected void graph (TextField textField, String text, boolean withDerivative, double minX, double maxX, double minY, double maxY, int pixelWidth, int pixelHeight, Consumer<Plot> onPlot) {
+		pendingField = textField;
+		pendingText = text;
+		pendingDerivative = withDerivative;
+		renderPipeline.submit(cancelled -> {
+			final Curves curves = prepare(expressionParser.parse(text), withDerivative);
+			return sample(curves.keys, curves.functions, curves.expressions, curves.analyzer, minX, maxX, minY, maxY, pixelWidth, pixelHeight, cancelled);
+		}, plot -> {
+			pendingText = null;
+			show(plot, onPlot);
+		}, e -> {
+			pendingText = null;
+			if (e instanceof ExpressionParseException || e instanceof UnsupportedOperationException) {
+				textField.setStyle("-fx-text-fill: red");
+			} else {
+				e.printStackTrace();
+			}
+		});
+	}
+
+	/**
+	 * Optimizes and compiles an expression and its derivative, draws the derivative too if asked to,
+	 * and builds the analyzer of its roots and extrema from the same pieces; runs in the background.
+	 *
+	 * Since graph runs on every keystroke, this is remembered for the last PREPARED_CAPACITY
+	 * expressions, so an edit that only changes spacing, or is undone, skips it. Any other edit still
+	 * optimizes, compiles and differentiates the whole tree again, once each; only parsing and sampling
+	 * reuse the parts of it the edit left alone.
+	 */
+	private Curves prepare (Expression expression, boolean withDerivative) {
+		final List<Object> key = List.of(expression, withDerivative);
+		Curves curves;
+		synchronized (prepared) {
+			curves = prepared.get(key);
+		}
+		if (curves == null) {
+			final Expression optimized = ExpressionOptimizer.optimize(expression);
+			final DoubleUnaryOperator function = ExpressionCompiler.compile(optimized);
+			Expression derivative;
+			DoubleUnaryOperator slope;
+			Object derivativeKey;
+			try {
+				// Interned, the derivative shares its subterms with the expression instead of copying them.
+				derivative = ExpressionOptimizer.optimize(expressionSimplifier.simplify(new ExpressionInterner().differentiate(expression)));
+				slope = ExpressionCompiler.compile(derivative);
+				derivativeKey = derivative;
+			} catch (UnsupportedOperationException e) {
+				// x^x and the like have no symbolic derivative here, but forward-mode differentiation handles them.
+				derivative = null;
+				slope = x -> {
+					final double[] d = new double[1];
+					optimized.evaluateWithDerivative(x, d);
+					return d[0];
+				};
+				derivativeKey = List.of(optimized, "'");
+			}
+			// Keyed by the expression rather than the text, so spacing does not matter, and an edit that is undone finds its tiles again.
+			final List<Object> keys = new ArrayList<>(List.of(optimized));
+			final List<DoubleUnaryOperator> functions = new ArrayList<>(List.of(function));
+			final List<Expression> expressions = new ArrayList<>(List.of(optimized));
+			if (withDerivative) {
+				keys.add(derivativeKey);
+				functions.add(slope);
+				expressions.add(derivative);
+			}
+			curves = new Curves(keys, functions, expressions, new ExpressionAnalyzer(optimized, function, derivative, slope));
+			synchronized (prepared) {
+				prepared.put(key, curves);
+			}
+		}
+		return curves;
+	}
+
+	/**
+	 * Resamples every curve across the visible x range, at screen resolution, in the background, and draws it.
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param minY the bottom of the view
+	 * @param maxY the top of the view
+	 * @param pixelWidth how many pixels wide the view is drawn
+	 * @param pixelHeight how many pixels tall the view is drawn
+	 * @param onPlot draws the finished plot; runs on the JavaFX Application Thread
+	 */
+	protected void redraw (double minX, double maxX, double minY, double maxY, int pixelWidth, int pixelHeight, Consumer<Plot> onPlot) {
+		if (pendingText != null) {
+			// Redrawing would cancel the graph still being computed, so compute it for the new view instead.
+			graph(pendingField, pendingText, pendingDerivative, minX, maxX, minY, maxY, pixelWidth, pixelHeight, onPlot);
+			return;
+		}
+		final List<Object> keys = curveKeys;
+		final List<DoubleUnaryOperator> functions = curves;
+		final List<Expression> expressions = curveExpressions;
+		final ExpressionAnalyzer analyzer = curveAnalyzer;
+		renderPipeline.submit(cancelled -> sample(keys, functions, expressions, analyzer, minX, maxX, minY, maxY, pixelWidth, pixelHeight, cancelled), plot -> show(plot, onPlot), Exception::printStackTrace);
+	}
+
+	/**
+	 * Samples every curve across [minX, maxX], skipping what its expression proves to lie outside
+	 * [minY, maxY], and decimates it to what the view can show, then marks the roots and extrema of the
+	 * first curve, and shades and integrates the area under it if asked to; runs in the background.
+	 * @return the samples, or null if the job was cancelled part way
+	 */
+	private Plot sample (List<Object> keys, List<DoubleUnaryOperator> functions, List<Expression> expressions, ExpressionAnalyzer analyzer, double minX, double maxX, double minY, double maxY, int pixelWidth, int pixelHeight, BooleanSupplier cancelled) {
+		final List<Samples> samples = new ArrayList<>();
+		for (int i = 0; i < functions.size(); i++) {
+			if (cancelled.getAsBoolean()) {
+				return null;
+			}
+			final Samples sampled = tileCache.sample(keys.get(i), functions.get(i), expressions.get(i), minX, maxX, minY, maxY, pixelWidth, pixelHeight);
+			samples.add(Decimator.decimate(sampled, minX, maxX, pixelWidth));
+		}
+		final Samples markers = new Samples();
+		if (analyzer != null && !cancelled.getAsBoolean()) {
+			// Crosses MARKER_SIZE pixels across.
+			final double dx = MARKER_SIZE * (maxX - minX) / pixelWidth, dy = MARKER_SIZE * (maxY - minY) / pixelHeight;
+			final List<ExpressionAnalyzer.Point> points = analyzer.analyze(minX, maxX, cancelled);
+			if (points == null) {
+				return null;
+			}
+			for (ExpressionAnalyzer.Point point : points) {
+				markers.add(point.x - dx, point.y);
+				markers.add(point.x + dx, point.y);
+				markers.addBreak();
+				markers.add(point.x, point.y - dy);
+				markers.add(point.x, point.y + dy);
+				markers.addBreak();
+			}
+		}
+		final Samples area = new Samples();
+		ExpressionIntegrator.Result integral = null;
+		if (shadingArea && !functions.isEmpty() && expressions.get(0) != null && !cancelled.getAsBoolean()) {
+			integral = new ExpressionIntegrator(expressions.get(0)).integrate(minX, maxX);
+			// Vertical lines from the x axis to the curve, each clamped to the view.
+			final int lines = Math.max(2, pixelWidth / AREA_HATCHING);
+			for (int k = 0; k < lines; k++) {
+				final double x = Sampler.x(minX, maxX, k, lines), y = functions.get(0).applyAsDouble(x);
+				if (Double.isFinite(y)) {
+					area.add(x, Math.max(minY, Math.min(maxY, 0)));
+					area.add(x, Math.max(minY, Math.min(maxY, y)));
+					area.addBreak();
+				}
+			}
+		}
+		return new Plot(keys, functions, expressions, samples, analyzer, markers, area, integral);
+	}
+
+	/**
+	 * Describes the integral of a plot's first curve across its view.
+	 * @return the description, or "" if the area is not shaded
+	 */
+	protected static String describeArea (Plot plot) {
+		if (plot.integral == null) {
+			return "";
+		}
+		return plot.integral.converged ? String.format("Area: %.10g", plot.integral.value) : "Area: does not converge";
+	}
+
+	/**
+	 * Makes a finished plot's curves the ones being graphed, and draws it; runs on the JavaFX Application Thread.
+	 */
+	private void show (Plot plot, Consumer<Plot> onPlot) {
+		if (plot == null) {
+			return;
+		}
+		curveKeys = plot.keys;
+		curves = plot.curves;
+		curveExpressions = plot.expressions;
+		curveAnalyzer = plot.analyzer;
+		areaLabel.setText(describeArea(plot));
+		onPlot.accept(plot);
+	}
+
+	/**
+	 * Replaces the curves on the chart with a finished plot.
+	 */
+	private void draw (LineChart<Number, Number> chart, Plot plot) {
+		chart.getData().clear();
+		plot(chart, plot.area, AREA_COLOR);
+		for (int i = 0; i < plot.samples.size(); i++) {
+			plot(chart, plot.samples.get(i), CURVE_COLORS[i % CURVE_COLORS.length]);
+		}
+		plot(chart, plot.markers, MARKER_COLOR);
+	}
+
+	/**
+	 * Resamples the curves across the chart's current x range and redraws them.
+	 */
+	private void redraw (LineChart<Number, Number> chart) {
+		final NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+		final NumberAxis yAxis = (NumberAxis) chart.getYAxis();
+		redraw(xAxis.getLowerBound(), xAxis.getUpperBound(), yAxis.getLowerBound(), yAxis.getUpperBound(), GRAPH_WIDTH, GRAPH_HEIGHT, plot -> draw(chart, plot));
+	}
+
+	private void plot (LineChart<Number, Number> chart, Samples samples, String color) {
+		// Each continuous run of the curve is its own series, so that nothing is drawn across a break.
+		XYChart.Series series = new XYChart.Series();
+		for (int i = 0; i <= samples.size(); i++) {
+			if (i == samples.size() || samples.isBreak(i)) {
+				if (!series.getData().isEmpty()) {
+					chart.getData().add(series);
+					series.getNode().setStyle("-fx-stroke: " + color + ";");
+					series = new XYChart.Series();
+				}
+			} else {
+				series.getData().add(new XYChart.Data(samples.getX(i), samples.getY(i)));
+			}
+		}
+	}
+
+	/**
+	 * Prints the metrics gathered while the calculator ran, if they were enabled with -Dexpressions.metrics=true.
+	 */
+	@Override
+	public void stop () throws Exception {
+		if (Metrics.isEnabled()) {
+			Metrics.dump(System.err);
 		}
-		chart.getData().addAll(series);
 	}
 
 	@Override
@@ -70,19 +371,9 @@ public class GraphingCalculator extends Application {
 		graphButton.setOnMouseClicked(new EventHandler<MouseEvent>() {
 			//When the button is clicked:
 			public void handle (MouseEvent e) {
-				try {
-					final Expression expression = expressionParser.parse(textField.getText());
-					graph(chart, expression, true);
-					System.out.println(expression.convertToString(0));
-					if (diffBox.isSelected()) {
-						final Expression derivative = expression.differentiate();
-						graph(chart, derivative, false);
-					}
-				} catch (ExpressionParseException epe) {
-					textField.setStyle("-fx-text-fill: red");
-				} catch (UnsupportedOperationException epe) {
-					textField.setStyle("-fx-text-fill: red");
-				}
+				final NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+				final NumberAxis yAxis = (NumberAxis) chart.getYAxis();
+				graph(textField, textField.getText(), diffBox.isSelected(), xAxis.getLowerBound(), xAxis.getUpperBound(), yAxis.getLowerBound(), yAxis.getUpperBound(), GRAPH_WIDTH, GRAPH_HEIGHT, plot -> draw(chart, plot));
 			}
 		});
 
@@ -120,7 +411,8 @@ public class GraphingCalculator extends Application {
 
 				yAxis.setLowerBound(minY);
 				yAxis.setUpperBound(maxY);
-				
+
+				redraw(chart);
 			}
 				
 		});
@@ -155,13 +447,29 @@ public class GraphingCalculator extends Application {
 					yAxis.setLowerBound(yAxis.getLowerBound() / SCALING_FACTOR);
 					yAxis.setUpperBound(yAxis.getUpperBound() / SCALING_FACTOR);
 				}
+
+				redraw(chart);
 			}
 		});
 		
 		queryPane.getChildren().add(graphButton);
 		queryPane.getChildren().add(diffBox);
 
+		final CheckBox areaBox = new CheckBox("Shade Area");
+		areaBox.setOnAction(e -> {
+			shadingArea = areaBox.isSelected();
+			redraw(chart);
+		});
+		queryPane.getChildren().add(areaBox);
+		queryPane.getChildren().add(areaLabel);
+
 		textField.setOnKeyPressed(e -> textField.setStyle("-fx-text-fill: black"));
+		//Graphs as the expression is typed; the parser and the tile cache only redo what the edit changed.
+		textField.textProperty().addListener(o -> {
+			final NumberAxis xAxis = (NumberAxis) chart.getXAxis();
+			final NumberAxis yAxis = (NumberAxis) chart.getYAxis();
+			graph(textField, textField.getText(), diffBox.isSelected(), xAxis.getLowerBound(), xAxis.getUpperBound(), yAxis.getLowerBound(), yAxis.getUpperBound(), GRAPH_WIDTH, GRAPH_HEIGHT, plot -> draw(chart, plot));
+		});
 		
 		final BorderPane root = new BorderPane();
 		root.setTop(queryPane);
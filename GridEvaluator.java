@@ -0,0 +1,74 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates an expression of two or more variables over a rectangular grid, for heatmaps and contour
+ * plots. Two slots of the environment are swept: the x slot across the columns of the grid and the y
+ * slot down its rows; every other slot keeps the value it has in the environment given. Values are
+ * stored row-major in a flat double[], so the value at column c of row r is at r*columns + c.
+ *
+ * Rows are evaluated in parallel, each with its own copy of the environment, so the grid scales with
+ * the cores of the machine. The i-th column and row are placed exactly as Sampler.x places the i-th
+ * point of a range, so the first and last ones fall exactly on the edges of the grid.
+ */
+public class GridEvaluator {
+	private final Expression expression;
+	private final int xSlot, ySlot;
+
+	/**
+	 * @param expression the expression to evaluate; it is optimized once, here
+	 * @param xSlot the slot swept across the columns
+	 * @param ySlot the slot swept down the rows
+	 * @throws IllegalArgumentException if the slots are negative or equal
+	 */
+	public GridEvaluator (Expression expression, int xSlot, int ySlot) {
+		if (xSlot < 0 || ySlot < 0 || xSlot == ySlot) {
+			throw new IllegalArgumentException("Invalid slots " + xSlot + " and " + ySlot);
+		}
+		this.expression = ExpressionOptimizer.optimize(expression);
+		this.xSlot = xSlot;
+		this.ySlot = ySlot;
+	}
+
+	/**
+	 * Evaluates the expression over a grid, allocating the result.
+	 * @see #evaluate(double[], double, double, int, double, double, int, double[])
+	 */
+	public double[] evaluate (double[] environment, double minX, double maxX, int columns, double minY, double maxY, int rows) {
+		final double[] out = new double[Math.multiplyExact(columns, rows)];
+		evaluate(environment, minX, maxX, columns, minY, maxY, rows, out);
+		return out;
+	}
+
+	/**
+	 * Evaluates the expression over a grid.
+	 * @param environment the values of the slots that are not swept; at least as long as the highest
+	 * slot the expression reads, and not modified
+	 * @param minX the value of the x slot in the first column
+	 * @param maxX its value in the last column
+	 * @param columns how many columns there are
+	 * @param minY the value of the y slot in the first row
+	 * @param maxY its value in the last row
+	 * @param rows how many rows there are
+	 * @param out where to store the values, row-major; at least columns*rows long
+	 */
+	public void evaluate (double[] environment, double minX, double maxX, int columns, double minY, double maxY, int rows, double[] out) {
+		if (columns < 1 || rows < 1 || out.length < (long) columns * rows) {
+			throw new IllegalArgumentException("Cannot store a grid of " + columns + " by " + rows + " in " + out.length + " values");
+		}
+		final int length = Math.max(environment.length, Math.max(xSlot, ySlot) + 1);
+		final double[] xs = new double[columns];
+		for (int c = 0; c < columns; c++) {
+			xs[c] = Sampler.x(minX, maxX, c, columns);
+		}
+		IntStream.range(0, rows).parallel().forEach(r -> {
+			final double[] row = Arrays.copyOf(environment, length);
+			row[ySlot] = Sampler.x(minY, maxY, r, rows);
+			final int offset = r * columns;
+			for (int c = 0; c < columns; c++) {
+				row[xSlot] = xs[c];
+				out[offset + c] = expression.evaluateAt(row);
+			}
+		});
+	}
+}
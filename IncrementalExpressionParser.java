@@ -0,0 +1,158 @@
+import java.util.*;
+
+/**
+ * A RecursiveDescentExpressionParser for text that is edited a little at a time, as it is typed. It
+ * remembers the subtrees of its previous parse -- every additive term and every parenthesized group,
+ * by the span of the input it was parsed from -- and when the next input differs from the previous one
+ * only in a single edited span, as it does after a keystroke, a paste or an undo, the terms and groups
+ * that lie wholly before or after that span are taken over instead of being parsed again. Only what
+ * overlaps the edit is parsed anew.
+ *
+ * The trees are the same, node for node, as a fresh parse would build, and so are the exceptions for
+ * inputs that cannot be parsed; the difference is that unchanged subtrees are the very same objects as
+ * before. Everything keyed on them -- ExpressionInterner, ExpressionDag, SubtreeColumnCache -- can
+ * therefore recognize them with a reference comparison, and keeps whatever it computed for them.
+ *
+ * Inputs are tokenized in full each time, which is linear and cheap; what is saved is the parse and the
+ * literals and nodes it would allocate. A term is taken over only if the character after it is
+ * unchanged too, since that character decides where the term ends. Parses that fail still leave their
+ * finished subtrees behind, so typing through an invalid input, as "x^2+" is on the way to "x^2+1",
+ * loses nothing.
+ *
+ * An instance keeps the state of one text field, and its parse method is synchronized.
+ */
+public class IncrementalExpressionParser extends RecursiveDescentExpressionParser {
+	private static final long TERM = 1L << 32, GROUP = 2L << 32;
+
+	/**
+	 * A subtree of the previous parse and the span it was parsed from.
+	 */
+	private static final class Span {
+		final Expression expression;
+		final int end;
+		final int tokenCount;
+
+		Span (Expression expression, int end, int tokenCount) {
+			this.expression = expression;
+			this.end = end;
+			this.tokenCount = tokenCount;
+		}
+	}
+
+	private String previousText = "";
+	/** The subtrees that can be taken over, by production and start, in the coordinates of the current text. */
+	private Map<Long, Span> spans = new HashMap<>();
+	private long reused;
+
+	public IncrementalExpressionParser () {
+		super();
+	}
+
+	/**
+	 * @param variables the names of the variables, in order of slot, the first of them x
+	 */
+	public IncrementalExpressionParser (String... variables) {
+		super(variables);
+	}
+
+	@Override
+	public synchronized Expression parse (String str) throws ExpressionParseException {
+		return super.parse(str);
+	}
+
+	@Override
+	protected Tokens tokenize (String str) throws ExpressionParseException {
+		// A text that cannot be tokenized leaves the spans as they are, so the one before it is still the one edited from.
+		final Tokens tokens = super.tokenize(str);
+		final String text = tokens.text;
+		final int shorter = Math.min(text.length(), previousText.length());
+		int prefix = 0;
+		while (prefix < shorter && text.charAt(prefix) == previousText.charAt(prefix)) {
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < shorter - prefix && text.charAt(text.length() - 1 - suffix) == previousText.charAt(previousText.length() - 1 - suffix)) {
+			suffix++;
+		}
+		final boolean unchanged = prefix == text.length() && prefix == previousText.length();
+		final int delta = text.length() - previousText.length();
+		final int suffixStart = previousText.length() - suffix;
+
+		// Keep the spans that lie wholly before the edit -- a term together with the character that
+		// ended it -- as they are, and move those wholly after it by the change in length.
+		final Map<Long, Span> kept = new HashMap<>();
+		for (Map.Entry<Long, Span> entry : spans.entrySet()) {
+			final long production = entry.getKey() & ~0xffffffffL;
+			final int start = (int) (long) entry.getKey();
+			final Span span = entry.getValue();
+			if (unchanged || span.end + (production == TERM ? 1 : 0) <= prefix) {
+				kept.put(entry.getKey(), span);
+			} else if (start >= suffixStart) {
+				kept.put(production | (start + delta), new Span(span.expression, span.end + delta, span.tokenCount));
+			}
+		}
+		spans = kept;
+		previousText = text;
+		return tokens;
+	}
+
+	@Override
+	protected Expression parseMultiplicativeExpression (Tokens tokens) throws ExpressionParseException {
+		final Expression known = reuse(TERM, tokens);
+		if (known != null) {
+			return known;
+		}
+		final int first = tokens.position;
+		final Expression expression = super.parseMultiplicativeExpression(tokens);
+		remember(TERM, tokens, first, expression);
+		return expression;
+	}
+
+	@Override
+	protected Expression parseParentheticalExpression (Tokens tokens) throws ExpressionParseException {
+		if (tokens.peek() != LEFT) {
+			return super.parseParentheticalExpression(tokens);
+		}
+		final Expression known = reuse(GROUP, tokens);
+		if (known != null) {
+			return known;
+		}
+		final int first = tokens.position;
+		final Expression expression = super.parseParentheticalExpression(tokens);
+		remember(GROUP, tokens, first, expression);
+		return expression;
+	}
+
+	/**
+	 * Records the subtree just parsed from the tokens [first, tokens.position).
+	 */
+	private void remember (long production, Tokens tokens, int first, Expression expression) {
+		spans.put(production | tokens.starts[first], new Span(expression, tokens.starts[tokens.position], tokens.position - first));
+	}
+
+	/**
+	 * Takes over the remembered subtree that the current token starts, if the tokens it spans are where
+	 * they were, and moves past them.
+	 * @return the subtree, or null if it has to be parsed
+	 */
+	private Expression reuse (long production, Tokens tokens) {
+		final Span span = spans.get(production | tokens.starts[tokens.position]);
+		if (span == null) {
+			return null;
+		}
+		final int next = tokens.position + span.tokenCount;
+		if (next >= tokens.count || tokens.starts[next] != span.end) {
+			return null;
+		}
+		tokens.position = next;
+		reused++;
+		return span.expression;
+	}
+
+	/**
+	 * @return how many subtrees have been taken over from previous parses
+	 */
+	public synchronized long getReused () {
+		return reused;
+	}
+}
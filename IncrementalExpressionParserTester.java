@@ -0,0 +1,112 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for reparsing and resampling expressions as they are edited.
+ */
+public class IncrementalExpressionParserTester {
+	private final ExpressionParser _fresh = new RecursiveDescentExpressionParser();
+
+	/**
+	 * Types the text one character at a time, then deletes it from the middle, checking every
+	 * intermediate input against a fresh parse.
+	 */
+	private void typeAndErase (IncrementalExpressionParser parser, String text) {
+		final List<String> inputs = new ArrayList<>();
+		for (int i = 1; i <= text.length(); i++) {
+			inputs.add(text.substring(0, i));
+		}
+		String erased = text;
+		while (!erased.isEmpty()) {
+			final int middle = erased.length() / 2;
+			erased = erased.substring(0, middle) + erased.substring(middle + 1);
+			inputs.add(erased);
+		}
+		for (String input : inputs) {
+			Expression expected = null, actual = null;
+			String expectedError = null, actualError = null;
+			try {
+				expected = _fresh.parse(input);
+			} catch (ExpressionParseException e) {
+				expectedError = e.getMessage();
+			}
+			try {
+				actual = parser.parse(input);
+			} catch (ExpressionParseException e) {
+				actualError = e.getMessage();
+			}
+			assertEquals(expected, actual, input);
+			assertEquals(expectedError, actualError, input);
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that every input on the way through a sequence of edits parses as it would from scratch,
+	 * or fails with the same message.
+	 */
+	public void testEditsMatchFreshParses () {
+		final IncrementalExpressionParser parser = new IncrementalExpressionParser();
+		typeAndErase(parser, "2*x + 5*x*x - (x-1)/(x+1)");
+		typeAndErase(parser, "log((x+1)^2) - x^x^2 + 3.5e-2*x");
+		typeAndErase(parser, "((x))*(2+x)^3-x/4");
+		typeAndErase(parser, "10 + 20 + 30");
+		assertTrue(parser.getReused() > 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that the terms an edit does not touch are taken over, as the same objects.
+	 */
+	public void testUnchangedSubtreesAreShared () throws ExpressionParseException {
+		final IncrementalExpressionParser parser = new IncrementalExpressionParser();
+		final AdditiveExpression before = (AdditiveExpression) parser.parse("x^2 + (x-1)*(x+1) + 3*x");
+		final AdditiveExpression after = (AdditiveExpression) parser.parse("x^2 + (x-1)*(x+1) + 4*x");
+		assertEquals(_fresh.parse("x^2 + (x-1)*(x+1) + 4*x"), after);
+		final AdditiveExpression beforeLeft = (AdditiveExpression) before.getLeft(), afterLeft = (AdditiveExpression) after.getLeft();
+		assertSame(beforeLeft.getLeft(), afterLeft.getLeft());
+		assertSame(beforeLeft.getRight(), afterLeft.getRight());
+		assertNotEquals(before.getRight(), after.getRight());
+
+		// An edit at the front moves the terms after it, which are still taken over.
+		final AdditiveExpression moved = (AdditiveExpression) parser.parse("x^3 - 1 + (x-1)*(x+1) + 4*x");
+		assertEquals(_fresh.parse("x^3 - 1 + (x-1)*(x+1) + 4*x"), moved);
+		assertSame(after.getRight(), moved.getRight());
+		assertSame(afterLeft.getRight(), ((AdditiveExpression) moved.getLeft()).getRight());
+	}
+
+	@Test
+	/**
+	 * Verifies that columns computed a node at a time equal evaluation point by point, and that an
+	 * edited expression reuses the columns of its unchanged subtrees.
+	 */
+	public void testSubtreeColumns () throws ExpressionParseException {
+		final SubtreeColumnCache columns = new SubtreeColumnCache(1000);
+		final double[] xs = new double[129];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = Sampler.x(-3, 3, i, xs.length);
+		}
+		final Expression first = ExpressionOptimizer.optimize(_fresh.parse("log(x*x+1) * (x-2)^3 + 2^x - x/7"));
+		final double[] values = columns.evaluate(first, 0, 0, xs);
+		for (int i = 0; i < xs.length; i++) {
+			assertEquals(first.evaluate(xs[i]), values[i]);
+		}
+		assertEquals(0, columns.getHits());
+
+		final long misses = columns.getMisses();
+		final Expression second = ExpressionOptimizer.optimize(_fresh.parse("log(x*x+1) * (x-2)^3 + 2^x - x/8"));
+		final double[] edited = columns.evaluate(second, 0, 0, xs);
+		for (int i = 0; i < xs.length; i++) {
+			assertEquals(second.evaluate(xs[i]), edited[i]);
+		}
+		assertTrue(columns.getHits() > 0);
+		assertTrue(columns.getMisses() - misses < misses);
+		assertNotSame(values, columns.evaluate(first, 0, 1, xs));
+
+		final SampleTileCache tiles = new SampleTileCache(64);
+		final Samples sampled = tiles.sample(second, second::evaluate, second, -3, 3, -100, 100, 300, 300);
+		assertTrue(sampled.size() > 0);
+		assertTrue(tiles.getColumns().size() > 0);
+	}
+}
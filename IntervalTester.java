@@ -0,0 +1,114 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tests for interval enclosures and the sampling they speed up.
+ */
+public class IntervalTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	@Test
+	/**
+	 * Verifies that the enclosure holds every finite value the expression takes in the range, and that
+	 * a range claimed to be defined has no undefined points.
+	 */
+	public void testEnclosesRandomExpressions () {
+		final Random random = new Random(9);
+		for (int i = 0; i < 300; i++) {
+			final Expression parsed;
+			try {
+				parsed = _parser.parse(RecursiveDescentExpressionParserTester.randomExpression(random, 4));
+			} catch (ExpressionParseException epe) {
+				continue;
+			}
+			for (Expression expression : List.of(parsed, ExpressionOptimizer.optimize(parsed))) {
+				final double lo = random.nextDouble() * 8 - 4, hi = lo + random.nextDouble() * 2;
+				final Interval range = expression.evaluateInterval(lo, hi);
+				for (int k = 0; k <= 100; k++) {
+					final double y = expression.evaluate(Math.min(hi, lo + (hi - lo) * k / 100));
+					if (Double.isFinite(y)) {
+						assertTrue(range.contains(y), range + " misses " + y + " for " + expression.convertToString(0));
+					} else if (!Double.isInfinite(y)) {
+						assertFalse(range.isDefined(), range + " for " + expression.convertToString(0));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies division by ranges containing 0, and logarithms of non-positive ranges.
+	 */
+	public void testPolesAndDomainEdges () throws ExpressionParseException {
+		final Interval reciprocal = _parser.parse("1/x").evaluateInterval(0, 2);
+		assertFalse(reciprocal.isDefined());
+		assertTrue(reciprocal.getLo() <= 0.5 && reciprocal.getHi() == Double.POSITIVE_INFINITY, reciprocal.toString());
+		assertEquals(Interval.ENTIRE, _parser.parse("1/x").evaluateInterval(-1, 1));
+		assertTrue(_parser.parse("1/x").evaluateInterval(1, 2).isDefined());
+
+		assertTrue(_parser.parse("log(x)").evaluateInterval(-2, -1).isEmpty());
+		final Interval log = _parser.parse("log(x)").evaluateInterval(-1, 1);
+		assertFalse(log.isDefined());
+		assertTrue(log.getLo() == Double.NEGATIVE_INFINITY && log.getHi() >= 0, log.toString());
+		assertTrue(_parser.parse("x^0.5").evaluateInterval(-2, -1).isEmpty());
+		final Interval square = ExpressionOptimizer.optimize(_parser.parse("x^2")).evaluateInterval(-1, 2);
+		assertTrue(square.getLo() == 0 && square.getHi() >= 4 && square.getHi() < 4.0001, square.toString());
+	}
+
+	@Test
+	/**
+	 * Verifies that the sampler skips what is off screen and what is provably flat, and still breaks at poles.
+	 */
+	public void testSamplerUsesEnclosures () throws ExpressionParseException {
+		final AdaptiveSampler sampler = AdaptiveSampler.forViewport(-10, 10, 345);
+		for (String text : List.of("x^3/20 - 2*x", "20 + x^2", "1/(x-0.3)", "log(x)")) {
+			final Expression expression = ExpressionOptimizer.optimize(_parser.parse(text));
+			final AtomicInteger plain = new AtomicInteger(), enclosed = new AtomicInteger();
+			final Samples expected = sampler.sample(x -> { plain.incrementAndGet(); return expression.evaluate(x); }, -10, 10);
+			final Samples actual = sampler.sample(x -> { enclosed.incrementAndGet(); return expression.evaluate(x); }, expression, -10, 10);
+			assertTrue(enclosed.get() <= plain.get(), text + ": " + enclosed + " > " + plain);
+			assertEquals(breaks(expected) > 0, breaks(actual) > 0, text);
+		}
+
+		// Entirely above the view, so only the starting segments are evaluated.
+		final Expression above = _parser.parse("20 + x^2");
+		assertEquals(65, sampler.sample(above::evaluate, above, -10, 10).size());
+	}
+
+	@Test
+	/**
+	 * Verifies that tiles off screen are neither sampled nor cached.
+	 */
+	public void testTileCacheCullsOffscreenTiles () throws ExpressionParseException {
+		final Expression expression = ExpressionOptimizer.optimize(_parser.parse("x^2"));
+		final DoubleUnaryOperator function = expression::evaluate;
+		final SampleTileCache cache = new SampleTileCache(64);
+		final Samples samples = cache.sample("x^2", function, expression, -100, 100, -10, 10, 400, 400);
+		long visible = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			if (!samples.isBreak(i) && Math.abs(samples.getX(i)) < 3) {
+				visible++;
+			}
+		}
+		assertTrue(visible > 3);
+		// The tiles on screen are cached, the culled ones are not.
+		final long misses = cache.getMisses();
+		cache.sample("x^2", function, expression, -100, 100, -10, 10, 400, 400);
+		final long again = cache.getMisses() - misses;
+		assertTrue(again > 0 && again < misses, again + " of " + misses);
+	}
+
+	private static int breaks (Samples samples) {
+		int breaks = 0;
+		for (int i = 0; i < samples.size(); i++) {
+			if (samples.isBreak(i)) {
+				breaks++;
+			}
+		}
+		return breaks;
+	}
+}
@@ -0,0 +1,337 @@
+import java.nio.CharBuffer;
+import java.util.regex.Matcher;
+/*
+* Grammar:
+* S -> A | P
+* A -> A+M | A-M | M
+* M -> M*E | M/E | E
+* E -> P^E | P | log(P)
+* P -> (S) | L | V
+* L -> <float>
+* V -> x
+*/
+/**
+ * A packrat (memoizing) version of SimpleExpressionParser. It tries exactly the same productions in
+ * the same order, so it builds the same trees, but each production works on a [start, end) span of
+ * a single char[] instead of on substring copies, and the result of every (production, start, end)
+ * attempt -- failures included -- is remembered for the rest of the parse. Every span is therefore
+ * parsed at most once per production, which bounds the whole parse to O(n^3) time. The memo is an
+ * open-addressed table of primitive keys, and literals are matched by one Matcher moved from span to
+ * span, so an attempt allocates nothing but the nodes it builds and its share of the table.
+ */
+public class MemoizedSimpleExpressionParser extends SimpleExpressionParser {
+	private static final int S = 0, A = 1, M = 2, E = 3, P = 4;
+
+	/** Stands in for a remembered failure, since null means "not attempted yet". */
+	private static final Expression FAILURE = new LiteralExpression("NaN");
+
+	/**
+	 * The input and memo table of a single call to parse. The memo maps (production, start, end) keys
+	 * to results by linear probing, in parallel arrays that double when three quarters full.
+	 */
+	protected static class Span {
+		final char[] chars;
+		final long width;
+		/** Matches literals in any span of the input, by setting its region. */
+		final Matcher literal;
+		private long[] keys = new long[64];
+		private Expression[] values = new Expression[64];
+		private int size;
+
+		Span (char[] chars) {
+			this.chars = chars;
+			this.width = chars.length + 1;
+			this.literal = LITERAL_PATTERN.matcher(CharBuffer.wrap(chars));
+		}
+
+		long key (int production, int start, int end) {
+			return (production * width + start) * width + end;
+		}
+
+		/**
+		 * Returns the first slot to probe for a key.
+		 */
+		private static int slot (long key, int mask) {
+			return (int) ((key * 0x9e3779b97f4a7c15L) >>> 32) & mask;
+		}
+
+		/**
+		 * @return the result remembered for the key, or null if there is none
+		 */
+		Expression get (long key) {
+			final int mask = keys.length - 1;
+			for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				}
+			}
+			return null;
+		}
+
+		/**
+		 * Remembers a result, which is never null, replacing any remembered for the same key.
+		 */
+		void put (long key, Expression value) {
+			if (4 * (size + 1) > 3 * keys.length) {
+				final long[] oldKeys = keys;
+				final Expression[] oldValues = values;
+				keys = new long[2 * oldKeys.length];
+				values = new Expression[2 * oldValues.length];
+				for (int i = 0; i < oldKeys.length; i++) {
+					if (oldValues[i] != null) {
+						insert(oldKeys[i], oldValues[i]);
+					}
+				}
+			}
+			if (insert(key, value)) {
+				size++;
+			}
+		}
+
+		/**
+		 * @return whether the key was not remembered before
+		 */
+		private boolean insert (long key, Expression value) {
+			final int mask = keys.length - 1;
+			int i = slot(key, mask);
+			while (values[i] != null && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			final boolean added = values[i] == null;
+			keys[i] = key;
+			values[i] = value;
+			return added;
+		}
+
+		/**
+		 * @return how many results are remembered
+		 */
+		int size () {
+			return size;
+		}
+	}
+
+	/**
+	 * Attempts to create an expression tree from the specified String.
+	 * Throws a ExpressionParseException if the specified string cannot be parsed.
+	 *
+	 * @param str the string to parse into an expression tree
+	 * @return the Expression object representing the parsed expression tree
+	 */
+	@Override
+	public Expression parse (String str) throws ExpressionParseException {
+		final ExpressionEvents.ParseEvent event = ExpressionEvents.beginParse();
+		final String input = str;
+		str = str.replaceAll(" ", "");
+		final Span span = new Span(str.toCharArray());
+		Expression expression = null;
+		try {
+			expression = parseExpression(span, 0, span.chars.length);
+			if (expression == null) {
+				throw new ExpressionParseException("Cannot parse expression: " + str);
+			}
+			return expression;
+		} finally {
+			// Every production attempted on every span is remembered, so the memo counts the attempts.
+			ExpressionEvents.endParse(event, this, input, expression, span.size());
+		}
+	}
+
+	/**
+	 * Looks up a remembered result.
+	 * @return the remembered expression, FAILURE for a remembered failure, or null if the span has not been attempted
+	 */
+	private static Expression recall (Span span, int production, int start, int end) {
+		return span.get(span.key(production, start, end));
+	}
+
+	/**
+	 * Remembers the result of an attempt and returns it.
+	 * @return expression, or null if the attempt failed
+	 */
+	private static Expression remember (Span span, int production, int start, int end, Expression expression) {
+		span.put(span.key(production, start, end), expression == null ? FAILURE : expression);
+		return expression;
+	}
+
+	/**
+	 * Turns a recalled FAILURE back into null.
+	 */
+	private static Expression recalled (Expression expression) {
+		return expression == FAILURE ? null : expression;
+	}
+
+	/**
+	 * Parses the starting symbol for the production rules of the CFG.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseExpression (Span span, int start, int end) {
+		// S -> A | P
+		final Expression known = recall(span, S, start, end);
+		if (known != null) {
+			return recalled(known);
+		}
+
+		Expression expression = parseAdditiveExpression(span, start, end);
+		if (expression == null) {
+			expression = parseParentheticalExpression(span, start, end);
+		}
+		return remember(span, S, start, end, expression);
+	}
+
+	/**
+	 * Parses an addition or subtraction expression.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseAdditiveExpression (Span span, int start, int end) {
+		// A -> A+M | A-M | M
+		final Expression known = recall(span, A, start, end);
+		if (known != null) {
+			return recalled(known);
+		}
+
+		for (int i = start; i < end; i++) {
+			final char c = span.chars[i];
+			if (c == '+' || c == '-') {
+				final Expression left = parseAdditiveExpression(span, start, i);
+				final Expression right = left == null ? null : parseMultiplicativeExpression(span, i + 1, end);
+				if (right != null) {
+					return remember(span, A, start, end, new AdditiveExpression(left, right, c == '-'));
+				}
+			}
+		}
+		return remember(span, A, start, end, parseMultiplicativeExpression(span, start, end));
+	}
+
+	/**
+	 * Parses a multiplication or division expression.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseMultiplicativeExpression (Span span, int start, int end) {
+		// M -> M*E | M/E | E
+		final Expression known = recall(span, M, start, end);
+		if (known != null) {
+			return recalled(known);
+		}
+
+		for (int i = start; i < end; i++) {
+			final char c = span.chars[i];
+			if (c == '*' || c == '/') {
+				final Expression left = parseMultiplicativeExpression(span, start, i);
+				final Expression right = left == null ? null : parseExponentialExpression(span, i + 1, end);
+				if (right != null) {
+					return remember(span, M, start, end, new MultiplicativeExpression(left, right, c == '/'));
+				}
+			}
+		}
+		return remember(span, M, start, end, parseExponentialExpression(span, start, end));
+	}
+
+	/**
+	 * Parses exponential and logarithmic expressions.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseExponentialExpression (Span span, int start, int end) {
+		// E -> P^E | P | log(P)
+		final Expression known = recall(span, E, start, end);
+		if (known != null) {
+			return recalled(known);
+		}
+
+		for (int i = start; i < end; i++) {
+			if (span.chars[i] == '^') {
+				final Expression left = parseParentheticalExpression(span, start, i);
+				final Expression right = left == null ? null : parseExponentialExpression(span, i + 1, end);
+				if (right != null) {
+					return remember(span, E, start, end, new ExponentialExpression(left, right));
+				}
+			}
+		}
+
+		final char[] chars = span.chars;
+		if (end - start >= 4 && chars[start] == 'l' && chars[start + 1] == 'o' && chars[start + 2] == 'g' && chars[start + 3] == '('
+				&& chars[end - 1] == ')') {
+			final Expression argument = parseParentheticalExpression(span, start + 3, end);
+			if (argument != null) {
+				return remember(span, E, start, end, new LogarithmicExpression(argument));
+			}
+		}
+
+		return remember(span, E, start, end, parseParentheticalExpression(span, start, end));
+	}
+
+	/**
+	 * Parses a parenthetical expression.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseParentheticalExpression (Span span, int start, int end) {
+		// P -> (S) | L | V
+		final Expression known = recall(span, P, start, end);
+		if (known != null) {
+			return recalled(known);
+		}
+
+		final char[] chars = span.chars;
+		Expression expression;
+		if (end - start >= 3 && chars[start] == '(' && chars[end - 1] == ')') {
+			expression = parseExpression(span, start + 1, end - 1);
+			if (expression != null) {
+				expression = new ParentheticalExpression(expression);
+			}
+		} else {
+			expression = parseLiteralExpression(span, start, end);
+			if (expression == null) {
+				expression = parseVariableExpression(span, start, end);
+			}
+		}
+		return remember(span, P, start, end, expression);
+	}
+
+	/**
+	 * Parses a variable expression.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseVariableExpression (Span span, int start, int end) {
+		if (end - start == 1 && span.chars[start] == 'x') {
+			return new VariableExpression("x");
+		}
+		return null;
+	}
+
+	/**
+	 * Parses a literal expression, matching the span in place rather than copying it out first.
+	 * @param span the input being parsed
+	 * @param start the first index of the span
+	 * @param end one past the last index of the span
+	 * @return parsed expression if possible, null otherwise.
+	 */
+	protected Expression parseLiteralExpression (Span span, int start, int end) {
+		if (span.literal.region(start, end).matches()) {
+			return new LiteralExpression(new String(span.chars, start, end - start));
+		}
+		return null;
+	}
+
+	public static void main (String[] args) throws ExpressionParseException {
+		final ExpressionParser parser = new MemoizedSimpleExpressionParser();
+		System.out.println(parser.parse("10*x^3 + 2*(15+x)").convertToString(0));
+	}
+}
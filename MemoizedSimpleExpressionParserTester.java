@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * Runs the Project 4 tests against MemoizedSimpleExpressionParser and compares it side by side with the other parsers.
+ */
+public class MemoizedSimpleExpressionParserTester extends ExpressionParserTester {
+	@BeforeEach
+	@Override
+	public void setUp () throws IOException {
+		_parser = new MemoizedSimpleExpressionParser();
+	}
+
+	@Test
+	/**
+	 * Verifies that the memoized parser builds the same trees (or failures) as the plain backtracking parser.
+	 */
+	public void testSameTreesAsSimpleParser () {
+		final ExpressionParser simple = new SimpleExpressionParser();
+		final ExpressionParser recursiveDescent = new RecursiveDescentExpressionParser();
+		final Random random = new Random(2);
+		for (int i = 0; i < 500; i++) {
+			final String str = RecursiveDescentExpressionParserTester.randomExpression(random, 3);
+			assertEquals(RecursiveDescentExpressionParserTester.parseTree(simple, str), RecursiveDescentExpressionParserTester.parseTree(_parser, str), str);
+		}
+		for (int i = 0; i < 100; i++) {
+			final String str = RecursiveDescentExpressionParserTester.randomExpression(random, 6);
+			assertEquals(RecursiveDescentExpressionParserTester.parseTree(recursiveDescent, str), RecursiveDescentExpressionParserTester.parseTree(_parser, str), str);
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that an invalid input that makes the backtracking parser blow up is rejected in polynomial time.
+	 */
+	public void testLongInvalidInput () {
+		final StringBuilder str = new StringBuilder("x");
+		for (int i = 0; i < 40; i++) {
+			str.append("+x*x-x/x");
+		}
+		str.append("+");
+		assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+			assertThrows(ExpressionParseException.class, () -> _parser.parse(str.toString()));
+		});
+	}
+}
@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process registry of named counters and histograms, for finding out where the time goes --
+ * parsing, differentiation or sampling -- in a running calculator. Counters and histograms are built
+ * on LongAdder, so threads that update them at once do not contend, and reading them never blocks an
+ * update.
+ *
+ * Metrics are off unless the system property expressions.metrics is true, or setEnabled(true) is
+ * called. Code that records metrics checks isEnabled() first, which is a single volatile read, and does
+ * no other work while metrics are off.
+ *
+ * dump writes every metric as "name value" lines, in order of name, for a person or a scraper to read.
+ */
+public final class Metrics {
+	private static volatile boolean enabled = Boolean.getBoolean("expressions.metrics");
+	private static final Map<String, Counter> counters = new ConcurrentHashMap<>();
+	private static final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+	private Metrics () {
+	}
+
+	/**
+	 * A count of events.
+	 */
+	public static final class Counter {
+		private final LongAdder count = new LongAdder();
+
+		public void increment () {
+			count.increment();
+		}
+
+		public void add (long amount) {
+			count.add(amount);
+		}
+
+		public long get () {
+			return count.sum();
+		}
+	}
+
+	/**
+	 * The distribution of a non-negative quantity, such as a duration in nanoseconds, in buckets whose
+	 * bounds are powers of two: bucket b counts the values of [2^(b-1), 2^b), and bucket 0 counts 0.
+	 * Quantiles are therefore accurate to within a factor of two, which is enough to tell a microsecond
+	 * from a millisecond, at the cost of 64 adders.
+	 */
+	public static final class Histogram {
+		private final LongAdder[] buckets = new LongAdder[Long.SIZE];
+		private final LongAdder count = new LongAdder(), sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		Histogram () {
+			for (int b = 0; b < buckets.length; b++) {
+				buckets[b] = new LongAdder();
+			}
+		}
+
+		/**
+		 * @param value the value to record; negative values are recorded as 0
+		 */
+		public void record (long value) {
+			value = Math.max(0, value);
+			buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		public long getCount () {
+			return count.sum();
+		}
+
+		public long getSum () {
+			return sum.sum();
+		}
+
+		public long getMax () {
+			return max.get();
+		}
+
+		/**
+		 * @param q the quantile, from 0 to 1
+		 * @return an upper bound, within a factor of two, of the q-th quantile of the values recorded, or 0 if there are none
+		 */
+		public long quantile (double q) {
+			final long rank = (long) Math.ceil(q * getCount());
+			long seen = 0;
+			for (int b = 0; b < buckets.length; b++) {
+				seen += buckets[b].sum();
+				if (seen >= rank && seen > 0) {
+					return b == 0 ? 0 : Math.min(getMax(), (1L << b) - 1);
+				}
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * @return whether metrics are being recorded
+	 */
+	public static boolean isEnabled () {
+		return enabled;
+	}
+
+	/**
+	 * Turns the recording of metrics on or off. Metrics already recorded are kept.
+	 */
+	public static void setEnabled (boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+
+	/**
+	 * @return the counter with the specified name, created on first use
+	 */
+	public static Counter counter (String name) {
+		return counters.computeIfAbsent(name, n -> new Counter());
+	}
+
+	/**
+	 * @return the histogram with the specified name, created on first use
+	 */
+	public static Histogram histogram (String name) {
+		return histograms.computeIfAbsent(name, n -> new Histogram());
+	}
+
+	/**
+	 * Forgets every metric.
+	 */
+	public static void reset () {
+		counters.clear();
+		histograms.clear();
+	}
+
+	/**
+	 * Returns the current value of every metric: each counter by its name, and for each histogram its
+	 * count, sum, max, and 50th and 99th percentiles, by its name followed by .count, .sum, .max, .p50 and .p99.
+	 * @return the values, in order of name
+	 */
+	public static SortedMap<String, Long> snapshot () {
+		final SortedMap<String, Long> values = new TreeMap<>();
+		counters.forEach((name, counter) -> values.put(name, counter.get()));
+		histograms.forEach((name, histogram) -> {
+			values.put(name + ".count", histogram.getCount());
+			values.put(name + ".sum", histogram.getSum());
+			values.put(name + ".max", histogram.getMax());
+			values.put(name + ".p50", histogram.quantile(0.5));
+			values.put(name + ".p99", histogram.quantile(0.99));
+		});
+		return values;
+	}
+
+	/**
+	 * Writes the snapshot as "name value" lines.
+	 * @param out where to write
+	 * @throws IOException if out cannot be written
+	 */
+	public static void dump (Appendable out) throws IOException {
+		for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+			out.append(entry.getKey()).append(' ').append(String.valueOf(entry.getValue())).append('\n');
+		}
+	}
+}
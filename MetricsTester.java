@@ -0,0 +1,132 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.nio.file.*;
+import java.util.*;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.*;
+
+/**
+ * Tests for the metrics registry and the flight recorder events of parsing, differentiation and sampling.
+ */
+public class MetricsTester {
+	@AfterEach
+	public void tearDown () {
+		Metrics.setEnabled(false);
+		Metrics.reset();
+	}
+
+	@Test
+	/**
+	 * Verifies counters, and histogram quantiles to within their factor of two.
+	 */
+	public void testCountersAndHistograms () throws Exception {
+		Metrics.counter("a").increment();
+		Metrics.counter("a").add(4);
+		assertEquals(5, Metrics.counter("a").get());
+
+		final Metrics.Histogram histogram = Metrics.histogram("h");
+		assertEquals(0, histogram.quantile(0.5));
+		for (int value = 1; value <= 1000; value++) {
+			histogram.record(value);
+		}
+		histogram.record(-7);
+		assertEquals(1001, histogram.getCount());
+		assertEquals(500500, histogram.getSum());
+		assertEquals(1000, histogram.getMax());
+		assertTrue(histogram.quantile(0.5) >= 500 && histogram.quantile(0.5) < 1000, String.valueOf(histogram.quantile(0.5)));
+		assertEquals(1000, histogram.quantile(1));
+		assertEquals(0, histogram.quantile(0));
+
+		final StringBuilder dump = new StringBuilder();
+		Metrics.dump(dump);
+		assertEquals("a 5\nh.count 1001\nh.max 1000\n", dump.substring(0, dump.indexOf("h.p50")));
+	}
+
+	@Test
+	/**
+	 * Verifies that parsing, differentiation and sampling record metrics when enabled, and none when not.
+	 */
+	public void testStagesRecordMetrics () throws ExpressionParseException {
+		final ExpressionParser parser = new RecursiveDescentExpressionParser();
+		parser.parse("x^2+1");
+		assertTrue(Metrics.snapshot().isEmpty());
+
+		Metrics.setEnabled(true);
+		final Expression expression = parser.parse("x^2+1");
+		assertThrows(ExpressionParseException.class, () -> parser.parse("x^2+"));
+		assertThrows(ExpressionParseException.class, () -> new MemoizedSimpleExpressionParser().parse("x^2+"));
+		new ExpressionInterner().differentiate(expression);
+		new SampleTileCache(16).sample("curve", x -> x * x + 1, expression, -1, 1, -10, 10, 100, 100);
+
+		final Map<String, Long> values = Metrics.snapshot();
+		assertEquals(1, values.get("parse.successes"));
+		assertEquals(2, values.get("parse.failures"));
+		assertEquals(3, values.get("parse.nanos.count"));
+		assertEquals(5, values.get("parse.nodes.max"));
+		assertEquals(3, values.get("parse.depth.max"));
+		assertTrue(values.get("parse.steps.max") > 4);
+		assertEquals(1, values.get("differentiate.successes"));
+		assertTrue(values.get("sample.tilesSampled") > 0);
+		assertEquals(values.get("sample.tiles"), values.get("sample.tilesSampled"));
+		assertTrue(values.get("sample.points") >= 100);
+
+		// The backtracking parser counts every production it attempts, more than the memoized one needs.
+		Metrics.reset();
+		new MemoizedSimpleExpressionParser().parse("x*2+1-x");
+		final long memoized = Metrics.snapshot().get("parse.steps.max");
+		Metrics.reset();
+		new SimpleExpressionParser().parse("x*2+1-x");
+		assertTrue(Metrics.snapshot().get("parse.steps.max") > memoized);
+	}
+
+	@Test
+	/**
+	 * Verifies that measuring a tree too deep to walk recursively does not make parsing it fail.
+	 */
+	public void testDeepTreeWithMetrics () throws ExpressionParseException {
+		final StringBuilder text = new StringBuilder("x");
+		for (int i = 0; i < 20000; i++) {
+			text.append("+x");
+		}
+		Metrics.setEnabled(true);
+		new RecursiveDescentExpressionParser().parse(text.toString());
+		final Map<String, Long> values = Metrics.snapshot();
+		assertEquals(1, values.get("parse.successes"));
+		assertEquals(20001, values.get("parse.depth.max"));
+	}
+
+	@Test
+	/**
+	 * Verifies that a flight recording holds the events, with their fields filled in.
+	 */
+	public void testFlightRecorderEvents () throws Exception {
+		final Path file = Files.createTempFile("expressions", ".jfr");
+		try {
+			try (Recording recording = new Recording()) {
+				recording.enable("expressions.Parse");
+				recording.enable("expressions.Differentiate");
+				recording.enable("expressions.Sample");
+				recording.start();
+				final Expression expression = new RecursiveDescentExpressionParser().parse("log(x)*x");
+				new ExpressionInterner().differentiate(expression);
+				new SampleTileCache(16).sample("curve", x -> x, -1, 1, 100);
+				recording.stop();
+				recording.dump(file);
+			}
+			final Map<String, RecordedEvent> events = new HashMap<>();
+			for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+				events.put(event.getEventType().getName(), event);
+			}
+			final RecordedEvent parse = events.get("expressions.Parse");
+			assertEquals("RecursiveDescentExpressionParser", parse.getString("parser"));
+			assertEquals(8, parse.getInt("inputLength"));
+			assertEquals(5, parse.getInt("nodeCount"));
+			assertTrue(parse.getBoolean("succeeded"));
+			assertFalse(parse.hasField("startNanos"));
+			assertTrue(events.get("expressions.Differentiate").getInt("derivativeNodeCount") > 4);
+			assertEquals("curve", events.get("expressions.Sample").getString("curve"));
+		} finally {
+			Files.delete(file);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for expressions of several variables, evaluated in slot-indexed environments and over grids.
+ */
+public class MultiVariableTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser("x", "y", "t", "xy");
+
+	@Test
+	/**
+	 * Verifies that names resolve to their slots, the longest name winning, and evaluate in an environment.
+	 */
+	public void testSlotsAndEvaluation () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x*y + t^2 - log(xy)");
+		final double[] environment = { 2, 3, 4, 100 };
+		final double expected = 2 * 3 + 16 - Math.log(100) / Math.log(LogarithmicExpression.BASE);
+		assertEquals(expected, expression.evaluateAt(environment), 1e-12);
+		assertEquals(expected, ExpressionOptimizer.optimize(expression).evaluateAt(environment), 1e-12);
+		assertEquals(expression, ExpressionCodec.decode(ExpressionCodec.encode(expression)));
+		assertEquals(3, ((VariableExpression) _parser.parse("xy")).getSlot());
+		assertNotEquals(_parser.parse("x"), _parser.parse("y"));
+
+		assertThrows(ExpressionParseException.class, () -> _parser.parse("x*z"));
+		assertThrows(ExpressionParseException.class, () -> new RecursiveDescentExpressionParser().parse("x*y"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser("x", "x"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser("x", "logx"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser("x", "2y"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser("t", "x"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser("t"));
+		assertThrows(IllegalArgumentException.class, () -> new RecursiveDescentExpressionParser(new String[0]));
+	}
+
+	@Test
+	/**
+	 * Verifies that single-variable evaluation refuses other variables, and that differentiation
+	 * with respect to x treats them as constants.
+	 */
+	public void testSingleVariableMethods () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^2*y");
+		assertThrows(UnsupportedOperationException.class, () -> expression.evaluate(1));
+		assertThrows(IllegalArgumentException.class, () -> ExpressionProgram.compile(expression));
+
+		final double[] environment = { 3, 5, 0, 0 };
+		final Expression derivative = new ExpressionSimplifier().simplify(expression.differentiate());
+		assertEquals(2 * 3 * 5, derivative.evaluateAt(environment), 1e-12);
+		assertEquals(2 * 3 * 5, new ExpressionInterner().differentiate(expression).evaluateAt(environment), 1e-12);
+		assertEquals(_parser.parse("x^2").evaluate(3.0), _parser.parse("x^2").evaluateAt(environment));
+	}
+
+	@Test
+	/**
+	 * Verifies that the grid holds the value at each point, row-major, with fixed slots left as given.
+	 */
+	public void testGrid () throws ExpressionParseException {
+		final Expression expression = _parser.parse("x^2 - y/2 + t");
+		final GridEvaluator grid = new GridEvaluator(expression, 0, 1);
+		final double[] values = grid.evaluate(new double[] { 0, 0, 7 }, -1, 1, 5, 10, 20, 3);
+		assertEquals(15, values.length);
+		for (int r = 0; r < 3; r++) {
+			for (int c = 0; c < 5; c++) {
+				final double x = -1 + c * 0.5, y = 10 + r * 5;
+				assertEquals(x * x - y / 2 + 7, values[r * 5 + c], 1e-12);
+			}
+		}
+		final double[] swapped = new GridEvaluator(expression, 1, 0).evaluate(new double[] { 0, 0, 7 }, 10, 20, 3, -1, 1, 5);
+		assertEquals(values[1 * 5 + 4], swapped[4 * 3 + 1]);
+		assertThrows(IllegalArgumentException.class, () -> new GridEvaluator(expression, 1, 1));
+	}
+
+	@Test
+	/**
+	 * Verifies that a large grid is evaluated in parallel in reasonable time.
+	 */
+	public void testLargeGrid () throws ExpressionParseException {
+		final Expression expression = _parser.parse("(x*x + y*y)^0.5 - log(1 + x*x*y*y) / 2");
+		final double[] out = new double[2048 * 2048];
+		final long start = System.nanoTime();
+		new GridEvaluator(expression, 0, 1).evaluate(new double[2], -5, 5, 2048, -5, 5, 2048, out);
+		assertTrue(System.nanoTime() - start < 20_000_000_000L);
+		final double[] environment = { Sampler.x(-5, 5, 100, 2048), Sampler.x(-5, 5, 1000, 2048) };
+		assertEquals(expression.evaluateAt(environment), out[1000 * 2048 + 100], 1e-12);
+	}
+}
@@ -0,0 +1,286 @@
+import javafx.geometry.VPos;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.TextAlignment;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.*;
+
+/**
+ * Draws sampled curves, with a grid and axes, straight onto a Canvas. Unlike a LineChart, nothing is
+ * boxed and no scene-graph node or observable list entry is made per point: each continuous run of a
+ * series is transformed into reused primitive screen-coordinate buffers and stroked as one polyline,
+ * so series of a million points redraw in a few milliseconds.
+ *
+ * Grid lines fall on multiples of the grid interval. When zooming would put them closer than
+ * MIN_GRID_SPACING pixels, or further than four times that, the interval is doubled or halved.
+ *
+ * The view is kept between MIN_SPAN and MAX_SPAN across, and at least MIN_SPAN_ULPS units in the last
+ * place of its center, so zooming in never rounds it to nothing, and the grid lines, which are
+ * multiples of a step a fraction of the view across, always advance.
+ */
+public class PlotCanvas extends Canvas {
+	protected static final double MIN_GRID_SPACING = 40;
+	protected static final double MIN_SPAN = 1e-100, MAX_SPAN = 1e100, MIN_SPAN_ULPS = 0x1p20;
+	private static final double LINE_WIDTH = 2;
+	/** Far enough outside the canvas that clamping never bends a visible segment noticeably. */
+	private static final double SCREEN_LIMIT = 1e6;
+	private static final Color BACKGROUND = Color.WHITE;
+	private static final Color GRID = Color.gray(0.9);
+	private static final Color AXIS = Color.gray(0.3);
+	private static final Color LABEL = Color.gray(0.4);
+
+	private final double gridInterval;
+	private double minX, maxX, minY, maxY;
+	private final List<Samples> series = new ArrayList<>();
+	private final List<Color> colors = new ArrayList<>();
+	private double[] screenXs = new double[1024];
+	private double[] screenYs = new double[1024];
+
+	/**
+	 * @param width the width of the canvas in pixels
+	 * @param height the height of the canvas in pixels
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param minY the bottom edge of the view
+	 * @param maxY the top edge of the view
+	 * @param gridInterval the distance between grid lines at the initial view
+	 */
+	public PlotCanvas (double width, double height, double minX, double maxX, double minY, double maxY, double gridInterval) {
+		super(width, height);
+		final double[] x = fit(minX, maxX), y = fit(minY, maxY);
+		this.minX = x[0];
+		this.maxX = x[1];
+		this.minY = y[0];
+		this.maxY = y[1];
+		this.gridInterval = gridInterval;
+		widthProperty().addListener(o -> redraw());
+		heightProperty().addListener(o -> redraw());
+		redraw();
+	}
+
+	public double getMinX () {
+		return minX;
+	}
+
+	public double getMaxX () {
+		return maxX;
+	}
+
+	public double getMinY () {
+		return minY;
+	}
+
+	public double getMaxY () {
+		return maxY;
+	}
+
+	/**
+	 * Moves the view and redraws the series already set; they may not cover the new view. A range too
+	 * narrow or too wide is widened or narrowed about its center to the nearest allowed.
+	 * @throws IllegalArgumentException if a bound is not finite
+	 */
+	public void setView (double minX, double maxX, double minY, double maxY) {
+		final double[] x = fit(minX, maxX), y = fit(minY, maxY);
+		this.minX = x[0];
+		this.maxX = x[1];
+		this.minY = y[0];
+		this.maxY = y[1];
+		redraw();
+	}
+
+	/**
+	 * Returns the ends of a range, widened or narrowed about its center to a span the canvas can draw.
+	 */
+	static double[] fit (double min, double max) {
+		if (!Double.isFinite(min) || !Double.isFinite(max)) {
+			throw new IllegalArgumentException("Cannot view the range from " + min + " to " + max);
+		}
+		final double center = min / 2 + max / 2, span = max - min;
+		final double narrowest = Math.max(MIN_SPAN, MIN_SPAN_ULPS * Math.ulp(center));
+		if (span >= narrowest && span <= MAX_SPAN) {
+			return new double[] { min, max };
+		}
+		final double fitted = span < narrowest ? narrowest : MAX_SPAN;
+		return new double[] { center - fitted / 2, center + fitted / 2 };
+	}
+
+	/**
+	 * Moves the view by a distance in pixels, as when the plot is dragged.
+	 * @param dx how far to drag the plot right
+	 * @param dy how far to drag the plot down
+	 */
+	public void pan (double dx, double dy) {
+		final double x = dx * (maxX - minX) / getWidth();
+		final double y = dy * (maxY - minY) / getHeight();
+		setView(minX - x, maxX - x, minY + y, maxY + y);
+	}
+
+	/**
+	 * Scales the view about a point on the canvas, which stays put.
+	 * @param factor the new size of the view relative to the old; less than 1 zooms in
+	 * @param screenX the x coordinate of the fixed point, in pixels
+	 * @param screenY the y coordinate of the fixed point, in pixels
+	 */
+	public void zoom (double factor, double screenX, double screenY) {
+		final double x = toDataX(screenX), y = toDataY(screenY);
+		setView(x + (minX - x) * factor, x + (maxX - x) * factor, y + (minY - y) * factor, y + (maxY - y) * factor);
+	}
+
+	/**
+	 * Replaces the series drawn.
+	 * @param series the series to draw
+	 * @param colors the color of each series, in order
+	 */
+	public void setSeries (List<Samples> series, List<Color> colors) {
+		this.series.clear();
+		this.series.addAll(series);
+		this.colors.clear();
+		this.colors.addAll(colors);
+		redraw();
+	}
+
+	public double toScreenX (double x) {
+		return (x - minX) / (maxX - minX) * getWidth();
+	}
+
+	public double toScreenY (double y) {
+		return (maxY - y) / (maxY - minY) * getHeight();
+	}
+
+	public double toDataX (double screenX) {
+		return minX + screenX / getWidth() * (maxX - minX);
+	}
+
+	public double toDataY (double screenY) {
+		return maxY - screenY / getHeight() * (maxY - minY);
+	}
+
+	/**
+	 * Returns the distance between grid lines at the current view: the grid interval doubled or halved
+	 * until the lines are between MIN_GRID_SPACING and four times that many pixels apart.
+	 * @param range the extent of the view along one axis
+	 * @param pixels how many pixels that extent is drawn across
+	 * @return the distance between grid lines along that axis, or NaN if range or pixels is not
+	 * positive and finite, when no grid is drawn
+	 */
+	protected double gridStep (double range, double pixels) {
+		final double pixelsPerUnit = pixels / range;
+		if (!(range > 0) || !(pixels > 0) || !(pixelsPerUnit > 0) || Double.isInfinite(range) || Double.isInfinite(pixelsPerUnit)) {
+			return Double.NaN;
+		}
+		double step = gridInterval;
+		while (step * pixelsPerUnit < MIN_GRID_SPACING) {
+			step *= 2;
+		}
+		while (step * pixelsPerUnit > 4 * MIN_GRID_SPACING) {
+			step /= 2;
+		}
+		return step;
+	}
+
+	/**
+	 * Repaints the whole canvas.
+	 */
+	public void redraw () {
+		final GraphicsContext gc = getGraphicsContext2D();
+		final double width = getWidth(), height = getHeight();
+		gc.setFill(BACKGROUND);
+		gc.fillRect(0, 0, width, height);
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+		drawGrid(gc, width, height);
+		gc.setLineWidth(LINE_WIDTH);
+		for (int i = 0; i < series.size(); i++) {
+			gc.setStroke(colors.get(i % colors.size()));
+			drawSeries(gc, series.get(i));
+		}
+	}
+
+	private void drawGrid (GraphicsContext gc, double width, double height) {
+		final double stepX = gridStep(maxX - minX, width), stepY = gridStep(maxY - minY, height);
+		if (Double.isNaN(stepX) || Double.isNaN(stepY)) {
+			return;
+		}
+		gc.setLineWidth(1);
+		gc.setStroke(GRID);
+		for (long k = (long) Math.ceil(minX / stepX); k * stepX <= maxX; k++) {
+			final double sx = snap(toScreenX(k * stepX));
+			gc.strokeLine(sx, 0, sx, height);
+		}
+		for (long k = (long) Math.ceil(minY / stepY); k * stepY <= maxY; k++) {
+			final double sy = snap(toScreenY(k * stepY));
+			gc.strokeLine(0, sy, width, sy);
+		}
+
+		// The axes, with their labels beside them, stay at the edge of the canvas when out of view.
+		final double axisX = snap(clamp(toScreenX(0), 0, width - 1));
+		final double axisY = snap(clamp(toScreenY(0), 0, height - 1));
+		gc.setStroke(AXIS);
+		gc.strokeLine(axisX, 0, axisX, height);
+		gc.strokeLine(0, axisY, width, axisY);
+
+		gc.setFill(LABEL);
+		gc.setTextAlign(TextAlignment.CENTER);
+		gc.setTextBaseline(axisY > height - 20 ? VPos.BOTTOM : VPos.TOP);
+		for (long k = (long) Math.ceil(minX / stepX); k * stepX <= maxX; k++) {
+			if (k != 0) {
+				gc.fillText(label(k * stepX), toScreenX(k * stepX), axisY + (axisY > height - 20 ? -3 : 3));
+			}
+		}
+		gc.setTextAlign(axisX > width - 40 ? TextAlignment.RIGHT : TextAlignment.LEFT);
+		gc.setTextBaseline(VPos.CENTER);
+		for (long k = (long) Math.ceil(minY / stepY); k * stepY <= maxY; k++) {
+			if (k != 0) {
+				gc.fillText(label(k * stepY), axisX + (axisX > width - 40 ? -4 : 4), toScreenY(k * stepY));
+			}
+		}
+	}
+
+	/**
+	 * Strokes each continuous run of a series as one polyline.
+	 */
+	private void drawSeries (GraphicsContext gc, Samples samples) {
+		final double[] xs = samples.xs(), ys = samples.ys();
+		final int size = samples.size();
+		if (screenXs.length < size) {
+			screenXs = new double[size];
+			screenYs = new double[size];
+		}
+		final double scaleX = getWidth() / (maxX - minX), scaleY = getHeight() / (maxY - minY);
+		int count = 0;
+		for (int i = 0; i <= size; i++) {
+			if (i == size || Double.isNaN(xs[i])) {
+				if (count > 1) {
+					gc.strokePolyline(screenXs, screenYs, count);
+				}
+				count = 0;
+			} else {
+				screenXs[count] = clamp((xs[i] - minX) * scaleX, -SCREEN_LIMIT, SCREEN_LIMIT);
+				screenYs[count] = clamp((maxY - ys[i]) * scaleY, -SCREEN_LIMIT, SCREEN_LIMIT);
+				count++;
+			}
+		}
+	}
+
+	private static double clamp (double value, double min, double max) {
+		return Math.max(min, Math.min(max, value));
+	}
+
+	/**
+	 * Moves a coordinate to the middle of its pixel, so one-pixel lines are drawn crisp.
+	 */
+	private static double snap (double coordinate) {
+		return Math.floor(coordinate) + 0.5;
+	}
+
+	/**
+	 * Formats a grid value without trailing zeros or the rounding noise of multiplying out the step.
+	 */
+	static String label (double value) {
+		return new BigDecimal(value).round(new MathContext(12)).stripTrailingZeros().toPlainString();
+	}
+}
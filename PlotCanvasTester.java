@@ -0,0 +1,116 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+
+/**
+ * Tests for the canvas plot renderer's view arithmetic and drawing.
+ */
+public class PlotCanvasTester {
+	private PlotCanvas _canvas;
+
+	@BeforeEach
+	public void setUp () {
+		_canvas = new PlotCanvas(400, 200, -10, 10, -5, 5, 5);
+	}
+
+	@Test
+	/**
+	 * Verifies that data and screen coordinates convert back and forth, with y growing upwards.
+	 */
+	public void testCoordinates () {
+		assertEquals(0, _canvas.toScreenX(-10), 1e-9);
+		assertEquals(200, _canvas.toScreenX(0), 1e-9);
+		assertEquals(0, _canvas.toScreenY(5), 1e-9);
+		assertEquals(200, _canvas.toScreenY(-5), 1e-9);
+		assertEquals(3.25, _canvas.toDataX(_canvas.toScreenX(3.25)), 1e-9);
+		assertEquals(-1.5, _canvas.toDataY(_canvas.toScreenY(-1.5)), 1e-9);
+	}
+
+	@Test
+	/**
+	 * Verifies that dragging moves the view with the mouse and zooming keeps the point under it fixed.
+	 */
+	public void testPanAndZoom () {
+		_canvas.pan(20, 20);
+		assertEquals(-11, _canvas.getMinX(), 1e-9);
+		assertEquals(9, _canvas.getMaxX(), 1e-9);
+		assertEquals(-4, _canvas.getMinY(), 1e-9);
+
+		final double x = _canvas.toDataX(100), y = _canvas.toDataY(50);
+		_canvas.zoom(0.5, 100, 50);
+		assertEquals(10, _canvas.getMaxX() - _canvas.getMinX(), 1e-9);
+		assertEquals(x, _canvas.toDataX(100), 1e-9);
+		assertEquals(y, _canvas.toDataY(50), 1e-9);
+	}
+
+	@Test
+	/**
+	 * Verifies that the grid interval is kept at the initial view and doubled or halved as the view zooms.
+	 */
+	public void testGridStep () {
+		assertEquals(5, _canvas.gridStep(20, 400), 0);
+		assertEquals(20, _canvas.gridStep(200, 400), 0);
+		assertEquals(0.3125, _canvas.gridStep(1, 400), 0);
+		for (double range = 1e-3; range < 1e6; range *= 1.7) {
+			final double spacing = _canvas.gridStep(range, 400) * 400 / range;
+			assertTrue(spacing >= PlotCanvas.MIN_GRID_SPACING && spacing <= 4 * PlotCanvas.MIN_GRID_SPACING);
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that zooming far in or out keeps the view a span the grid can be drawn across, and that
+	 * a range that cannot be drawn gets no grid step.
+	 */
+	public void testZoomLimits () {
+		assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+			for (int i = 0; i < 2000; i++) {
+				_canvas.zoom(0.5, 100, 50);
+			}
+			final double narrow = _canvas.getMaxX() - _canvas.getMinX();
+			assertTrue(narrow >= PlotCanvas.MIN_SPAN && narrow >= PlotCanvas.MIN_SPAN_ULPS * Math.ulp(_canvas.getMinX()), "span " + narrow);
+			assertTrue(_canvas.getMaxY() - _canvas.getMinY() > 0);
+			assertTrue(_canvas.gridStep(narrow, _canvas.getWidth()) > 0);
+
+			_canvas.setView(1e6, 1e6, -3, -3);
+			assertTrue(_canvas.getMaxX() > _canvas.getMinX());
+			assertTrue(_canvas.getMaxY() > _canvas.getMinY());
+
+			for (int i = 0; i < 2000; i++) {
+				_canvas.zoom(2, 100, 50);
+			}
+			// Centered again on the widest span, the ends may round a few units in the last place wider.
+			assertTrue(_canvas.getMaxX() - _canvas.getMinX() <= PlotCanvas.MAX_SPAN * (1 + 1e-12));
+			assertTrue(_canvas.gridStep(_canvas.getMaxX() - _canvas.getMinX(), _canvas.getWidth()) > 0);
+		});
+		assertTrue(Double.isNaN(_canvas.gridStep(0, 400)));
+		assertTrue(Double.isNaN(_canvas.gridStep(-1, 400)));
+		assertTrue(Double.isNaN(_canvas.gridStep(1, 0)));
+		assertTrue(Double.isNaN(_canvas.gridStep(Double.POSITIVE_INFINITY, 400)));
+		assertThrows(IllegalArgumentException.class, () -> _canvas.setView(0, Double.NaN, 0, 1));
+	}
+
+	@Test
+	/**
+	 * Verifies that grid labels do not show the rounding noise of multiplying out the step.
+	 */
+	public void testLabel () {
+		assertEquals("5", PlotCanvas.label(5));
+		assertEquals("-0.3", PlotCanvas.label(3 * -0.1));
+		assertEquals("0.625", PlotCanvas.label(0.625));
+	}
+
+	@Test
+	/**
+	 * Verifies that a million-point series with breaks draws without creating per-point objects.
+	 */
+	public void testDrawsLargeSeries () {
+		final int count = 1_000_000;
+		final Samples samples = new Samples(count);
+		for (int i = 0; i < count; i++) {
+			final double x = -10 + 20.0 * i / (count - 1);
+			samples.add(x, i % 100_000 == 0 ? Double.NaN : Math.sin(x));
+		}
+		_canvas.setSeries(List.of(samples, samples), List.of(javafx.scene.paint.Color.RED, javafx.scene.paint.Color.BLUE));
+	}
+}
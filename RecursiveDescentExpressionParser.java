@@ -0,0 +1,352 @@
+import java.util.regex.*;
+/*
+* Grammar (same language as SimpleExpressionParser):
+* S -> A
+* A -> M (+M | -M)*
+* M -> E (*E | /E)*
+* E -> P^E | P | log(P)
+* P -> (S) | L | V
+* L -> <float>
+* V -> x, or any of the variables the parser was created with
+*/
+/**
+ * A recursive descent expression parser that accepts the same language as SimpleExpressionParser
+ * and builds exactly the same trees, but tokenizes the input once and parses it in a single
+ * left-to-right pass. Addition, subtraction, multiplication and division are parsed with loops
+ * (left associative) and exponentiation by right recursion (right associative), so the running
+ * time is linear in the length of the input, whether or not the input is valid.
+ *
+ * When parsing fails, the thrown ExpressionParseException reports the offset of the offending
+ * character in the original (unstripped) input.
+ *
+ * A parser may be created with a list of variable names, such as "x", "y", "t", in place of x alone.
+ * Each name is resolved to its index in the list while parsing, and the VariableExpression made for it
+ * reads that slot of the environment given to Expression.evaluateAt(double[]). Where names overlap, the
+ * longest one that matches is read; spaces are removed first, as always, so "x y" reads as "xy".
+ */
+public class RecursiveDescentExpressionParser implements ExpressionParser {
+
+	protected static final byte LITERAL = 0, VARIABLE = 1, LOG = 2, PLUS = 3, MINUS = 4, TIMES = 5, DIVIDE = 6, POWER = 7, LEFT = 8, RIGHT = 9, END = 10;
+
+	// The literal syntax accepted by SimpleExpressionParser.parseLiteralExpression, with the hexadecimal
+	// alternative moved first so that a prefix match never stops at the leading "0" of "0x1p3".
+	private static final String DIGITS = "(\\p{Digit}+)";
+	private static final String HEX_DIGITS = "(\\p{XDigit}+)";
+	private static final String EXP = "[eE][+-]?" + DIGITS;
+	private static final Pattern LITERAL_PATTERN = Pattern.compile(
+		"[\\x00-\\x20]*[+-]?(NaN|Infinity|(" +
+		"(((0[xX]" + HEX_DIGITS + "(\\.)?)|(0[xX]" + HEX_DIGITS + "?(\\.)" + HEX_DIGITS + "))[pP][+-]?" + DIGITS + ")|" +
+		"(" + DIGITS + "(\\.)?(" + DIGITS + "?)(" + EXP + ")?)|" +
+		"(\\.(" + DIGITS + ")(" + EXP + ")?)" +
+		")[fFdD]?)[\\x00-\\x20]*");
+	private static final Pattern NAME_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z_0-9]*");
+
+	private final String[] variables;
+
+	/**
+	 * The token stream of a single call to parse. Spaces are removed up front, exactly as
+	 * SimpleExpressionParser does, but every remaining character remembers its offset in the
+	 * original input so that errors can point at it.
+	 */
+	protected static class Tokens {
+		final String original;
+		final String text;
+		final int[] offsets;
+		byte[] types;
+		int[] starts;
+		int[] ends;
+		int count;
+		int position;
+
+		Tokens (String original) {
+			this.original = original;
+			final StringBuilder builder = new StringBuilder(original.length());
+			offsets = new int[original.length() + 1];
+			for (int i = 0; i < original.length(); i++) {
+				if (original.charAt(i) != ' ') {
+					offsets[builder.length()] = i;
+					builder.append(original.charAt(i));
+				}
+			}
+			offsets[builder.length()] = original.length();
+			text = builder.toString();
+			types = new byte[8];
+			starts = new int[8];
+			ends = new int[8];
+		}
+
+		void add (byte type, int start, int end) {
+			if (count == types.length) {
+				types = java.util.Arrays.copyOf(types, count * 2);
+				starts = java.util.Arrays.copyOf(starts, count * 2);
+				ends = java.util.Arrays.copyOf(ends, count * 2);
+			}
+			types[count] = type;
+			starts[count] = start;
+			ends[count] = end;
+			count++;
+		}
+
+		byte peek () {
+			return types[position];
+		}
+
+		String textOf (int token) {
+			return text.substring(starts[token], ends[token]);
+		}
+
+		ExpressionParseException error (int token) {
+			final int offset = offsets[starts[token]];
+			final String found = types[token] == END ? "end of input" : "'" + textOf(token) + "'";
+			return new ExpressionParseException("Cannot parse expression: unexpected " + found + " at offset " + offset + " in " + original, offset);
+		}
+	}
+
+	/**
+	 * Creates a parser whose only variable is x.
+	 */
+	public RecursiveDescentExpressionParser () {
+		this("x");
+	}
+
+	/**
+	 * Creates a parser for expressions of the specified variables.
+	 * @param variables the names of the variables, in order of slot; the first must be x, since the
+	 * single-variable methods (evaluate(x), differentiate and the rest) take slot 0 to be x
+	 * @throws IllegalArgumentException if the first name is not x, or a name is repeated, is not a letter
+	 * or underscore followed by letters, digits and underscores, or starts with log, NaN or Infinity,
+	 * which would make it ambiguous
+	 */
+	public RecursiveDescentExpressionParser (String... variables) {
+		if (variables.length == 0 || !variables[0].equals("x")) {
+			throw new IllegalArgumentException("The first variable, slot 0, must be x, not " + (variables.length == 0 ? "none" : "'" + variables[0] + "'"));
+		}
+		for (int i = 0; i < variables.length; i++) {
+			final String name = variables[i];
+			if (!NAME_PATTERN.matcher(name).matches() || name.startsWith("log") || name.startsWith("NaN") || name.startsWith("Infinity")) {
+				throw new IllegalArgumentException("Invalid variable name '" + name + "'");
+			}
+			for (int j = 0; j < i; j++) {
+				if (variables[j].equals(name)) {
+					throw new IllegalArgumentException("Variable '" + name + "' is listed twice");
+				}
+			}
+		}
+		this.variables = variables.clone();
+	}
+
+	/**
+	 * @return the names of the variables, in order of slot
+	 */
+	public String[] getVariables () {
+		return variables.clone();
+	}
+
+	/**
+	 * Attempts to create an expression tree from the specified String.
+	 * Throws a ExpressionParseException if the specified string cannot be parsed.
+	 *
+	 * @param str the string to parse into an expression tree
+	 * @return the Expression object representing the parsed expression tree
+	 */
+	public Expression parse (String str) throws ExpressionParseException {
+		final ExpressionEvents.ParseEvent event = ExpressionEvents.beginParse();
+		Tokens tokens = null;
+		Expression expression = null;
+		try {
+			tokens = tokenize(str);
+			expression = parseExpression(tokens);
+			if (tokens.peek() != END) {
+				expression = null;
+				throw tokens.error(tokens.position);
+			}
+			return expression;
+		} catch (StackOverflowError soe) {
+			throw new ExpressionParseException("Cannot parse expression: nested too deeply at offset " + tokens.offsets[tokens.starts[tokens.position]] + " in " + str,
+				tokens.offsets[tokens.starts[tokens.position]]);
+		} finally {
+			ExpressionEvents.endParse(event, this, str, expression, tokens == null ? 0 : tokens.position);
+		}
+	}
+
+	/**
+	 * Splits the specified string into tokens in a single pass. A '+' or '-' is read as the sign of a
+	 * literal (as in "2*-3") only where an operand is expected and a literal actually follows it.
+	 * @param str the string to tokenize
+	 * @return the tokens, terminated by an END token
+	 * @throws ExpressionParseException if the string contains a character that cannot start any token
+	 */
+	protected Tokens tokenize (String str) throws ExpressionParseException {
+		final Tokens tokens = new Tokens(str);
+		final String text = tokens.text;
+		final Matcher matcher = LITERAL_PATTERN.matcher(text);
+		boolean expectOperand = true;
+		int i = 0;
+		while (i < text.length()) {
+			final char c = text.charAt(i);
+			final boolean signed = c == '+' || c == '-';
+			if ((!signed || expectOperand) && (signed || c == '.' || c == 'N' || c == 'I' || c <= ' ' || Character.isDigit(c))
+					&& matcher.region(i, text.length()).lookingAt()) {
+				tokens.add(LITERAL, i, matcher.end());
+				i = matcher.end();
+				expectOperand = false;
+				continue;
+			}
+			final byte type;
+			int end = i + 1;
+			switch (c) {
+				case '+': type = PLUS; break;
+				case '-': type = MINUS; break;
+				case '*': type = TIMES; break;
+				case '/': type = DIVIDE; break;
+				case '^': type = POWER; break;
+				case '(': type = LEFT; break;
+				case ')': type = RIGHT; break;
+				default:
+					if (text.startsWith("log", i)) {
+						type = LOG;
+						end = i + 3;
+						break;
+					}
+					final int slot = variableAt(text, i);
+					if (slot >= 0) {
+						type = VARIABLE;
+						end = i + variables[slot].length();
+						break;
+					}
+					final int offset = tokens.offsets[i];
+					throw new ExpressionParseException("Cannot parse expression: unexpected '" + c + "' at offset " + offset + " in " + str, offset);
+			}
+			tokens.add(type, i, end);
+			i = end;
+			expectOperand = type != VARIABLE && type != RIGHT;
+		}
+		tokens.add(END, text.length(), text.length());
+		return tokens;
+	}
+
+	/**
+	 * Returns the slot of the longest variable name that text has at offset i, or -1 if none.
+	 */
+	private int variableAt (String text, int i) {
+		int slot = -1;
+		for (int v = 0; v < variables.length; v++) {
+			if (text.startsWith(variables[v], i) && (slot < 0 || variables[v].length() > variables[slot].length())) {
+				slot = v;
+			}
+		}
+		return slot;
+	}
+
+	/**
+	 * Returns the slot of a variable name, which the tokenizer has matched.
+	 */
+	private int slotOf (String name) {
+		for (int v = 0; ; v++) {
+			if (variables[v].equals(name)) {
+				return v;
+			}
+		}
+	}
+
+	/**
+	 * Parses the starting symbol for the production rules of the CFG.
+	 * @param tokens the tokens being parsed, positioned at the start of the expression
+	 * @return the parsed expression
+	 * @throws ExpressionParseException if no expression starts at the current token
+	 */
+	protected Expression parseExpression (Tokens tokens) throws ExpressionParseException {
+		// S -> A
+		return parseAdditiveExpression(tokens);
+	}
+
+	/**
+	 * Parses a chain of additions and subtractions, grouping them to the left.
+	 * @param tokens the tokens being parsed
+	 * @return the parsed expression
+	 * @throws ExpressionParseException if an operand is missing or malformed
+	 */
+	protected Expression parseAdditiveExpression (Tokens tokens) throws ExpressionParseException {
+		// A -> M (+M | -M)*
+		Expression expression = parseMultiplicativeExpression(tokens);
+		while (tokens.peek() == PLUS || tokens.peek() == MINUS) {
+			final boolean subtraction = tokens.types[tokens.position++] == MINUS;
+			expression = new AdditiveExpression(expression, parseMultiplicativeExpression(tokens), subtraction);
+		}
+		return expression;
+	}
+
+	/**
+	 * Parses a chain of multiplications and divisions, grouping them to the left.
+	 * @param tokens the tokens being parsed
+	 * @return the parsed expression
+	 * @throws ExpressionParseException if an operand is missing or malformed
+	 */
+	protected Expression parseMultiplicativeExpression (Tokens tokens) throws ExpressionParseException {
+		// M -> E (*E | /E)*
+		Expression expression = parseExponentialExpression(tokens);
+		while (tokens.peek() == TIMES || tokens.peek() == DIVIDE) {
+			final boolean division = tokens.types[tokens.position++] == DIVIDE;
+			expression = new MultiplicativeExpression(expression, parseExponentialExpression(tokens), division);
+		}
+		return expression;
+	}
+
+	/**
+	 * Parses exponential and logarithmic expressions. Exponentiation groups to the right.
+	 * @param tokens the tokens being parsed
+	 * @return the parsed expression
+	 * @throws ExpressionParseException if an operand is missing or malformed
+	 */
+	protected Expression parseExponentialExpression (Tokens tokens) throws ExpressionParseException {
+		// E -> P^E | P | log(P)
+		if (tokens.peek() == LOG) {
+			tokens.position++;
+			if (tokens.peek() != LEFT) {
+				throw tokens.error(tokens.position);
+			}
+			return new LogarithmicExpression(parseParentheticalExpression(tokens));
+		}
+		final Expression base = parseParentheticalExpression(tokens);
+		if (tokens.peek() == POWER) {
+			tokens.position++;
+			return new ExponentialExpression(base, parseExponentialExpression(tokens));
+		}
+		return base;
+	}
+
+	/**
+	 * Parses a parenthetical expression, a literal or a variable.
+	 * @param tokens the tokens being parsed
+	 * @return the parsed expression
+	 * @throws ExpressionParseException if the current token cannot start a primary expression
+	 */
+	protected Expression parseParentheticalExpression (Tokens tokens) throws ExpressionParseException {
+		// P -> (S) | L | V
+		final int token = tokens.position;
+		switch (tokens.peek()) {
+			case LITERAL:
+				tokens.position++;
+				return new LiteralExpression(tokens.textOf(token));
+			case VARIABLE:
+				tokens.position++;
+				final String name = tokens.textOf(token);
+				return new VariableExpression(name, slotOf(name));
+			case LEFT:
+				tokens.position++;
+				final Expression expression = parseExpression(tokens);
+				if (tokens.peek() != RIGHT) {
+					throw tokens.error(tokens.position);
+				}
+				tokens.position++;
+				return new ParentheticalExpression(expression);
+			default:
+				throw tokens.error(token);
+		}
+	}
+
+	public static void main (String[] args) throws ExpressionParseException {
+		final ExpressionParser parser = new RecursiveDescentExpressionParser();
+		System.out.println(parser.parse("10*x^3 + 2*(15+x)").convertToString(0));
+	}
+}
@@ -0,0 +1,90 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.io.*;
+
+/**
+ * Runs the Project 4 tests against RecursiveDescentExpressionParser and checks that it builds the
+ * same trees as SimpleExpressionParser.
+ */
+public class RecursiveDescentExpressionParserTester extends ExpressionParserTester {
+	private static final String[] ATOMS = { "x", "2", "13", "0.5", ".5", "1.", "1e3", "2.5E-2", "-3", "+4", "0x1p3", "7f", "NaN" };
+	private static final String ALPHABET = "x12.e+-*/^()log ";
+
+	@BeforeEach
+	@Override
+	public void setUp () throws IOException {
+		_parser = new RecursiveDescentExpressionParser();
+	}
+
+	static String randomExpression (Random random, int depth) {
+		if (depth == 0 || random.nextInt(4) == 0) {
+			return ATOMS[random.nextInt(ATOMS.length)];
+		}
+		switch (random.nextInt(7)) {
+			case 0: return randomExpression(random, depth - 1) + " + " + randomExpression(random, depth - 1);
+			case 1: return randomExpression(random, depth - 1) + "-" + randomExpression(random, depth - 1);
+			case 2: return randomExpression(random, depth - 1) + "*" + randomExpression(random, depth - 1);
+			case 3: return randomExpression(random, depth - 1) + "/" + randomExpression(random, depth - 1);
+			case 4: return randomExpression(random, depth - 1) + "^" + randomExpression(random, depth - 1);
+			case 5: return "log(" + randomExpression(random, depth - 1) + ")";
+			default: return "(" + randomExpression(random, depth - 1) + ")";
+		}
+	}
+
+	static String parseTree (ExpressionParser parser, String str) {
+		try {
+			return parser.parse(str).convertToString(0);
+		} catch (ExpressionParseException epe) {
+			return null;
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that random well-formed and malformed inputs produce the same trees (or failures) as the backtracking parser.
+	 */
+	public void testSameTreesAsSimpleParser () {
+		final ExpressionParser simple = new SimpleExpressionParser();
+		final Random random = new Random(4);
+		for (int i = 0; i < 500; i++) {
+			final String str = randomExpression(random, 3);
+			assertEquals(parseTree(simple, str), parseTree(_parser, str), str);
+		}
+		for (int i = 0; i < 2000; i++) {
+			final StringBuilder str = new StringBuilder();
+			for (int j = random.nextInt(8); j >= 0; j--) {
+				str.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+			}
+			assertEquals(parseTree(simple, str.toString()), parseTree(_parser, str.toString()), str.toString());
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that a parse failure reports the offset of the offending character in the original input.
+	 */
+	public void testErrorOffset () {
+		final ExpressionParseException missingOperand = assertThrows(ExpressionParseException.class, () -> _parser.parse("1 + 2 +"));
+		assertEquals(7, missingOperand.getErrorOffset());
+		final ExpressionParseException badCharacter = assertThrows(ExpressionParseException.class, () -> _parser.parse("2 * y"));
+		assertEquals(4, badCharacter.getErrorOffset());
+		final ExpressionParseException unclosed = assertThrows(ExpressionParseException.class, () -> _parser.parse("(x+1))"));
+		assertEquals(5, unclosed.getErrorOffset());
+	}
+
+	@Test
+	/**
+	 * Verifies that long valid and invalid inputs are parsed in linear time.
+	 */
+	public void testLongInput () throws ExpressionParseException {
+		final StringBuilder str = new StringBuilder("x");
+		for (int i = 0; i < 20000; i++) {
+			str.append(i % 2 == 0 ? "+2*x" : "-(x/3)^2");
+		}
+		assertTimeoutPreemptively(java.time.Duration.ofSeconds(5), () -> {
+			assertNotNull(_parser.parse(str.toString()));
+			assertThrows(ExpressionParseException.class, () -> _parser.parse(str + "+"));
+		});
+	}
+}
@@ -0,0 +1,126 @@
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+/**
+ * Runs rendering work -- parsing, differentiating, sampling -- on a background thread and hands the
+ * results back through a publishing executor, normally Platform::runLater, so the JavaFX Application
+ * Thread never waits on an expression.
+ *
+ * Only the latest request matters. Submitting a job cancels every earlier one: a job that has not
+ * started yet is dropped, so a burst of scroll or drag events coalesces into a single recompute, and
+ * a running job sees its cancelled flag turn true and is never published even if it finishes anyway.
+ *
+ * The worker is a daemon platform thread; virtual threads are not available on the Java 17 runtime
+ * this application targets.
+ */
+public class RenderPipeline {
+	/**
+	 * A unit of rendering work.
+	 * @param <R> the type of the result
+	 */
+	@FunctionalInterface
+	public interface Job<R> {
+		/**
+		 * Does the work. Long jobs should poll cancelled and return early once it is true;
+		 * whatever they return then is discarded.
+		 * @param cancelled tells whether a newer job has been submitted since this one
+		 * @return the result to publish
+		 * @throws Exception if the work fails; the exception is published instead
+		 */
+		R run (BooleanSupplier cancelled) throws Exception;
+	}
+
+	private final Executor publisher;
+	private final ExecutorService worker;
+	private final AtomicLong generation = new AtomicLong();
+	private final AtomicReference<Runnable> pending = new AtomicReference<>();
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	/**
+	 * @param publisher runs result callbacks, e.g. Platform::runLater
+	 */
+	public RenderPipeline (Executor publisher) {
+		this.publisher = publisher;
+		this.worker = Executors.newSingleThreadExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "render-pipeline");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Submits a job, cancelling all earlier ones. Exactly one of onResult and onError is run on the
+	 * publisher, and only if no newer job has been submitted by then.
+	 * @param job the work to do in the background
+	 * @param onResult receives the job's result
+	 * @param onError receives the exception the job threw, or an ExecutionException wrapping the Error it threw
+	 * @param <R> the type of the result
+	 */
+	public <R> void submit (Job<R> job, Consumer<? super R> onResult, Consumer<? super Exception> onError) {
+		final long id = generation.incrementAndGet();
+		final BooleanSupplier cancelled = () -> generation.get() != id;
+		pending.set(() -> {
+			if (cancelled.getAsBoolean()) {
+				return;
+			}
+			try {
+				final R result = job.run(cancelled);
+				publish(cancelled, () -> onResult.accept(result));
+			} catch (Exception e) {
+				publish(cancelled, () -> onError.accept(e));
+			} catch (Error e) {
+				// A StackOverflowError from a very deep expression must not stop the pipeline for good.
+				publish(cancelled, () -> onError.accept(new ExecutionException(e)));
+			}
+		});
+		if (draining.compareAndSet(false, true)) {
+			worker.execute(this::drain);
+		}
+	}
+
+	/**
+	 * Cancels every job submitted so far.
+	 */
+	public void cancel () {
+		generation.incrementAndGet();
+		pending.set(null);
+	}
+
+	/**
+	 * Cancels every job and stops the background thread.
+	 */
+	public void shutdown () {
+		cancel();
+		worker.shutdownNow();
+	}
+
+	private void publish (BooleanSupplier cancelled, Runnable callback) {
+		if (!cancelled.getAsBoolean()) {
+			publisher.execute(() -> {
+				if (!cancelled.getAsBoolean()) {
+					callback.run();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Runs the latest pending job until none is left. Jobs replaced before they were taken never run.
+	 */
+	private void drain () {
+		while (true) {
+			try {
+				Runnable job;
+				while ((job = pending.getAndSet(null)) != null) {
+					job.run();
+				}
+			} finally {
+				draining.set(false);
+			}
+			if (pending.get() == null || !draining.compareAndSet(false, true)) {
+				return;
+			}
+		}
+	}
+}
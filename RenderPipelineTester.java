@@ -0,0 +1,106 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Tests for the background rendering pipeline.
+ */
+public class RenderPipelineTester {
+	private final BlockingQueue<Runnable> _published = new LinkedBlockingQueue<>();
+	private RenderPipeline _pipeline;
+
+	@BeforeEach
+	public void setUp () {
+		_pipeline = new RenderPipeline(_published::add);
+	}
+
+	@AfterEach
+	public void tearDown () {
+		_pipeline.shutdown();
+	}
+
+	@Test
+	/**
+	 * Verifies that a burst of submissions behind a running job coalesces into one more run, and only the last result is published.
+	 */
+	public void testBurstCoalescesToLatest () throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final AtomicInteger runs = new AtomicInteger();
+		final List<Integer> results = new ArrayList<>();
+
+		_pipeline.submit(cancelled -> {
+			runs.incrementAndGet();
+			started.countDown();
+			release.await();
+			return -1;
+		}, results::add, e -> fail(e));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 100; i++) {
+			final int value = i;
+			_pipeline.submit(cancelled -> {
+				runs.incrementAndGet();
+				return value;
+			}, results::add, e -> fail(e));
+		}
+		release.countDown();
+
+		final Runnable callback = _published.poll(5, TimeUnit.SECONDS);
+		assertNotNull(callback);
+		callback.run();
+		assertNull(_published.poll(200, TimeUnit.MILLISECONDS));
+		assertEquals(List.of(99), results);
+		assertEquals(2, runs.get());
+	}
+
+	@Test
+	/**
+	 * Verifies that a result that is already queued for publishing is dropped once a newer job is submitted.
+	 */
+	public void testStaleResultIsNotPublished () throws InterruptedException {
+		final List<String> results = new ArrayList<>();
+		_pipeline.submit(cancelled -> "stale", results::add, e -> fail(e));
+		final Runnable stale = _published.poll(5, TimeUnit.SECONDS);
+		_pipeline.submit(cancelled -> "fresh", results::add, e -> fail(e));
+		final Runnable fresh = _published.poll(5, TimeUnit.SECONDS);
+		stale.run();
+		fresh.run();
+		assertEquals(List.of("fresh"), results);
+	}
+
+	@Test
+	/**
+	 * Verifies that an exception thrown by a job is published to the error callback.
+	 */
+	public void testErrorIsPublished () throws InterruptedException {
+		final List<Exception> errors = new ArrayList<>();
+		_pipeline.submit(cancelled -> new RecursiveDescentExpressionParser().parse("2*"), result -> fail("parsed"), errors::add);
+		_published.poll(5, TimeUnit.SECONDS).run();
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0) instanceof ExpressionParseException);
+	}
+
+	@Test
+	/**
+	 * Verifies that an Error thrown by a job is published wrapped, and that later jobs still run.
+	 */
+	public void testErrorDoesNotStopPipeline () throws InterruptedException {
+		final List<Exception> errors = new ArrayList<>();
+		final List<String> results = new ArrayList<>();
+		_pipeline.submit(cancelled -> {
+			throw new StackOverflowError();
+		}, result -> fail("returned"), errors::add);
+		_published.poll(5, TimeUnit.SECONDS).run();
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0) instanceof ExecutionException);
+		assertTrue(errors.get(0).getCause() instanceof StackOverflowError);
+
+		_pipeline.submit(cancelled -> "next", results::add, e -> fail(e));
+		final Runnable published = _published.poll(5, TimeUnit.SECONDS);
+		assertNotNull(published);
+		published.run();
+		assertEquals(List.of("next"), results);
+	}
+}
@@ -0,0 +1,235 @@
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
+
+/**
+ * Samples the visible part of a curve at screen resolution from fixed-width tiles of x that are kept in
+ * an LRU cache. At zoom level z, points are 2^z apart in x -- the largest power of two no wider than a
+ * pixel -- and tile t covers [t*w, (t+1)*w) where w = TILE_POINTS * 2^z. Tiles are keyed by (curve,
+ * zoom level, tile index), so panning back and forth, or zooming back to a previous level, reuses the
+ * tiles already sampled instead of evaluating the curve again; only tiles that scroll into view are new.
+ *
+ * Within a tile the curve is sampled adaptively from one point per pixel, refining only where it bends
+ * by more than half a pixel of y, so discontinuities are still broken rather than joined. That
+ * tolerance is likewise rounded down to a power of two, its y level, which is part of the tile key:
+ * tiles refined for one y scale are not reused for a view that needs them finer.
+ *
+ * Given the curve's expression, tiles are also sampled with interval enclosures (see AdaptiveSampler),
+ * and a missing tile whose enclosure lies wholly above or below the view is not sampled at all: it is
+ * drawn as a break between its two end points, and not cached, since another view may show it.
+ *
+ * The points a tile starts from are evaluated through a SubtreeColumnCache, so a curve whose
+ * expression was edited only recomputes, at those points, the nodes the edit changed. Key curves by
+ * their expression, which compares structurally, to have an edit that restores an earlier curve find
+ * its tiles again.
+ */
+public class SampleTileCache {
+	public static final int TILE_POINTS = 128;
+	private static final int MAX_REFINEMENT_DEPTH = 10;
+	/** How many subtree columns to keep per tile, on average. */
+	private static final int COLUMNS_PER_TILE = 16;
+
+	private final int capacity;
+	private final LinkedHashMap<TileKey, Samples> tiles;
+	private final SubtreeColumnCache columns;
+	private long hits, misses;
+
+	/**
+	 * Identifies a tile.
+	 */
+	private static final class TileKey {
+		final Object curve;
+		final int level, yLevel;
+		final long index;
+
+		TileKey (Object curve, int level, int yLevel, long index) {
+			this.curve = curve;
+			this.level = level;
+			this.yLevel = yLevel;
+			this.index = index;
+		}
+
+		@Override
+		public boolean equals (Object other) {
+			if (!(other instanceof TileKey)) {
+				return false;
+			}
+			final TileKey key = (TileKey) other;
+			return level == key.level && yLevel == key.yLevel && index == key.index && curve.equals(key.curve);
+		}
+
+		@Override
+		public int hashCode () {
+			return ((curve.hashCode() * 31 + level) * 31 + yLevel) * 31 + Long.hashCode(index);
+		}
+	}
+
+	/**
+	 * @param capacity the most tiles to keep; the least recently used tile is evicted beyond that
+	 */
+	public SampleTileCache (int capacity) {
+		this.capacity = capacity;
+		this.columns = new SubtreeColumnCache(COLUMNS_PER_TILE * capacity);
+		this.tiles = new LinkedHashMap<TileKey, Samples>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<TileKey, Samples> eldest) {
+				return size() > SampleTileCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the zoom level whose point spacing, 2^level, is the widest power of two that is still no
+	 * wider than one pixel of the specified view.
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param pixelWidth how many pixels wide the view is drawn
+	 * @return the zoom level
+	 */
+	public static int zoomLevel (double minX, double maxX, int pixelWidth) {
+		return Math.getExponent((maxX - minX) / pixelWidth);
+	}
+
+	/**
+	 * Samples the specified curve across [minX, maxX] at the resolution of the view. With no y range to
+	 * go by, the curve is refined to within one x spacing in y, as if the view were as tall as it is wide.
+	 * @param curve identifies the curve; equal keys must mean equal functions
+	 * @param function the curve; may be called from several threads at once
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param pixelWidth how many pixels wide the view is drawn
+	 * @return the sampled points, covering at least [minX, maxX]
+	 */
+	public Samples sample (Object curve, DoubleUnaryOperator function, double minX, double maxX, int pixelWidth) {
+		return sample(curve, function, null, minX, maxX, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, pixelWidth, 0);
+	}
+
+	/**
+	 * Returns the y level of a view: the exponent of the largest power of two no greater than half of
+	 * one pixel's worth of y, the tolerance tiles are refined to.
+	 * @param minY the bottom of the view
+	 * @param maxY the top of the view
+	 * @param pixelHeight how many pixels tall the view is drawn
+	 * @return the y level
+	 */
+	public static int yLevel (double minY, double maxY, int pixelHeight) {
+		return Math.getExponent((maxY - minY) / pixelHeight / 2);
+	}
+
+	/**
+	 * Samples the specified curve across [minX, maxX] at the resolution of the view, skipping the tiles
+	 * that the curve's expression proves to lie outside [minY, maxY].
+	 * @param curve identifies the curve; equal keys must mean equal functions
+	 * @param function the curve; may be called from several threads at once
+	 * @param expression the expression the curve computes, or null if there is none
+	 * @param minX the left edge of the view
+	 * @param maxX the right edge of the view
+	 * @param minY the bottom of the view
+	 * @param maxY the top of the view
+	 * @param pixelWidth how many pixels wide the view is drawn
+	 * @param pixelHeight how many pixels tall the view is drawn; ignored if the y range is not finite,
+	 * and the curve refined to within one x spacing in y instead
+	 * @return the sampled points, covering at least [minX, maxX]
+	 */
+	public Samples sample (Object curve, DoubleUnaryOperator function, Expression expression, double minX, double maxX, double minY, double maxY, int pixelWidth, int pixelHeight) {
+		final ExpressionEvents.SampleEvent event = ExpressionEvents.beginSample();
+		final int level = zoomLevel(minX, maxX, pixelWidth);
+		final int yLevel = Double.isFinite(maxY - minY) ? yLevel(minY, maxY, pixelHeight) : level;
+		final double spacing = Math.scalb(1.0, level);
+		final double tileWidth = TILE_POINTS * spacing;
+		final long first = (long) Math.floor(minX / tileWidth);
+		final long last = (long) Math.floor(maxX / tileWidth);
+		final int count = (int) (last - first + 1);
+
+		final Samples[] visible = new Samples[count];
+		final List<Integer> missing = new ArrayList<>();
+		synchronized (tiles) {
+			for (int i = 0; i < count; i++) {
+				visible[i] = tiles.get(new TileKey(curve, level, yLevel, first + i));
+				if (visible[i] == null) {
+					missing.add(i);
+					misses++;
+				} else {
+					hits++;
+				}
+			}
+		}
+
+		final AdaptiveSampler sampler = new AdaptiveSampler(Math.scalb(1.0, yLevel), TILE_POINTS, MAX_REFINEMENT_DEPTH);
+		final boolean[] culled = new boolean[count];
+		IntStream.range(0, missing.size()).parallel().forEach(j -> {
+			final int i = missing.get(j);
+			final double start = (first + i) * tileWidth, end = start + tileWidth;
+			final Interval range = expression == null ? Interval.ENTIRE : expression.evaluateInterval(start, end);
+			if (range.isEmpty() || range.getLo() > maxY || range.getHi() < minY) {
+				culled[i] = true;
+				visible[i] = new Samples(3);
+				visible[i].add(start, function.applyAsDouble(start));
+				visible[i].addBreak();
+				visible[i].add(end, function.applyAsDouble(end));
+			} else if (expression == null) {
+				visible[i] = sampler.sample(function, start, end);
+			} else {
+				final double[] xs = new double[TILE_POINTS + 1];
+				for (int k = 0; k < xs.length; k++) {
+					xs[k] = Sampler.x(start, end, k, xs.length);
+				}
+				visible[i] = sampler.sample(function, expression, start, end, columns.evaluate(expression, level, first + i, xs));
+			}
+		});
+		int culledCount = 0;
+		long points = 0;
+		synchronized (tiles) {
+			for (int i : missing) {
+				if (!culled[i]) {
+					tiles.put(new TileKey(curve, level, yLevel, first + i), visible[i]);
+				} else {
+					culledCount++;
+				}
+				points += visible[i].size();
+			}
+		}
+
+		// Neighbouring tiles share their boundary point, so every tile but the last drops its final one.
+		final Samples samples = new Samples(count * (TILE_POINTS + 1));
+		for (int i = 0; i < count; i++) {
+			final Samples tile = visible[i];
+			final boolean dropLast = i < count - 1 && tile.size() > 0 && !tile.isBreak(tile.size() - 1);
+			final int size = dropLast ? tile.size() - 1 : tile.size();
+			for (int k = 0; k < size; k++) {
+				if (tile.isBreak(k)) {
+					samples.addBreak();
+				} else {
+					samples.add(tile.getX(k), tile.getY(k));
+				}
+			}
+		}
+		ExpressionEvents.endSample(event, curve, minX, maxX, pixelWidth, count, missing.size(), culledCount, points);
+		return samples;
+	}
+
+	/**
+	 * @return the cache of the columns that tiles start from
+	 */
+	public SubtreeColumnCache getColumns () {
+		return columns;
+	}
+
+	/**
+	 * @return how many tile lookups found the tile already sampled
+	 */
+	public long getHits () {
+		synchronized (tiles) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return how many tile lookups had to sample the tile
+	 */
+	public long getMisses () {
+		synchronized (tiles) {
+			return misses;
+		}
+	}
+}
@@ -0,0 +1,125 @@
+import java.util.concurrent.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Samples a function at evenly spaced points of a range, splitting the range into chunks that are
+ * evaluated in parallel on a ForkJoinPool. The i-th point is always min + i*(max - min)/(count - 1),
+ * never an accumulated sum, so the same range and count give bit-for-bit the same x values no
+ * matter how the work was split, and the last point is exactly max. A single point is min.
+ */
+public class Sampler {
+	/** How many points a single task evaluates before it is worth splitting. */
+	private static final int CHUNK_LENGTH = 4 * ColumnScratch.COLUMN_LENGTH;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a sampler that runs on the common pool, i.e., on all cores.
+	 */
+	public Sampler () {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool the pool to run sampling tasks on
+	 */
+	public Sampler (ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Returns the i-th of count evenly spaced points from min to max, or min if count is 1.
+	 * @param min the first point
+	 * @param max the last point
+	 * @param i which point
+	 * @param count how many points there are
+	 * @return the point
+	 */
+	public static double x (double min, double max, int i, int count) {
+		if (count == 1) {
+			return min;
+		}
+		if (i == count - 1) {
+			return max;
+		}
+		return min + i * ((max - min) / (count - 1));
+	}
+
+	/**
+	 * Samples the specified expression at xs.length evenly spaced points from min to max, using batch evaluation.
+	 * @param expression the expression to sample
+	 * @param min the first x value
+	 * @param max the last x value
+	 * @param xs where to store the x values
+	 * @param ys where to store the value of the expression at each x; at least xs.length long
+	 */
+	public void sample (Expression expression, double min, double max, double[] xs, double[] ys) {
+		pool.invoke(new SampleTask(expression, null, min, max, xs, ys, 0, xs.length));
+	}
+
+	/**
+	 * Samples the specified function -- for example an ExpressionCompiler result -- at xs.length evenly
+	 * spaced points from min to max. The function is called from several threads at once.
+	 * @param function the function to sample
+	 * @param min the first x value
+	 * @param max the last x value
+	 * @param xs where to store the x values
+	 * @param ys where to store the value of the function at each x; at least xs.length long
+	 */
+	public void sample (DoubleUnaryOperator function, double min, double max, double[] xs, double[] ys) {
+		pool.invoke(new SampleTask(null, function, min, max, xs, ys, 0, xs.length));
+	}
+
+	/**
+	 * Samples the points [from, to), halving the range until it is a single chunk.
+	 */
+	private static class SampleTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Expression expression;
+		private final DoubleUnaryOperator function;
+		private final double min, max;
+		private final double[] xs, ys;
+		private final int from, to;
+
+		SampleTask (Expression expression, DoubleUnaryOperator function, double min, double max, double[] xs, double[] ys, int from, int to) {
+			this.expression = expression;
+			this.function = function;
+			this.min = min;
+			this.max = max;
+			this.xs = xs;
+			this.ys = ys;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute () {
+			if (to - from > CHUNK_LENGTH) {
+				final int middle = (from + to) >>> 1;
+				invokeAll(new SampleTask(expression, function, min, max, xs, ys, from, middle),
+					new SampleTask(expression, function, min, max, xs, ys, middle, to));
+				return;
+			}
+			final int count = xs.length;
+			for (int i = from; i < to; i++) {
+				xs[i] = x(min, max, i, count);
+			}
+			if (function != null) {
+				for (int i = from; i < to; i++) {
+					ys[i] = function.applyAsDouble(xs[i]);
+				}
+				return;
+			}
+			final ColumnScratch scratch = new ColumnScratch();
+			final double[] xColumn = scratch.push();
+			final double[] column = scratch.push();
+			for (int offset = from; offset < to; offset += ColumnScratch.COLUMN_LENGTH) {
+				final int length = Math.min(ColumnScratch.COLUMN_LENGTH, to - offset);
+				System.arraycopy(xs, offset, xColumn, 0, length);
+				expression.evaluateColumn(xColumn, column, length, scratch);
+				System.arraycopy(column, 0, ys, offset, length);
+			}
+		}
+	}
+}
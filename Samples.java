@@ -0,0 +1,117 @@
+import java.util.Arrays;
+
+/**
+ * A growable series of sampled (x, y) points stored in primitive arrays. A point whose x is NaN is a
+ * break: the curve is not continuous there and must not be drawn across it.
+ */
+public class Samples {
+	private double[] xs;
+	private double[] ys;
+	private int size;
+
+	public Samples () {
+		this(64);
+	}
+
+	/**
+	 * @param capacity how many points to make room for up front
+	 */
+	public Samples (int capacity) {
+		xs = new double[Math.max(capacity, 1)];
+		ys = new double[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Wraps already sampled points. Non-finite y values are turned into breaks.
+	 * @param xs the x values
+	 * @param ys the y values
+	 * @param size how many of the points to use
+	 * @return the samples
+	 */
+	public static Samples of (double[] xs, double[] ys, int size) {
+		final Samples samples = new Samples(size);
+		for (int i = 0; i < size; i++) {
+			samples.add(xs[i], ys[i]);
+		}
+		return samples;
+	}
+
+	/**
+	 * Appends a point, or a break if y is not finite.
+	 * @param x the x value
+	 * @param y the y value
+	 */
+	public void add (double x, double y) {
+		if (!Double.isFinite(y)) {
+			addBreak();
+			return;
+		}
+		if (size == xs.length) {
+			xs = Arrays.copyOf(xs, size * 2);
+			ys = Arrays.copyOf(ys, size * 2);
+		}
+		xs[size] = x;
+		ys[size] = y;
+		size++;
+	}
+
+	/**
+	 * Appends a break, unless the series is empty or already ends with one.
+	 */
+	public void addBreak () {
+		if (size == 0 || isBreak(size - 1)) {
+			return;
+		}
+		if (size == xs.length) {
+			xs = Arrays.copyOf(xs, size * 2);
+			ys = Arrays.copyOf(ys, size * 2);
+		}
+		xs[size] = Double.NaN;
+		ys[size] = Double.NaN;
+		size++;
+	}
+
+	/**
+	 * Appends all points of another series.
+	 * @param other the series to append
+	 */
+	public void addAll (Samples other) {
+		for (int i = 0; i < other.size; i++) {
+			if (other.isBreak(i)) {
+				addBreak();
+			} else {
+				add(other.xs[i], other.ys[i]);
+			}
+		}
+	}
+
+	public int size () {
+		return size;
+	}
+
+	public double getX (int i) {
+		return xs[i];
+	}
+
+	public double getY (int i) {
+		return ys[i];
+	}
+
+	public boolean isBreak (int i) {
+		return Double.isNaN(xs[i]);
+	}
+
+	/**
+	 * @return the backing array of x values; only the first size() are meaningful
+	 */
+	public double[] xs () {
+		return xs;
+	}
+
+	/**
+	 * @return the backing array of y values; only the first size() are meaningful
+	 */
+	public double[] ys () {
+		return ys;
+	}
+}
@@ -0,0 +1,115 @@
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.*;
+import java.util.*;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Tests for the samplers that feed the graph.
+ */
+public class SamplingTester {
+	private final ExpressionParser _parser = new RecursiveDescentExpressionParser();
+
+	private DoubleUnaryOperator function (String str) throws ExpressionParseException {
+		return _parser.parse(str)::evaluate;
+	}
+
+	@Test
+	/**
+	 * Verifies that a straight line is not refined at all.
+	 */
+	public void testAdaptiveLineUsesFewPoints () throws ExpressionParseException {
+		final Samples samples = AdaptiveSampler.forViewport(-10, 10, 345).sample(function("2*x+1"), -10, 10);
+		assertEquals(65, samples.size());
+	}
+
+	@Test
+	/**
+	 * Verifies that a curve is sampled finely enough to stay within tolerance, with fewer points than a fixed step.
+	 */
+	public void testAdaptiveCurveWithinTolerance () throws ExpressionParseException {
+		final DoubleUnaryOperator f = function("x^3/20 - 2*x");
+		final AdaptiveSampler sampler = new AdaptiveSampler(0.01);
+		final Samples samples = sampler.sample(f, -10, 10);
+		assertTrue(samples.size() < 2001, "used " + samples.size() + " points");
+		for (int i = 1; i < samples.size(); i++) {
+			final double x = 0.5 * (samples.getX(i - 1) + samples.getX(i));
+			final double interpolated = 0.5 * (samples.getY(i - 1) + samples.getY(i));
+			assertEquals(f.applyAsDouble(x), interpolated, 0.02, "at x = " + x);
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that the series is broken at a pole rather than joined across it.
+	 */
+	public void testAdaptiveBreaksAtPole () throws ExpressionParseException {
+		final Samples samples = AdaptiveSampler.forViewport(-10, 10, 345).sample(function("1/(x-0.3)"), -10, 10);
+		int breaks = 0;
+		for (int i = 1; i < samples.size(); i++) {
+			if (samples.isBreak(i)) {
+				breaks++;
+			} else if (!samples.isBreak(i - 1)) {
+				assertFalse(samples.getX(i - 1) < 0.3 && samples.getX(i) > 0.3, "joined across the pole");
+			}
+		}
+		assertTrue(breaks > 0);
+		assertTrue(samples.size() < 2001, "used " + samples.size() + " points");
+	}
+
+	@Test
+	/**
+	 * Verifies that a steep but continuous curve is not mistaken for a discontinuity.
+	 */
+	public void testAdaptiveDoesNotBreakSteepCurve () throws ExpressionParseException {
+		final Samples samples = AdaptiveSampler.forViewport(-10, 10, 345).sample(function("x^9"), -10, 10);
+		for (int i = 0; i < samples.size(); i++) {
+			assertFalse(samples.isBreak(i));
+		}
+	}
+
+	@Test
+	/**
+	 * Verifies that a stretch where the function is undefined is skipped cheaply and leaves a break.
+	 */
+	public void testAdaptiveSkipsUndefinedStretch () throws ExpressionParseException {
+		final Samples samples = AdaptiveSampler.forViewport(-10, 10, 345).sample(function("log(x)"), -10, 10);
+		assertTrue(samples.size() < 500, "used " + samples.size() + " points");
+		assertTrue(samples.getX(0) > 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that the visible range is covered at pixel resolution and that panning back reuses tiles.
+	 */
+	public void testTileCacheReusesTilesWhenPanning () throws ExpressionParseException {
+		final SampleTileCache cache = new SampleTileCache(64);
+		final DoubleUnaryOperator f = function("x^2 - 3*x");
+		final Samples first = cache.sample("f", f, -10, 10, 445);
+		assertTrue(first.getX(0) <= -10 && first.getX(first.size() - 1) >= 10);
+		assertTrue(first.size() >= 445, "only " + first.size() + " points");
+		for (int i = 1; i < first.size(); i++) {
+			assertTrue(first.getX(i) > first.getX(i - 1));
+			assertEquals(f.applyAsDouble(first.getX(i)), first.getY(i), 1e-12);
+		}
+		final long misses = cache.getMisses();
+		cache.sample("f", f, -9, 11, 445);
+		cache.sample("f", f, -10, 10, 445);
+		assertTrue(cache.getMisses() <= misses + 1, "resampled " + (cache.getMisses() - misses) + " tiles");
+		assertTrue(cache.getHits() > 0);
+	}
+
+	@Test
+	/**
+	 * Verifies that tiles are refined to the y scale of the view, and not reused for a finer one.
+	 */
+	public void testTileCacheRefinesToYScale () throws ExpressionParseException {
+		final SampleTileCache cache = new SampleTileCache(64);
+		final DoubleUnaryOperator f = function("1/x");
+		final Samples coarse = cache.sample("f", f, null, 0.001, 10, -10000, 10000, 400, 400);
+		final long misses = cache.getMisses();
+		final Samples fine = cache.sample("f", f, null, 0.001, 10, -1, 1, 400, 400);
+		assertTrue(cache.getMisses() > misses);
+		assertTrue(fine.size() > coarse.size(), fine.size() + " points for the fine view, " + coarse.size() + " for the coarse one");
+		assertEquals(SampleTileCache.yLevel(-10, 10, 400), SampleTileCache.yLevel(-10, 10, 401));
+	}
+}
@@ -1,4 +1,6 @@
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.*;
+import java.util.regex.Pattern;
 /*
 * Grammar:
 * S -> A | P
@@ -21,6 +23,18 @@ import java.util.function.*;
  * - Floating point numbers ([0.0-10.0)+)
  */
 public class SimpleExpressionParser implements ExpressionParser {
+	protected static final Pattern LITERAL_PATTERN = Pattern.compile(literalRegex());
+
+	/**
+	 * How many calls to parse, on any thread, are counting the productions they attempt. While none
+	 * are, as when metrics and the parse event are both off, a production costs one read of it.
+	 */
+	private static final AtomicInteger COUNTING = new AtomicInteger();
+	/**
+	 * How many productions the current counting parse has attempted on this thread, backtracking
+	 * included; the productions take only the string, so the count cannot travel with them.
+	 */
+	private static final ThreadLocal<long[]> ATTEMPTS = ThreadLocal.withInitial(() -> new long[1]);
 
 	/**
 	* Attempts to create an expression tree from the specified String.
@@ -30,12 +44,37 @@ public class SimpleExpressionParser implements ExpressionParser {
 	* @return the Expression object representing the parsed expression tree
 	*/
 	public Expression parse (String str) throws ExpressionParseException {
-		str = str.replaceAll(" ", "");
-		Expression expression = parseExpression(str);
-		if (expression == null) {
-			throw new ExpressionParseException("Cannot parse expression: " + str);
+		final ExpressionEvents.ParseEvent event = ExpressionEvents.beginParse();
+		final String input = str;
+		final long[] attempted = ExpressionEvents.isRecorded(event) ? ATTEMPTS.get() : null;
+		if (attempted != null) {
+			attempted[0] = 0;
+			COUNTING.incrementAndGet();
+		}
+		Expression expression = null;
+		try {
+			str = str.replaceAll(" ", "");
+			expression = parseExpression(str);
+			if (expression == null) {
+				throw new ExpressionParseException("Cannot parse expression: " + str);
+			}
+			return expression;
+		} finally {
+			if (attempted != null) {
+				COUNTING.decrementAndGet();
+			}
+			// The same productions MemoizedSimpleExpressionParser counts, but every attempt, not once per span.
+			ExpressionEvents.endParse(event, this, input, expression, attempted != null ? attempted[0] : -1);
+		}
+	}
+
+	/**
+	 * Counts a production attempted, if any parse is counting them.
+	 */
+	private static void countAttempt () {
+		if (COUNTING.get() != 0) {
+			ATTEMPTS.get()[0]++;
 		}
-		return expression;
 	}
 
 	/**
@@ -109,6 +148,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 * @return parsed expression if possible, null otherwise.
 	 */
 	protected Expression parseExpression (String str) {
+		countAttempt();
 		// S -> A | P
 
 		Expression expression = parseAdditiveExpression(str);
@@ -130,6 +170,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 */
 	protected Expression parseAdditiveExpression (String str) {
 		
+		countAttempt();
 		// A -> A+M | A-M | M
 		Expression expression = parseTwoPartExpression('+', '-', str, this::parseAdditiveExpression, this::parseMultiplicativeExpression, AdditiveExpression::new, AdditiveExpression::new);
 		if(expression != null) {
@@ -145,6 +186,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 */
 	protected Expression parseMultiplicativeExpression (String str) {
 		
+		countAttempt();
 		// M -> M*E | M/E | E
 		Expression expression = parseTwoPartExpression('*', '/', str, this::parseMultiplicativeExpression, this::parseExponentialExpression, MultiplicativeExpression::new, MultiplicativeExpression::new);
 		if(expression != null) {
@@ -161,6 +203,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 */
 	protected Expression parseExponentialExpression (String str) {
 		
+		countAttempt();
 		// * E -> P^E | P | log(P)
 		Expression expression = parseTwoPartExpression('^', str, this::parseParentheticalExpression, this::parseExponentialExpression, ExponentialExpression::new);
 		if(expression != null) {
@@ -186,6 +229,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 */
 	protected Expression parseParentheticalExpression (String str) {
 		
+		countAttempt();
 		// P -> (S) | L | V
 
 		if(str.length() >= 3 && str.charAt(0) == '(' && str.charAt(str.length() - 1) == ')') {
@@ -224,7 +268,18 @@ public class SimpleExpressionParser implements ExpressionParser {
 	 * @return parsed expression if possible, null otherwise.
 	 */
 	protected Expression parseLiteralExpression (String str) {
+		if (LITERAL_PATTERN.matcher(str).matches()) {
+			return new LiteralExpression(str);
+		}
+		return null;
+	}
 
+	/**
+	 * Builds the regular expression matched by literals (L). It is compiled once into LITERAL_PATTERN
+	 * rather than on every call to parseLiteralExpression.
+	 * @return the regular expression for a floating point literal
+	 */
+	private static String literalRegex () {
 		// From https://stackoverflow.com/questions/3543729/how-to-check-that-a-string-is-parseable-to-a-double/22936891:
 		final String Digits     = "(\\p{Digit}+)";
 		final String HexDigits  = "(\\p{XDigit}+)";
@@ -264,11 +319,7 @@ public class SimpleExpressionParser implements ExpressionParser {
 		    ")[pP][+-]?" + Digits + "))" +
 		    "[fFdD]?))" +
 		    "[\\x00-\\x20]*");// Optional trailing "whitespace"
-
-		if (str.matches(fpRegex)) {
-			return new LiteralExpression(str);
-		}
-		return null;
+		return fpRegex;
 	}
 
 	public static void main (String[] args) throws ExpressionParseException {
@@ -0,0 +1,181 @@
+import java.util.*;
+
+/**
+ * Evaluates expressions over the grid of points of a tile a node at a time, and remembers the column
+ * of values of every interior node, keyed by (node, zoom level, tile index), in an LRU cache. When an
+ * expression is edited, the subtrees the edit did not touch are equal to ones evaluated before, so
+ * their columns are found here and only the nodes on the path from the edit up to the root are
+ * computed again: retyping one term of a long sum costs that term and the additions above it, not the
+ * whole sum.
+ *
+ * Nodes are compared structurally, so a subtree matches whether or not it is the same object. The
+ * calculator passes trees freshly built by ExpressionOptimizer, so a hit is a full equals walk of the
+ * subtree, not a reference check; a miss is usually settled by the cached hashes alone. A node is
+ * looked up before its children, and a hit ends the descent, so the subtrees walked for one tile are
+ * disjoint, and the comparisons cost at most one pass over the tree per tile, on top of hashing every
+ * node once, which the first lookup in a new tree does and the nodes cache. Each node does the same
+ * floating-point operations as its evaluate method. Leaves are not cached: a literal or x costs no
+ * more to fill in than to look up.
+ *
+ * The columns returned are shared with the cache, and must not be modified. The cache is safe for
+ * concurrent use; two threads missing on the same column at once may both compute it.
+ */
+public class SubtreeColumnCache {
+	private static final double LOG_OF_BASE = Math.log(LogarithmicExpression.BASE);
+
+	private final int capacity;
+	private final LinkedHashMap<ColumnKey, double[]> columns;
+	private long hits, misses;
+
+	/**
+	 * Identifies a column.
+	 */
+	private static final class ColumnKey {
+		final Expression node;
+		final int level;
+		final long tile;
+
+		ColumnKey (Expression node, int level, long tile) {
+			this.node = node;
+			this.level = level;
+			this.tile = tile;
+		}
+
+		@Override
+		public boolean equals (Object other) {
+			if (!(other instanceof ColumnKey)) {
+				return false;
+			}
+			final ColumnKey key = (ColumnKey) other;
+			return level == key.level && tile == key.tile && node.equals(key.node);
+		}
+
+		@Override
+		public int hashCode () {
+			return (node.hashCode() * 31 + level) * 31 + Long.hashCode(tile);
+		}
+	}
+
+	/**
+	 * @param capacity the most columns to keep; the least recently used is evicted beyond that
+	 */
+	public SubtreeColumnCache (int capacity) {
+		this.capacity = capacity;
+		this.columns = new LinkedHashMap<ColumnKey, double[]>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry (Map.Entry<ColumnKey, double[]> eldest) {
+				return size() > SubtreeColumnCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Evaluates an expression at the points of a tile.
+	 * @param expression the expression to evaluate
+	 * @param level the zoom level of the tile
+	 * @param tile the index of the tile at its level
+	 * @param xs the points of the tile; must be the same for every call with the same level and tile
+	 * @return the value of the expression at each point; shared, and not to be modified
+	 */
+	public double[] evaluate (Expression expression, int level, long tile, double[] xs) {
+		if (expression instanceof ParentheticalExpression) {
+			return evaluate(((ParentheticalExpression) expression).getExpression(), level, tile, xs);
+		}
+		if (expression instanceof LiteralExpression || expression instanceof VariableExpression) {
+			final double[] column = new double[xs.length];
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = expression.evaluate(xs[i]);
+			}
+			return column;
+		}
+		final ColumnKey key = new ColumnKey(expression, level, tile);
+		synchronized (columns) {
+			final double[] known = columns.get(key);
+			if (known != null) {
+				hits++;
+				return known;
+			}
+			misses++;
+		}
+		final double[] column = compute(expression, level, tile, xs);
+		synchronized (columns) {
+			columns.put(key, column);
+		}
+		return column;
+	}
+
+	/**
+	 * Computes the column of an interior node from the columns of its children.
+	 */
+	private double[] compute (Expression expression, int level, long tile, double[] xs) {
+		final double[] column = new double[xs.length];
+		if (expression instanceof AdditiveExpression) {
+			final AdditiveExpression additive = (AdditiveExpression) expression;
+			final double[] left = evaluate(additive.getLeft(), level, tile, xs), right = evaluate(additive.getRight(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = additive.isSubtraction() ? left[i] - right[i] : left[i] + right[i];
+			}
+		} else if (expression instanceof MultiplicativeExpression) {
+			final MultiplicativeExpression multiplicative = (MultiplicativeExpression) expression;
+			final double[] left = evaluate(multiplicative.getLeft(), level, tile, xs), right = evaluate(multiplicative.getRight(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = multiplicative.isDivision() ? left[i] / right[i] : left[i] * right[i];
+			}
+		} else if (expression instanceof ExponentialExpression) {
+			final ExponentialExpression exponential = (ExponentialExpression) expression;
+			final double[] base = evaluate(exponential.getBase(), level, tile, xs), power = evaluate(exponential.getPower(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = Math.pow(base[i], power[i]);
+			}
+		} else if (expression instanceof LogarithmicExpression) {
+			final double[] argument = evaluate(((LogarithmicExpression) expression).getArgument(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = Math.log(argument[i]) / LOG_OF_BASE;
+			}
+		} else if (expression instanceof AffineExpression) {
+			final AffineExpression affine = (AffineExpression) expression;
+			final double[] operand = evaluate(affine.getOperand(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = affine.getScale() * operand[i] + affine.getOffset();
+			}
+		} else if (expression instanceof IntegerPowerExpression) {
+			final IntegerPowerExpression power = (IntegerPowerExpression) expression;
+			final double[] base = evaluate(power.getBase(), level, tile, xs);
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = IntegerPowerExpression.power(base[i], power.getExponent());
+			}
+		} else {
+			for (int i = 0; i < xs.length; i++) {
+				column[i] = expression.evaluate(xs[i]);
+			}
+		}
+		return column;
+	}
+
+	/**
+	 * @return how many columns are remembered
+	 */
+	public int size () {
+		synchronized (columns) {
+			return columns.size();
+		}
+	}
+
+	/**
+	 * @return how many lookups of an interior node found its column remembered
+	 */
+	public long getHits () {
+		synchronized (columns) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return how many lookups of an interior node had to compute its column
+	 */
+	public long getMisses () {
+		synchronized (columns) {
+			return misses;
+		}
+	}
+}
@@ -0,0 +1,221 @@
+import java.util.Arrays;
+
+/**
+ * Computes the Taylor coefficients of an expression at a point -- f(x), f'(x), f''(x)/2!, ... up to a
+ * fixed order -- in one pass over the expression, by truncated power series arithmetic: every node of
+ * the expression's ExpressionDag holds a series instead of a number, and each operation combines its
+ * children's series with the usual recurrences (Cauchy products for * and integer powers, and the
+ * recurrences of division, log and pow). This is forward-mode automatic differentiation carried to
+ * higher orders; Expression.evaluateWithDerivative is the first-order case.
+ *
+ * Like evaluateWithDerivative, it needs no symbolic derivative, so it works for every expression, x^x
+ * included. The zeroth coefficient is exactly ExpressionDag's value.
+ *
+ * All series live in arrays allocated once, so evaluate does not allocate; for the same reason an
+ * evaluator must not be used by several threads at once.
+ */
+public final class TaylorEvaluator {
+	private static final double LOG_BASE = Math.log(LogarithmicExpression.BASE);
+
+	private final ExpressionDag dag;
+	private final int terms;
+	private final double[] series;
+	private final double[] first, second, third;
+
+	/**
+	 * @param expression the expression to evaluate
+	 * @param order the highest derivative to compute
+	 */
+	public TaylorEvaluator (Expression expression, int order) {
+		if (order < 0) {
+			throw new IllegalArgumentException("Negative order " + order);
+		}
+		this.dag = ExpressionDag.compile(expression);
+		this.terms = order + 1;
+		this.series = new double[dag.size() * terms];
+		this.first = new double[terms];
+		this.second = new double[terms];
+		this.third = new double[terms];
+	}
+
+	public int getOrder () {
+		return terms - 1;
+	}
+
+	/**
+	 * Computes the Taylor coefficients of the expression about x.
+	 * @param x the value of the independent variable x
+	 * @param coefficients where to store f^(k)(x) / k! for k from 0 to the order; at least order + 1 long
+	 * @return the value of the expression, f(x)
+	 */
+	public double evaluate (double x, double[] coefficients) {
+		final int n = dag.size(), k = terms;
+		for (int i = 0; i < n; i++) {
+			final int out = i * k, left = dag.left(i) * k, right = dag.right(i) * k;
+			switch (dag.op(i)) {
+				case ExpressionProgram.PUSH_X:
+					Arrays.fill(series, out, out + k, 0);
+					series[out] = x;
+					if (k > 1) {
+						series[out + 1] = 1;
+					}
+					break;
+				case ExpressionProgram.PUSH_CONST:
+					Arrays.fill(series, out, out + k, 0);
+					series[out] = dag.constant(i);
+					break;
+				case ExpressionProgram.ADD:
+					for (int j = 0; j < k; j++) {
+						series[out + j] = series[left + j] + series[right + j];
+					}
+					break;
+				case ExpressionProgram.SUB:
+					for (int j = 0; j < k; j++) {
+						series[out + j] = series[left + j] - series[right + j];
+					}
+					break;
+				case ExpressionProgram.MUL:
+					multiply(series, left, series, right, series, out, k);
+					break;
+				case ExpressionProgram.DIV:
+					divide(series, left, series, right, series, out, k);
+					break;
+				case ExpressionProgram.POW:
+					power(left, right, out);
+					break;
+				case ExpressionProgram.IPOW:
+					integerPower(series, left, dag.right(i), series, out);
+					break;
+				default:
+					log(series, left, series, out, k);
+					for (int j = 0; j < k; j++) {
+						series[out + j] /= LOG_BASE;
+					}
+					break;
+			}
+		}
+		System.arraycopy(series, (n - 1) * k, coefficients, 0, k);
+		return coefficients[0];
+	}
+
+	/**
+	 * Computes the derivatives of the expression at x.
+	 * @param x the value of the independent variable x
+	 * @param derivatives where to store f^(k)(x) for k from 0 to the order; at least order + 1 long
+	 * @return the value of the expression, f(x)
+	 */
+	public double derivatives (double x, double[] derivatives) {
+		evaluate(x, derivatives);
+		double factorial = 1;
+		for (int j = 1; j < terms; j++) {
+			factorial *= j;
+			derivatives[j] *= factorial;
+		}
+		return derivatives[0];
+	}
+
+	/**
+	 * u^v. A constant exponent uses repeated multiplication when it is a small integer and the recurrence
+	 * of w = u^a, w' u = a u' w, otherwise; a varying one goes through w = exp(v log u). The zeroth
+	 * coefficient is Math.pow's, as in evaluate.
+	 */
+	private void power (int u, int v, int out) {
+		final int k = terms;
+		boolean constant = true;
+		for (int j = 1; j < k; j++) {
+			constant &= series[v + j] == 0;
+		}
+		final double u0 = series[u], a = series[v];
+		if (constant && a == Math.rint(a) && Math.abs(a) <= ExpressionOptimizer.MAX_INTEGER_POWER) {
+			integerPower(series, u, (int) a, series, out);
+			series[out] = Math.pow(u0, a);
+		} else if (constant) {
+			series[out] = Math.pow(u0, a);
+			for (int n = 1; n < k; n++) {
+				double sum = 0;
+				for (int j = 1; j <= n; j++) {
+					sum += ((a + 1) * j - n) * series[u + j] * series[out + n - j];
+				}
+				series[out + n] = sum / (n * u0);
+			}
+		} else {
+			// g = v log u, then w = exp(g): w' = g' w.
+			log(series, u, first, 0, k);
+			multiply(series, v, first, 0, second, 0, k);
+			series[out] = Math.pow(u0, a);
+			for (int n = 1; n < k; n++) {
+				double sum = 0;
+				for (int j = 1; j <= n; j++) {
+					sum += j * second[j] * series[out + n - j];
+				}
+				series[out + n] = sum / n;
+			}
+		}
+	}
+
+	/**
+	 * u^n by squaring and multiplying, exactly as IntegerPowerExpression.power does for the zeroth coefficient.
+	 */
+	private void integerPower (double[] in, int u, int exponent, double[] result, int out) {
+		final int k = terms;
+		Arrays.fill(first, 0);
+		first[0] = 1;
+		System.arraycopy(in, u, second, 0, k);
+		for (long n = Math.abs((long) exponent); n > 0; n >>= 1) {
+			if ((n & 1) != 0) {
+				multiply(first, 0, second, 0, third, 0, k);
+				System.arraycopy(third, 0, first, 0, k);
+			}
+			multiply(second, 0, second, 0, third, 0, k);
+			System.arraycopy(third, 0, second, 0, k);
+		}
+		if (exponent < 0) {
+			Arrays.fill(second, 0);
+			second[0] = 1;
+			divide(second, 0, first, 0, result, out, k);
+		} else {
+			System.arraycopy(first, 0, result, out, k);
+		}
+	}
+
+	/**
+	 * c = a * b, the Cauchy product; c must not overlap a or b. Each sum starts from its first product rather
+	 * than from 0, so that c[0] is exactly a[0] * b[0], signed zeros included.
+	 */
+	private static void multiply (double[] a, int ao, double[] b, int bo, double[] c, int co, int k) {
+		for (int n = 0; n < k; n++) {
+			double sum = a[ao] * b[bo + n];
+			for (int j = 1; j <= n; j++) {
+				sum += a[ao + j] * b[bo + n - j];
+			}
+			c[co + n] = sum;
+		}
+	}
+
+	/**
+	 * c = a / b, from a = b * c; c must not overlap a or b.
+	 */
+	private static void divide (double[] a, int ao, double[] b, int bo, double[] c, int co, int k) {
+		for (int n = 0; n < k; n++) {
+			double sum = a[ao + n];
+			for (int j = 1; j <= n; j++) {
+				sum -= b[bo + j] * c[co + n - j];
+			}
+			c[co + n] = sum / b[bo];
+		}
+	}
+
+	/**
+	 * w = log u, the natural logarithm, from w' u = u'; w must not overlap u.
+	 */
+	private static void log (double[] u, int uo, double[] w, int wo, int k) {
+		w[wo] = Math.log(u[uo]);
+		for (int n = 1; n < k; n++) {
+			double sum = 0;
+			for (int j = 1; j < n; j++) {
+				sum += j * w[wo + j] * u[uo + n - j];
+			}
+			w[wo + n] = (u[uo + n] - sum / n) / u[uo];
+		}
+	}
+}